@@ -0,0 +1,47 @@
+package edu.uw.danco.bench;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExecutorService that runs each task on the submitting thread, so a benchmark measures the dispatch work itself
+ * rather than the hand off to a pool.
+ */
+public final class DirectExecutorService extends AbstractExecutorService {
+
+    /** Set once shutdown */
+    private volatile boolean shutdown;
+
+    @Override
+    public void execute(final Runnable command) {
+        command.run();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) {
+        return shutdown;
+    }
+}
@@ -0,0 +1,40 @@
+package edu.uw.danco.bench;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.dao.AccountDao;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AccountDao keeping the accounts in a map, so the broker benchmarks do not measure a database.
+ */
+public final class InMemoryAccountDao implements AccountDao {
+
+    /** The accounts keyed by name */
+    private final Map<String, Account> accounts = new ConcurrentHashMap<String, Account>();
+
+    @Override
+    public Account getAccount(final String accountName) {
+        return accounts.get(accountName);
+    }
+
+    @Override
+    public void setAccount(final Account account) {
+        accounts.put(account.getName(), account);
+    }
+
+    @Override
+    public void deleteAccount(final String accountName) {
+        accounts.remove(accountName);
+    }
+
+    @Override
+    public void reset() {
+        accounts.clear();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,87 @@
+package edu.uw.danco.bench;
+
+import edu.uw.ext.framework.exchange.ExchangeListener;
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
+import edu.uw.ext.framework.order.Order;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * StockExchange stub with fixed prices that is always open. Benchmarks can wait for a specific order to reach
+ * executeTrade, which is the last step of StockTraderOrderProcessor.process.
+ */
+public final class InMemoryStockExchange implements StockExchange {
+
+    /** The ticker symbols */
+    private final String[] tickers;
+
+    /** The fixed price of every ticker */
+    private final int price;
+
+    /** The registered listeners */
+    private final CopyOnWriteArrayList<ExchangeListener> listeners = new CopyOnWriteArrayList<ExchangeListener>();
+
+    /** Latches for the orders benchmarks are waiting on, keyed by order id */
+    private final Map<Integer, CountDownLatch> pending = new ConcurrentHashMap<Integer, CountDownLatch>();
+
+
+    /**
+     * Constructor
+     * @param tickers - the ticker symbols
+     * @param price - the fixed price of every ticker
+     */
+    public InMemoryStockExchange(final String[] tickers, final int price) {
+        this.tickers = tickers.clone();
+        this.price = price;
+    }
+
+
+    /**
+     * Registers interest in the execution of an order, must be called before the order is placed
+     * @param order - the order
+     * @return - a latch released when the order is executed
+     */
+    public CountDownLatch expect(final Order order) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        pending.put(order.getOrderId(), latch);
+        return latch;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public String[] getTickers() {
+        return tickers.clone();
+    }
+
+    @Override
+    public StockQuote getQuote(final String ticker) {
+        return new StockQuote(ticker, price);
+    }
+
+    @Override
+    public void addExchangeListener(final ExchangeListener l) {
+        listeners.add(l);
+    }
+
+    @Override
+    public void removeExchangeListener(final ExchangeListener l) {
+        listeners.remove(l);
+    }
+
+    @Override
+    public int executeTrade(final Order order) {
+        final CountDownLatch latch = pending.remove(order.getOrderId());
+        if (latch != null) {
+            latch.countDown();
+        }
+        return price;
+    }
+}
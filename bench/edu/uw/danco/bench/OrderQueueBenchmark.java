@@ -0,0 +1,99 @@
+package edu.uw.danco.bench;
+
+import edu.uw.danco.broker.MarketDispatchFilter;
+import edu.uw.danco.broker.OrderQueueImpl;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures OrderQueueImpl.enqueue/dequeue throughput and latency. The queue's dispatcher never runs the drain task,
+ * so only the calling threads touch the queue, against a queue already holding a number of resting orders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderQueueBenchmark {
+
+    /** Number of orders resting in the queue */
+    @Param({"0", "1000", "10000"})
+    public int depth;
+
+    /** The queue under test */
+    private OrderQueueImpl<Order> queue;
+
+
+    /**
+     * Creates the queue and fills it to the requested depth
+     */
+    @Setup
+    public void setUp() {
+        queue = new OrderQueueImpl<Order>(new MarketDispatchFilter(true), new NeverRunExecutorService());
+        for (int i = 0; i < depth; i++) {
+            queue.enqueue(new MarketBuyOrder("bench", 1000000 - i, "F"));
+        }
+    }
+
+
+    /**
+     * Enqueues an order and dequeues the head order, keeping the depth of the queue constant
+     * @return - the dequeued order
+     */
+    @Benchmark
+    public Order enqueueDequeue() {
+        queue.enqueue(new MarketBuyOrder("bench", 100, "F"));
+        return queue.dequeue();
+    }
+
+
+    /**
+     * Executor that drops every task, the queue believes its drain task is queued and never starts another.
+     */
+    private static final class NeverRunExecutorService extends AbstractExecutorService {
+        @Override
+        public void execute(final Runnable command) {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(final long timeout, final TimeUnit unit) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package edu.uw.danco.bench;
+
+import edu.uw.danco.account.AccountManagerImpl;
+import edu.uw.danco.broker.BrokerImpl;
+import edu.uw.danco.broker.BrokerSettings;
+import edu.uw.ext.framework.broker.BrokerException;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the end to end latency from BrokerImpl.placeOrder to the order reaching the exchange in
+ * StockTraderOrderProcessor.process, against an in memory exchange and account store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaceOrderBenchmark {
+
+    /** The tickers traded on the stub exchange */
+    private static final String[] TICKERS = {"BA", "F", "PG", "T", "HPQ", "IBM", "INTC", "MSFT"};
+
+    /** Number of accounts the orders are spread over */
+    private static final int ACCOUNTS = 64;
+
+    /** Whether the market queue uses the lock free dispatch mode */
+    @Param({"false", "true"})
+    public boolean lockFreeDispatch;
+
+    /** The broker under test */
+    private BrokerImpl broker;
+
+    /** The stub exchange */
+    private InMemoryStockExchange exchange;
+
+
+    /**
+     * Creates the broker and its accounts
+     * @throws BrokerException - if an account cannot be created
+     */
+    @Setup
+    public void setUp() throws BrokerException {
+        exchange = new InMemoryStockExchange(TICKERS, 1000);
+        final BrokerSettings settings = new BrokerSettings();
+        settings.setLockFreeDispatch(lockFreeDispatch);
+        broker = new BrokerImpl("bench", new AccountManagerImpl(new InMemoryAccountDao()), exchange, settings);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            broker.createAccount(accountName(i), "password", Integer.MAX_VALUE / 2);
+        }
+    }
+
+
+    /**
+     * Closes the broker
+     * @throws BrokerException - if the broker cannot be closed
+     */
+    @TearDown
+    public void tearDown() throws BrokerException {
+        broker.close();
+    }
+
+
+    /**
+     * Places a market order and waits for it to be executed
+     * @param caller - the calling thread's state
+     * @throws BrokerException - if the order cannot be placed
+     * @throws InterruptedException - if interrupted waiting for the order
+     */
+    @Benchmark
+    public void placeOrder(final Caller caller) throws BrokerException, InterruptedException {
+        final MarketBuyOrder order = new MarketBuyOrder(caller.accountName, 1, TICKERS[caller.next++ % TICKERS.length]);
+        final CountDownLatch executed = exchange.expect(order);
+        broker.placeOrder(order);
+        executed.await();
+    }
+
+
+    /**
+     * Gets the name of an account
+     * @param index - the account number
+     * @return - the account name
+     */
+    private static String accountName(final int index) {
+        return "benchAccount" + index;
+    }
+
+
+    /**
+     * Per thread state, each thread trades on its own account
+     */
+    @State(Scope.Thread)
+    public static class Caller {
+        /** Source of thread ids */
+        private static int threads;
+
+        /** The account the thread trades on */
+        private String accountName;
+
+        /** Index of the next ticker to trade */
+        private int next;
+
+        /**
+         * Assigns the thread an account
+         */
+        @Setup
+        public void setUp() {
+            synchronized (Caller.class) {
+                accountName = accountName(threads++ % ACCOUNTS);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package edu.uw.danco.bench;
+
+import edu.uw.danco.broker.OrderManagerImpl;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of a price move through OrderManagerImpl.adjustPrice that triggers a number of resting stop
+ * buy orders. The order manager dispatches on the calling thread, so the call returns once every triggered order has
+ * reached the order processor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StopTriggerBenchmark {
+
+    /** The price the stock starts each invocation at */
+    private static final int BASE_PRICE = 10000;
+
+    /** Number of resting orders below the triggered ones, never triggered */
+    private static final int UNTRIGGERED_DEPTH = 10000;
+
+    /** Number of stop orders triggered by each price move */
+    @Param({"1", "100", "1000"})
+    public int triggered;
+
+    /** The order manager under test */
+    private OrderManagerImpl orderManager;
+
+    /** Number of orders that have reached the processor */
+    private int processed;
+
+
+    /**
+     * Creates the order manager with a deep book of orders that the price move does not reach
+     */
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        orderManager = new OrderManagerImpl("F", BASE_PRICE, new DirectExecutorService());
+        orderManager.setOrderProcessor(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                processed++;
+            }
+        });
+        for (int i = 0; i < UNTRIGGERED_DEPTH; i++) {
+            orderManager.queueOrder(new StopBuyOrder("bench", 10, "F", BASE_PRICE * 2 + i));
+        }
+    }
+
+
+    /**
+     * Resets the price and rests the orders the next price move triggers
+     */
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        orderManager.adjustPrice(BASE_PRICE);
+        for (int i = 0; i < triggered; i++) {
+            orderManager.queueOrder(new StopBuyOrder("bench", 10, "F", BASE_PRICE + 1 + i % 50));
+        }
+        processed = 0;
+    }
+
+
+    /**
+     * Moves the price past every resting order placed for this invocation
+     * @return - the number of orders processed
+     */
+    @Benchmark
+    public int adjustPrice() {
+        orderManager.adjustPrice(BASE_PRICE + 100);
+        return processed;
+    }
+}
@@ -0,0 +1,240 @@
+package edu.uw.danco.account;
+
+import edu.uw.ext.framework.account.Account;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 9:10 PM
+ *
+ * Bounded least recently used cache of the accounts read by an AccountManagerImpl. There is never more than one
+ * instance of an account in use: an account evicted while some thread still holds it stays reachable through a weak
+ * reference and is handed out again rather than a second copy being read from the DAO, so concurrent orders for an
+ * account all reflect into the same instance.
+ *
+ * A miss is filled with putIfAbsent, passing the stamp taken before the DAO read, so an account read before it was
+ * deleted is not cached.
+ */
+public final class AccountCache {
+
+    /** The maximum number of accounts held strongly */
+    private final int capacity;
+
+    /** The cached accounts, in access order, guarded by the cache */
+    private final LinkedHashMap<String, Account> accounts;
+
+    /** The accounts evicted from accounts, reachable while some thread still holds them, guarded by the cache */
+    private final Map<String, NamedReference> evicted = new HashMap<String, NamedReference>();
+
+    /** Receives the references to evicted accounts no longer held by anyone */
+    private final ReferenceQueue<Account> collected = new ReferenceQueue<Account>();
+
+    /** Number of invalidations, guarded by the cache */
+    private long stamp;
+
+    /** Number of lookups answered by the cache */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** Number of lookups not answered by the cache */
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Number of accounts evicted */
+    private final AtomicLong evictions = new AtomicLong();
+
+
+    /**
+     * Constructor
+     * @param capacity - the maximum number of accounts held strongly, at least 1
+     */
+    public AccountCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+        accounts = new LinkedHashMap<String, Account>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Account> eldest) {
+                if (size() > AccountCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    evicted.put(eldest.getKey(), new NamedReference(eldest.getKey(), eldest.getValue(), collected));
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * Gets a cached account
+     * @param accountName - the account name
+     * @return - the account, or null if it is not cached
+     */
+    public synchronized Account get(final String accountName) {
+        final Account account = find(accountName);
+        if (account == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return account;
+    }
+
+
+    /**
+     * Gets the stamp to pass to putIfAbsent for an account about to be read from the DAO
+     * @return - the stamp
+     */
+    public synchronized long stamp() {
+        return stamp;
+    }
+
+
+    /**
+     * Caches an account read from the DAO unless it is already cached
+     * @param accountName - the account name
+     * @param account - the account read
+     * @param readStamp - the stamp taken before the account was read
+     * @return - the cached account, which is the account passed unless another thread cached one first
+     */
+    public synchronized Account putIfAbsent(final String accountName, final Account account, final long readStamp) {
+        final Account cached = find(accountName);
+        if (cached != null) {
+            return cached;
+        }
+        if (readStamp == stamp) {
+            accounts.put(accountName, account);
+        }
+        return account;
+    }
+
+
+    /**
+     * Caches an account, replacing any cached instance
+     * @param accountName - the account name
+     * @param account - the account
+     */
+    public synchronized void put(final String accountName, final Account account) {
+        evicted.remove(accountName);
+        accounts.put(accountName, account);
+    }
+
+
+    /**
+     * Removes an account
+     * @param accountName - the account name
+     */
+    public synchronized void invalidate(final String accountName) {
+        stamp++;
+        evicted.remove(accountName);
+        accounts.remove(accountName);
+    }
+
+
+    /**
+     * Removes every account
+     */
+    public synchronized void clear() {
+        stamp++;
+        evicted.clear();
+        accounts.clear();
+    }
+
+
+    /**
+     * Gets the number of lookups answered by the cache
+     * @return - the number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+
+    /**
+     * Gets the number of lookups not answered by the cache
+     * @return - the number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+
+    /**
+     * Gets the number of accounts evicted to stay within the capacity
+     * @return - the number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("capacity=%d hits=%d misses=%d evictions=%d",
+                             capacity, hits.get(), misses.get(), evictions.get());
+    }
+
+
+    /**
+     * Finds a cached account, an evicted account still held by some thread is cached again
+     * @param accountName - the account name
+     * @return - the account, or null if it is not cached
+     */
+    private Account find(final String accountName) {
+        expunge();
+        Account account = accounts.get(accountName);
+        if (account == null) {
+            final NamedReference ref = evicted.remove(accountName);
+            account = ref == null ? null : ref.get();
+            if (account != null) {
+                accounts.put(accountName, account);
+            }
+        }
+        return account;
+    }
+
+
+    /**
+     * Forgets the evicted accounts no longer held by anyone
+     */
+    private void expunge() {
+        Reference<? extends Account> ref;
+        while ((ref = collected.poll()) != null) {
+            final String accountName = ((NamedReference) ref).accountName;
+            if (evicted.get(accountName) == ref) {
+                evicted.remove(accountName);
+            }
+        }
+    }
+
+
+    /**
+     * Weak reference to an evicted account, remembering its name for expunge
+     */
+    private static final class NamedReference extends WeakReference<Account> {
+        /** The account name */
+        private final String accountName;
+
+        /**
+         * Constructor
+         * @param accountName - the account name
+         * @param account - the account
+         * @param queue - the queue the reference is put on once the account is collected
+         */
+        NamedReference(final String accountName, final Account account, final ReferenceQueue<Account> queue) {
+            super(account, queue);
+            this.accountName = accountName;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import edu.uw.ext.framework.account.*;
 import edu.uw.ext.framework.order.Order;
 
 import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.prefs.Preferences;
@@ -35,8 +36,8 @@ public class AccountImpl implements Account {
     /** Name of account holder */
     private String name;
 
-    /** Account balance */
-    private int balance;
+    /** Account balance, updated under the account's stripe of the AccountLockManager */
+    private volatile int balance;
 
     /** Full name of account holder */
     private String fullName;
@@ -329,7 +330,13 @@ public class AccountImpl implements Account {
     @Override
     public void reflectOrder(Order order, int executionPrice) {
         try {
-            balance += order.valueOfOrder(executionPrice);
+            // the account is shared by every order for it, the update must not race another order's
+            final Lock lock = AccountLockManager.of(accountManager).lock(name);
+            try {
+                balance += order.valueOfOrder(executionPrice);
+            } finally {
+                lock.unlock();
+            }
             if (accountManager != null) {
                 accountManager.persist(this);
             } else {
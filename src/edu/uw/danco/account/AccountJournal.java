@@ -0,0 +1,320 @@
+package edu.uw.danco.account;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 8:50 PM
+ *
+ * Write-ahead journal of the accounts persisted but not yet written to the DAO. Each persist appends a snapshot of
+ * the account, each delete a tombstone. The journal is kept in numbered segment files, name.1, name.2, ..., the
+ * account writer rolls to a new segment when it takes a batch and deletes the older segments once the batch has been
+ * written, so the journal only ever holds the accounts still pending.
+ *
+ * Records are handed to the operating system as they are appended, so they survive the process failing but are only
+ * forced to the disk by the operating system.
+ */
+final class AccountJournal {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(AccountJournal.class.getName());
+
+    /** Record type of an account snapshot */
+    private static final byte PUT = 1;
+
+    /** Record type of a deleted account */
+    private static final byte DELETE = 2;
+
+    /** The directory holding the segments */
+    private final File directory;
+
+    /** The segment file name prefix, the journal name followed by a dot */
+    private final String prefix;
+
+    /** The number of the segment being appended to */
+    private long segment = 1;
+
+    /** The stream of the segment being appended to, null until the first append to the segment */
+    private DataOutputStream out;
+
+
+    /**
+     * Constructor
+     * @param file - the journal, its segments are created next to it
+     */
+    AccountJournal(final File file) {
+        directory = file.getAbsoluteFile().getParentFile();
+        prefix = file.getName() + ".";
+    }
+
+
+    /**
+     * Reads the segments left by a previous run, the journal appends to a new segment afterwards
+     * @return - the last record of each account in the order they were first journaled, deleted accounts map to
+     *           null
+     * @throws IOException - if a segment cannot be read
+     */
+    synchronized Map<String, Account> recover() throws IOException {
+        final Map<String, Account> accounts = new LinkedHashMap<String, Account>();
+        for (final Map.Entry<Long, File> entry : segments().entrySet()) {
+            final DataInputStream in =
+                    new DataInputStream(new BufferedInputStream(new FileInputStream(entry.getValue())));
+            try {
+                while (true) {
+                    final byte type;
+                    try {
+                        type = in.readByte();
+                    } catch (final EOFException e) {
+                        break;
+                    }
+                    final String name = in.readUTF();
+                    final Account account = type == DELETE ? null : readAccount(name, in);
+                    accounts.remove(name);
+                    accounts.put(name, account);
+                }
+            } catch (final EOFException e) {
+                LOGGER.warning("Ignoring the incomplete last record of journal segment " + entry.getValue());
+            } finally {
+                in.close();
+            }
+            segment = Math.max(segment, entry.getKey() + 1);
+        }
+        return accounts;
+    }
+
+
+    /**
+     * Appends a snapshot of an account
+     * @param account - the account
+     * @throws IOException - if the record cannot be written
+     */
+    synchronized void append(final Account account) throws IOException {
+        final DataOutputStream stream = stream();
+        stream.writeByte(PUT);
+        stream.writeUTF(account.getName());
+        final byte[] passwordHash = account.getPasswordHash();
+        stream.writeInt(passwordHash == null ? -1 : passwordHash.length);
+        if (passwordHash != null) {
+            stream.write(passwordHash);
+        }
+        stream.writeInt(account.getBalance());
+        writeString(stream, account.getFullName());
+        writeString(stream, account.getPhone());
+        writeString(stream, account.getEmail());
+
+        final Address address = account.getAddress();
+        stream.writeBoolean(address != null);
+        if (address != null) {
+            writeString(stream, address.getStreetAddress());
+            writeString(stream, address.getCity());
+            writeString(stream, address.getState());
+            writeString(stream, address.getZipCode());
+        }
+
+        final CreditCard card = account.getCreditCard();
+        stream.writeBoolean(card != null);
+        if (card != null) {
+            writeString(stream, card.getAccountNumber());
+            writeString(stream, card.getIssuer());
+            writeString(stream, card.getType());
+            writeString(stream, card.getHolder());
+            writeString(stream, card.getExpirationDate());
+        }
+        stream.flush();
+    }
+
+
+    /**
+     * Appends a tombstone for a deleted account
+     * @param accountName - the name of the account
+     * @throws IOException - if the record cannot be written
+     */
+    synchronized void appendDelete(final String accountName) throws IOException {
+        final DataOutputStream stream = stream();
+        stream.writeByte(DELETE);
+        stream.writeUTF(accountName);
+        stream.flush();
+    }
+
+
+    /**
+     * Closes the segment being appended to, later records go to a new segment
+     * @return - the number of the closed segment, it and every segment before it may be discarded once the accounts
+     *           pending when roll was called have been written
+     * @throws IOException - if the segment cannot be closed
+     */
+    synchronized long roll() throws IOException {
+        closeSegment();
+        return segment++;
+    }
+
+
+    /**
+     * Deletes the segments up to and including a segment
+     * @param last - the number of the last segment to delete
+     */
+    synchronized void discardThrough(final long last) {
+        for (final Map.Entry<Long, File> entry : segments().headMap(last, true).entrySet()) {
+            if (!entry.getValue().delete()) {
+                LOGGER.warning("Unable to delete journal segment " + entry.getValue());
+            }
+        }
+    }
+
+
+    /**
+     * Closes the segment being appended to
+     */
+    synchronized void close() {
+        try {
+            closeSegment();
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to close journal segment " + segment, e);
+        }
+    }
+
+
+    /**
+     * Gets the stream of the segment being appended to, creating the segment on first use
+     * @return - the stream
+     * @throws IOException - if the segment cannot be created
+     */
+    private DataOutputStream stream() throws IOException {
+        if (out == null) {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(new File(directory, prefix + segment), true)));
+        }
+        return out;
+    }
+
+
+    /**
+     * Closes the stream of the segment being appended to, if it has been opened
+     * @throws IOException - if the stream cannot be closed
+     */
+    private void closeSegment() throws IOException {
+        if (out != null) {
+            try {
+                out.close();
+            } finally {
+                out = null;
+            }
+        }
+    }
+
+
+    /**
+     * Lists the journal's segment files
+     * @return - the segments, keyed and ordered by number
+     */
+    private TreeMap<Long, File> segments() {
+        final TreeMap<Long, File> segments = new TreeMap<Long, File>();
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                final String name = file.getName();
+                if (name.startsWith(prefix)) {
+                    try {
+                        segments.put(Long.parseLong(name.substring(prefix.length())), file);
+                    } catch (final NumberFormatException e) {
+                        // not a segment
+                    }
+                }
+            }
+        }
+        return segments;
+    }
+
+
+    /**
+     * Reads the body of an account snapshot
+     * @param name - the account name
+     * @param in - the segment stream, positioned after the name
+     * @return - the account
+     * @throws IOException - if the record cannot be read
+     */
+    private static Account readAccount(final String name, final DataInputStream in) throws IOException {
+        final Account account = new AccountImpl();
+        try {
+            account.setName(name);
+        } catch (final AccountException e) {
+            throw new IOException("Journaled account has an invalid name: " + name, e);
+        }
+
+        final int hashLength = in.readInt();
+        if (hashLength >= 0) {
+            final byte[] passwordHash = new byte[hashLength];
+            in.readFully(passwordHash);
+            account.setPasswordHash(passwordHash);
+        }
+        account.setBalance(in.readInt());
+        account.setFullName(readString(in));
+        account.setPhone(readString(in));
+        account.setEmail(readString(in));
+
+        if (in.readBoolean()) {
+            final Address address = new AddressImpl();
+            address.setStreetAddress(readString(in));
+            address.setCity(readString(in));
+            address.setState(readString(in));
+            address.setZipCode(readString(in));
+            account.setAddress(address);
+        }
+
+        if (in.readBoolean()) {
+            final CreditCard card = new CreditCardImpl();
+            card.setAccountNumber(readString(in));
+            card.setIssuer(readString(in));
+            card.setType(readString(in));
+            card.setHolder(readString(in));
+            card.setExpirationDate(readString(in));
+            account.setCreditCard(card);
+        }
+        return account;
+    }
+
+
+    /**
+     * Writes a string that may be null
+     * @param out - the stream
+     * @param value - the string
+     * @throws IOException - if the string cannot be written
+     */
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+
+    /**
+     * Reads a string written by writeString
+     * @param in - the stream
+     * @return - the string, possibly null
+     * @throws IOException - if the string cannot be read
+     */
+    private static String readString(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
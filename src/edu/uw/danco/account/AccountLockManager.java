@@ -0,0 +1,145 @@
+package edu.uw.danco.account;
+
+import edu.uw.ext.framework.account.AccountManager;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 9:30 PM
+ *
+ * Striped locks guarding account balances. An account name always maps to the same stripe, so updates of an account
+ * are serialized while updates of accounts on different stripes run in parallel. Each stripe counts how often it is
+ * acquired and how often the acquiring thread had to wait, a stripe count is right when the contended share stays
+ * low and is spread evenly over the stripes.
+ */
+public final class AccountLockManager {
+
+    /** The number of stripes used when none is configured */
+    public static final int DEFAULT_STRIPES = 64;
+
+    /** Lock manager of the accounts not managed by an AccountManagerImpl */
+    private static final AccountLockManager SHARED = new AccountLockManager(DEFAULT_STRIPES);
+
+    /** The locks */
+    private final Lock[] stripes;
+
+    /** Mask selecting a stripe from a hash, the number of stripes is a power of two */
+    private final int mask;
+
+    /** Number of times each stripe has been acquired */
+    private final AtomicLongArray acquisitions;
+
+    /** Number of times each stripe was held by another thread when acquired */
+    private final AtomicLongArray contended;
+
+
+    /**
+     * Constructor
+     * @param stripes - the number of stripes, rounded up to a power of two
+     */
+    public AccountLockManager(final int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Stripe count must be at least 1: " + stripes);
+        }
+        final int size = Integer.highestOneBit(stripes) == stripes ? stripes : Integer.highestOneBit(stripes) << 1;
+        this.stripes = new Lock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+        acquisitions = new AtomicLongArray(size);
+        contended = new AtomicLongArray(size);
+    }
+
+
+    /**
+     * Gets the lock manager guarding the accounts of an account manager
+     * @param accountManager - the account manager, may be null
+     * @return - the account manager's lock manager, or one shared by the accounts of other account managers
+     */
+    public static AccountLockManager of(final AccountManager accountManager) {
+        return accountManager instanceof AccountManagerImpl
+                ? ((AccountManagerImpl) accountManager).getLockManager()
+                : SHARED;
+    }
+
+
+    /**
+     * Acquires the stripe of an account
+     * @param accountName - the account name
+     * @return - the acquired lock, the caller unlocks it
+     */
+    public Lock lock(final String accountName) {
+        final int stripe = stripeOf(accountName);
+        final Lock lock = stripes[stripe];
+        acquisitions.incrementAndGet(stripe);
+        if (!lock.tryLock()) {
+            contended.incrementAndGet(stripe);
+            lock.lock();
+        }
+        return lock;
+    }
+
+
+    /**
+     * Gets the stripe an account maps to
+     * @param accountName - the account name
+     * @return - the stripe
+     */
+    public int stripeOf(final String accountName) {
+        final int h = accountName.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+
+    /**
+     * Gets the number of stripes
+     * @return - the number of stripes
+     */
+    public int getStripes() {
+        return stripes.length;
+    }
+
+
+    /**
+     * Gets the number of times a stripe has been acquired
+     * @param stripe - the stripe
+     * @return - the number of acquisitions
+     */
+    public long getAcquisitions(final int stripe) {
+        return acquisitions.get(stripe);
+    }
+
+
+    /**
+     * Gets the number of times a stripe was held by another thread when acquired
+     * @param stripe - the stripe
+     * @return - the number of contended acquisitions
+     */
+    public long getContended(final int stripe) {
+        return contended.get(stripe);
+    }
+
+
+    @Override
+    public String toString() {
+        long totalAcquisitions = 0;
+        long totalContended = 0;
+        int hottest = 0;
+        for (int stripe = 0; stripe < stripes.length; stripe++) {
+            totalAcquisitions += acquisitions.get(stripe);
+            totalContended += contended.get(stripe);
+            if (contended.get(stripe) > contended.get(hottest)) {
+                hottest = stripe;
+            }
+        }
+        return String.format("stripes=%d acquisitions=%d contended=%d hottest=%d (%d of %d contended)",
+                             stripes.length, totalAcquisitions, totalContended,
+                             hottest, contended.get(hottest), acquisitions.get(hottest));
+    }
+}
@@ -4,6 +4,8 @@ import edu.uw.ext.framework.account.AccountManager;
 import edu.uw.ext.framework.account.AccountManagerFactory;
 import edu.uw.ext.framework.dao.AccountDao;
 
+import java.io.File;
+
 /**
  * Created with IntelliJ IDEA.
  * User: dcostinett
@@ -12,6 +14,25 @@ import edu.uw.ext.framework.dao.AccountDao;
  */
 public class AccountManagerFactoryImpl implements AccountManagerFactory {
 
+    /** When persist returns relative to the account reaching the DAO */
+    private Durability durability = Durability.SYNC;
+
+    /** Number of pending accounts that makes the ASYNC account writer write them */
+    private int batchSize = 64;
+
+    /** The longest a pending account waits for the account writer */
+    private long flushIntervalMillis = 100;
+
+    /** The write-ahead journal used with ASYNC durability, null for none */
+    private String journalFile;
+
+    /** The number of accounts each account manager caches, 0 for no cache */
+    private int cacheSize;
+
+    /** The number of locks each account manager stripes the account balances over */
+    private int lockStripes = AccountLockManager.DEFAULT_STRIPES;
+
+
     /**
      * Instantiates a new account manager instance.
      * @param dao - the data access object to be used by the account manager
@@ -19,7 +40,76 @@ public class AccountManagerFactoryImpl implements AccountManagerFactory {
      */
     @Override
     public AccountManager newAccountManager(AccountDao dao) {
-        AccountManager accountManager = new AccountManagerImpl(dao);
+        AccountManager accountManager = new AccountManagerImpl(dao, durability, batchSize, flushIntervalMillis,
+                                                               journalFile == null ? null : new File(journalFile),
+                                                               cacheSize, lockStripes);
         return accountManager;
     }
+
+
+    /**
+     * Sets when persist returns relative to the account reaching the DAO
+     * @param durability - the durability
+     */
+    public void setDurability(final Durability durability) {
+        this.durability = durability;
+    }
+
+
+    /**
+     * Sets the number of pending accounts that makes the ASYNC account writer write them
+     * @param batchSize - the batch size, at least 1
+     */
+    public void setBatchSize(final int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * Sets the longest a pending account waits for the account writer
+     * @param flushIntervalMillis - the interval in milliseconds, at least 1
+     */
+    public void setFlushIntervalMillis(final long flushIntervalMillis) {
+        if (flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("Flush interval must be at least 1: " + flushIntervalMillis);
+        }
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+
+    /**
+     * Sets the write-ahead journal used with ASYNC durability, an account manager replays the journal left by the
+     * previous one whatever its durability
+     * @param journalFile - the journal's path, its segments are created next to it
+     */
+    public void setJournalFile(final String journalFile) {
+        this.journalFile = journalFile;
+    }
+
+
+    /**
+     * Sets the number of accounts each account manager caches
+     * @param cacheSize - the cache size, 0 for no cache
+     */
+    public void setCacheSize(final int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative: " + cacheSize);
+        }
+        this.cacheSize = cacheSize;
+    }
+
+
+    /**
+     * Sets the number of locks each account manager stripes the account balances over
+     * @param lockStripes - the number of stripes, rounded up to a power of two
+     */
+    public void setLockStripes(final int lockStripes) {
+        if (lockStripes < 1) {
+            throw new IllegalArgumentException("Stripe count must be at least 1: " + lockStripes);
+        }
+        this.lockStripes = lockStripes;
+    }
 }
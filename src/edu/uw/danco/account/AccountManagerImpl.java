@@ -1,15 +1,24 @@
 package edu.uw.danco.account;
 
 import edu.uw.danco.dao.AccountDaoImpl;
+import edu.uw.danco.dao.BatchAccountDao;
 import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.AccountFactory;
 import edu.uw.ext.framework.account.AccountManager;
 import edu.uw.ext.framework.dao.AccountDao;
 
+import java.io.File;
+import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,6 +27,22 @@ import java.util.logging.Logger;
  * User: dcostinett
  * Date: 4/16/13
  * Time: 8:48 PM
+ *
+ * With SYNC durability every persist is written to the DAO by the calling thread. Otherwise persisted accounts are
+ * held as pending, keyed by name so repeated updates of an account coalesce into one write of its latest state, and
+ * an account writer thread writes them in batches, through BatchAccountDao.setAccounts when the DAO supports it.
+ * See Durability for when persist returns. getAccount serves pending accounts from memory, so an account being
+ * traded is never read back from the DAO while its latest state has not been written.
+ *
+ * A batch the DAO rejects is written again one account at a time, so an account that cannot be written holds up no
+ * other. Such an account fails the GROUP_COMMIT persist waiting for it and is pending again, after MAX_WRITE_ATTEMPTS
+ * failed writes in a row it is dropped.
+ *
+ * With ASYNC durability and a journal file, each persist is also appended to a write-ahead journal, which is
+ * replayed to the DAO when the next account manager using the same journal is created.
+ *
+ * With a cache size the accounts read are kept in an AccountCache, persist replaces the cached instance and
+ * deleteAccount removes it, so each account is read from the DAO once and every caller shares its one instance.
  */
 public class AccountManagerImpl implements AccountManager {
 
@@ -29,36 +54,171 @@ public class AccountManagerImpl implements AccountManager {
     /** The data access object */
     private final AccountDao dao;
 
+    /** How long a GROUP_COMMIT persist and close wait for the account writer */
+    private static final long WRITE_TIMEOUT_MILLIS = 10000;
+
+    /** Number of failed writes in a row after which a pending account is dropped */
+    public static final int MAX_WRITE_ATTEMPTS = 3;
+
     /** The account factory */
     private final AccountFactory accountFactory;
 
+    /** When persist returns relative to the account reaching the DAO */
+    private final Durability durability;
+
+    /** Number of pending accounts that makes the ASYNC account writer write them before the flush interval ends */
+    private final int batchSize;
+
+    /** The longest a pending account waits for the account writer */
+    private final long flushIntervalMillis;
+
+    /** The write-ahead journal, null if there is none */
+    private final AccountJournal journal;
+
+    /** The accounts read, null if they are not cached */
+    private final AccountCache cache;
+
+    /** The locks guarding the balances of the accounts */
+    private final AccountLockManager lockManager;
+
+    /** The persisted accounts not yet taken by the account writer, keyed by name, guarded by pendingLock */
+    private final Map<String, Account> pending = new LinkedHashMap<String, Account>();
+
+    /** The accounts being written, keyed by name, guarded by pendingLock */
+    private Map<String, Account> inFlight = Collections.emptyMap();
+
+    /** The number of the batch the pending accounts will be written in, guarded by pendingLock */
+    private long generation = 1;
+
+    /** The number of the last batch written, guarded by pendingLock */
+    private long written;
+
+    /** The number of failed writes in a row of the accounts being retried, keyed by name, guarded by pendingLock */
+    private final Map<String, Integer> writeAttempts = new HashMap<String, Integer>();
+
     /**
-     * Instatiates a new AccountManager
+     * The number of the last batch each account could not be written in, keyed by name, guarded by pendingLock. Kept
+     * after a later successful write so a GROUP_COMMIT persist still sees the failure of its own batch.
+     */
+    private final Map<String, Long> failedWrites = new HashMap<String, Long>();
+
+    /** Set once close() has been called, guarded by pendingLock */
+    private boolean closed;
+
+    /** Guards the pending accounts, signalled when accounts are pending and when a batch has been written */
+    private final Object pendingLock = new Object();
+
+    /** Held while a batch is being written, so batches are written one at a time and in order */
+    private final Object writeLock = new Object();
+
+    /** The account writer thread, null with SYNC durability */
+    private final Thread writer;
+
+    /**
+     * Instatiates a new AccountManager writing every persist to the DAO
      * @param dao
      */
     public AccountManagerImpl(final AccountDao dao) {
-        this.dao = dao;
-
-        accountFactory = new AccountFactoryImpl();
+        this(dao, Durability.SYNC, 1, 0, null, 0, AccountLockManager.DEFAULT_STRIPES);
     }
 
     /**
      * Default constructor to support JavaBean instantiation
      */
     public AccountManagerImpl() {
-        this.dao = new AccountDaoImpl();
+        this(new AccountDaoImpl());
+    }
+
+    /**
+     * Instantiates a new AccountManager, replaying the journal left by a previous account manager
+     * @param dao - the data access object
+     * @param durability - when persist returns relative to the account reaching the DAO
+     * @param batchSize - number of pending accounts that makes the ASYNC account writer write them
+     * @param flushIntervalMillis - the longest a pending account waits for the account writer
+     * @param journalFile - the write-ahead journal used with ASYNC durability, null for none
+     * @param cacheSize - the number of accounts cached, 0 for no cache
+     * @param lockStripes - the number of locks the account balances are striped over
+     */
+    public AccountManagerImpl(final AccountDao dao, final Durability durability, final int batchSize,
+                              final long flushIntervalMillis, final File journalFile, final int cacheSize,
+                              final int lockStripes) {
+        if (durability != Durability.SYNC && (batchSize < 1 || flushIntervalMillis < 1)) {
+            throw new IllegalArgumentException(String.format(
+                    "Batch size and flush interval must be at least 1: %d, %d", batchSize, flushIntervalMillis));
+        }
+        this.dao = dao;
+        this.durability = durability;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        journal = journalFile == null ? null : new AccountJournal(journalFile);
+        cache = cacheSize > 0 ? new AccountCache(cacheSize) : null;
+        lockManager = new AccountLockManager(lockStripes);
 
         accountFactory = new AccountFactoryImpl();
+
+        if (journal != null) {
+            replayJournal();
+        }
+
+        if (durability == Durability.SYNC) {
+            writer = null;
+        } else {
+            writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeAccounts();
+                }
+            }, "account-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
     }
 
     /**
-     * Used to persist an account
+     * Used to persist an account, see Durability for when the account reaches the DAO
      * @param account - the account to persist
      * @throws AccountException - if operation fails
      */
     @Override
     public void persist(final Account account) throws AccountException {
-        dao.setAccount(account);
+        if (cache != null) {
+            cache.put(account.getName(), account);
+        }
+
+        if (durability == Durability.SYNC) {
+            if (journal != null) {
+                // a journaled account that could not be replayed is superseded
+                synchronized (pendingLock) {
+                    pending.remove(account.getName());
+                }
+            }
+            dao.setAccount(account);
+            return;
+        }
+
+        final long batch;
+        synchronized (pendingLock) {
+            if (closed) {
+                throw new AccountException("Account manager is closed, unable to persist " + account.getName());
+            }
+            if (journal != null && durability == Durability.ASYNC) {
+                try {
+                    journal.append(account);
+                } catch (final IOException e) {
+                    LOGGER.log(Level.SEVERE, "Unable to journal account " + account.getName(), e);
+                    throw new AccountException("Unable to journal account " + account.getName());
+                }
+            }
+            pending.put(account.getName(), account);
+            batch = generation;
+            if (durability == Durability.GROUP_COMMIT || pending.size() >= batchSize) {
+                pendingLock.notifyAll();
+            }
+        }
+
+        if (durability == Durability.GROUP_COMMIT) {
+            awaitWritten(batch, account.getName());
+        }
     }
 
     /**
@@ -69,7 +229,7 @@ public class AccountManagerImpl implements AccountManager {
      */
     @Override
     public Account getAccount(final String accountName) throws AccountException {
-        final Account account = dao.getAccount(accountName);
+        final Account account = lookup(accountName);
 
         if (account != null) {
             account.registerAccountManager(this);
@@ -85,7 +245,26 @@ public class AccountManagerImpl implements AccountManager {
      */
     @Override
     public void deleteAccount(final String accountName) throws AccountException {
-        dao.deleteAccount(accountName);
+        // waits for a batch holding the account to be written, so it cannot bring the account back
+        synchronized (writeLock) {
+            synchronized (pendingLock) {
+                pending.remove(accountName);
+                writeAttempts.remove(accountName);
+                failedWrites.remove(accountName);
+                if (journal != null && durability == Durability.ASYNC) {
+                    try {
+                        journal.appendDelete(accountName);
+                    } catch (final IOException e) {
+                        LOGGER.log(Level.SEVERE, "Unable to journal deletion of account " + accountName, e);
+                        throw new AccountException("Unable to journal deletion of account " + accountName);
+                    }
+                }
+            }
+            dao.deleteAccount(accountName);
+            if (cache != null) {
+                cache.invalidate(accountName);
+            }
+        }
     }
 
     /**
@@ -100,7 +279,7 @@ public class AccountManagerImpl implements AccountManager {
     @Override
     public Account createAccount(final String accountName, final String password, int balance) throws AccountException {
         Account account = null;
-        account = dao.getAccount(accountName);
+        account = lookup(accountName);
         if (account != null) {
             throw new AccountException(String.format("Account %s already exists", accountName));
         }
@@ -111,6 +290,9 @@ public class AccountManagerImpl implements AccountManager {
             account = accountFactory.newAccount(accountName, md.digest(), balance);
             account.registerAccountManager(this);
             dao.setAccount(account);
+            if (cache != null) {
+                cache.put(accountName, account);
+            }
         } catch (NoSuchAlgorithmException e) {
             LOGGER.log(Level.SEVERE, "Unable to create SHA1 hash for password", e);
         }
@@ -132,7 +314,7 @@ public class AccountManagerImpl implements AccountManager {
             MessageDigest md = MessageDigest.getInstance(ALGORITHM);
             md.update(password.getBytes());                     // in general use the getBytes method that takes an encoding type
 
-            Account account = dao.getAccount(accountName);
+            Account account = lookup(accountName);
             if (account != null) {
                 isPasswordMatch = Arrays.equals(account.getPasswordHash(), (md.digest()));
                 //MessageDigest has an isEquals method
@@ -145,12 +327,313 @@ public class AccountManagerImpl implements AccountManager {
     }
 
     /**
-     * Release any resources used by the AccountManager implementation. Once closed
-     * further operations on the AccountManager may fail.
+     * Release any resources used by the AccountManager implementation, after writing the pending accounts. Once
+     * closed further operations on the AccountManager may fail.
      * @throws AccountException - if error occurs accessing accounts
      */
     @Override
     public void close() throws AccountException {
-        dao.close();
+        synchronized (pendingLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pendingLock.notifyAll();
+        }
+        try {
+            if (writer != null) {
+                writer.join(WRITE_TIMEOUT_MILLIS);
+            }
+            writePending();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AccountException("Interrupted waiting for the account writer");
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+            if (cache != null) {
+                LOGGER.info("Account cache " + cache);
+                cache.clear();
+            }
+            LOGGER.info("Account locks " + lockManager);
+            dao.close();
+        }
+    }
+
+    /**
+     * Gets the locks guarding the balances of the accounts, for their contention counts
+     * @return - the lock manager
+     */
+    public AccountLockManager getLockManager() {
+        return lockManager;
+    }
+
+    /**
+     * Gets the account cache, for its hit, miss and eviction counts
+     * @return - the cache, null if accounts are not cached
+     */
+    public AccountCache getAccountCache() {
+        return cache;
+    }
+
+    /**
+     * Looks up an account, pending, in flight and cached accounts are served from memory
+     * @param accountName - the name of the account
+     * @return - the account if located otherwise null
+     * @throws AccountException - if operation fails
+     */
+    private Account lookup(final String accountName) throws AccountException {
+        if (durability != Durability.SYNC || journal != null) {
+            synchronized (pendingLock) {
+                Account account = pending.get(accountName);
+                if (account == null) {
+                    account = inFlight.get(accountName);
+                }
+                if (account != null) {
+                    return account;
+                }
+            }
+        }
+
+        if (cache != null) {
+            final Account cached = cache.get(accountName);
+            if (cached != null) {
+                return cached;
+            }
+            final long stamp = cache.stamp();
+            final Account account = dao.getAccount(accountName);
+            return account == null ? null : cache.putIfAbsent(accountName, account, stamp);
+        }
+        return dao.getAccount(accountName);
+    }
+
+    /**
+     * Waits until a batch has been written
+     * @param batch - the number of the batch
+     * @param accountName - the name of the account being persisted
+     * @throws AccountException - if the batch is not written in time, or the account could not be written
+     */
+    private void awaitWritten(final long batch, final String accountName) throws AccountException {
+        final long deadline = System.currentTimeMillis() + WRITE_TIMEOUT_MILLIS;
+        synchronized (pendingLock) {
+            long remaining = WRITE_TIMEOUT_MILLIS;
+            while (written < batch && remaining > 0) {
+                try {
+                    pendingLock.wait(remaining);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AccountException("Interrupted waiting for account " + accountName + " to be written");
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+            if (written < batch) {
+                throw new AccountException("Timed out waiting for account " + accountName + " to be written");
+            }
+            final Long failedIn = failedWrites.get(accountName);
+            if (failedIn != null && failedIn >= batch) {
+                throw new AccountException("Unable to write account " + accountName);
+            }
+        }
+    }
+
+    /**
+     * Account writer thread body, writes the pending accounts until the account manager is closed. The GROUP_COMMIT
+     * writer writes as soon as an account is pending, the ASYNC writer once batchSize accounts are pending or the
+     * flush interval has passed.
+     */
+    private void writeAccounts() {
+        while (true) {
+            synchronized (pendingLock) {
+                final long deadline = System.currentTimeMillis() + flushIntervalMillis;
+                long remaining = flushIntervalMillis;
+                while (!closed && remaining > 0
+                        && (durability == Durability.GROUP_COMMIT ? pending.isEmpty() : pending.size() < batchSize)) {
+                    try {
+                        pendingLock.wait(remaining);
+                    } catch (final InterruptedException e) {
+                        return;
+                    }
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                if (closed) {
+                    return;
+                }
+            }
+
+            boolean failed = true;
+            try {
+                writePending();
+                failed = false;
+            } catch (final AccountException e) {
+                LOGGER.log(Level.FINE, "Account writer will retry", e);
+            } catch (final RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Account writer failed", e);
+            }
+
+            if (failed) {
+                // the accounts are pending again, retry once the flush interval has passed
+                try {
+                    Thread.sleep(flushIntervalMillis);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the pending accounts as one batch. The accounts that could not be written are pending again, unless
+     * persisted again since or dropped after MAX_WRITE_ATTEMPTS failed writes.
+     * @throws AccountException - if any of the accounts could not be written
+     */
+    private void writePending() throws AccountException {
+        synchronized (writeLock) {
+            final List<Account> accounts;
+            final long batch;
+            long segment = 0;
+            synchronized (pendingLock) {
+                if (pending.isEmpty()) {
+                    // releases the GROUP_COMMIT callers whose account was deleted before it was written
+                    written = generation++;
+                    pendingLock.notifyAll();
+                    return;
+                }
+                accounts = new ArrayList<Account>(pending.values());
+                inFlight = new HashMap<String, Account>(pending);
+                pending.clear();
+                batch = generation++;
+                if (journal != null) {
+                    try {
+                        segment = journal.roll();
+                    } catch (final IOException e) {
+                        LOGGER.log(Level.WARNING, "Unable to roll the account journal", e);
+                    }
+                }
+            }
+
+            // an Error thrown by the DAO leaves every account pending
+            List<Account> failed = accounts;
+            try {
+                failed = write(accounts);
+                if (failed.isEmpty() && segment > 0) {
+                    // the segment still holds the accounts being retried otherwise
+                    journal.discardThrough(segment);
+                }
+            } finally {
+                synchronized (pendingLock) {
+                    for (final Account account : accounts) {
+                        if (!failed.contains(account)) {
+                            writeAttempts.remove(account.getName());
+                        }
+                    }
+                    for (final Account account : failed) {
+                        retryOrDrop(account, batch);
+                    }
+                    written = batch;
+                    inFlight = Collections.emptyMap();
+                    pendingLock.notifyAll();
+                }
+            }
+
+            if (!failed.isEmpty()) {
+                throw new AccountException(String.format("Unable to write %d of %d accounts",
+                                                         failed.size(), accounts.size()));
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of accounts, through BatchAccountDao.setAccounts when the DAO supports it. A batch the DAO
+     * rejects is written again one account at a time.
+     * @param accounts - the accounts
+     * @return - the accounts that could not be written, empty if all of them were
+     */
+    private List<Account> write(final List<Account> accounts) {
+        if (dao instanceof BatchAccountDao && accounts.size() > 1) {
+            try {
+                ((BatchAccountDao) dao).setAccounts(accounts);
+                return Collections.emptyList();
+            } catch (final AccountException e) {
+                LOGGER.log(Level.WARNING, "Unable to write " + accounts.size()
+                        + " accounts as a batch, writing them one at a time", e);
+            } catch (final RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Unable to write " + accounts.size()
+                        + " accounts as a batch, writing them one at a time", e);
+            }
+        }
+
+        final List<Account> failed = new ArrayList<Account>(0);
+        for (final Account account : accounts) {
+            try {
+                dao.setAccount(account);
+            } catch (final AccountException e) {
+                LOGGER.log(Level.SEVERE, "Unable to write account " + account.getName(), e);
+                failed.add(account);
+            } catch (final RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Unable to write account " + account.getName(), e);
+                failed.add(account);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Records a failed write of an account and makes it pending again, unless it has been persisted again since or
+     * has now failed MAX_WRITE_ATTEMPTS times in a row. Must be called holding pendingLock.
+     * @param account - the account
+     * @param batch - the number of the batch it could not be written in
+     */
+    private void retryOrDrop(final Account account, final long batch) {
+        final String name = account.getName();
+        failedWrites.put(name, batch);
+        final Integer previous = writeAttempts.get(name);
+        final int attempts = previous == null ? 1 : previous + 1;
+        if (pending.containsKey(name)) {
+            // the newer state is written by the next batch
+            writeAttempts.put(name, attempts);
+        } else if (attempts < MAX_WRITE_ATTEMPTS) {
+            pending.put(name, account);
+            writeAttempts.put(name, attempts);
+        } else {
+            LOGGER.severe(String.format("Dropping account %s after %d failed writes", name, attempts));
+            writeAttempts.remove(name);
+        }
+    }
+
+    /**
+     * Applies the journal left by a previous account manager, its deletions are made right away and its accounts
+     * become pending, to be written by the first batch
+     */
+    private void replayJournal() {
+        final Map<String, Account> journaled;
+        try {
+            journaled = journal.recover();
+        } catch (final IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to read the account journal, it is left in place", e);
+            return;
+        }
+        if (journaled.isEmpty()) {
+            return;
+        }
+
+        LOGGER.info("Replaying " + journaled.size() + " journaled accounts");
+        for (final Map.Entry<String, Account> entry : journaled.entrySet()) {
+            if (entry.getValue() == null) {
+                try {
+                    dao.deleteAccount(entry.getKey());
+                } catch (final AccountException e) {
+                    LOGGER.log(Level.SEVERE, "Unable to delete journaled account " + entry.getKey(), e);
+                }
+            } else {
+                entry.getValue().registerAccountManager(this);
+                pending.put(entry.getKey(), entry.getValue());
+            }
+        }
+        try {
+            writePending();
+        } catch (final AccountException e) {
+            LOGGER.log(Level.SEVERE, "Unable to write the journaled accounts, they remain pending", e);
+        }
     }
 }
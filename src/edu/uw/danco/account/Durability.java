@@ -0,0 +1,26 @@
+package edu.uw.danco.account;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 8:45 PM
+ *
+ * Selects when AccountManagerImpl.persist() returns relative to the account reaching the DAO.
+ */
+public enum Durability {
+    /** The account is written to the DAO by the calling thread, one call per persist */
+    SYNC,
+
+    /**
+     * The account is handed to the account writer and the call waits until the batch holding it has been written,
+     * the accounts persisted while a batch is being written are written together in the next one
+     */
+    GROUP_COMMIT,
+
+    /**
+     * The account is recorded in the write-ahead journal, if one is configured, and the call returns, the account
+     * writer writes the accounts in batches once enough are pending or the flush interval has passed
+     */
+    ASYNC
+}
@@ -0,0 +1,24 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+
+import java.util.List;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 3:10 PM
+ *
+ * An OrderProcessor that can process several dispatched orders at once. Order queues that find a batch processor
+ * registered drain up to their batch size of ready orders per wakeup and hand them over in a single call.
+ */
+public interface BatchOrderProcessor extends OrderProcessor {
+
+    /**
+     * Processes a batch of dispatched orders
+     * @param orders - the orders, in dispatch order, the list may be reused by the queue once this call returns
+     */
+    void processBatch(List<? extends Order> orders);
+}
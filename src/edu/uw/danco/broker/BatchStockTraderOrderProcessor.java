@@ -0,0 +1,112 @@
+package edu.uw.danco.broker;
+
+import edu.uw.danco.exchange.AsyncStockExchange;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.AccountManager;
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.order.Order;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 3:20 PM
+ *
+ * StockTraderOrderProcessor that executes a batch of orders with a single check of the exchange state and one account
+ * lookup per account. Each order is reflected in its account once its trade has executed, at the price the exchange
+ * executed it at, a trade the exchange did not execute leaves the account alone.
+ *
+ * When the exchange is an AsyncStockExchange the trades are sent without waiting for each other, the fills are
+ * applied once every trade has been answered.
+ */
+public class BatchStockTraderOrderProcessor extends StockTraderOrderProcessor implements BatchOrderProcessor {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(BatchStockTraderOrderProcessor.class.getName());
+
+    /** The AccountManager used by this processor */
+    private final AccountManager accountManager;
+
+    /** The exchange used for the execution of orders */
+    private final StockExchange exchange;
+
+
+    /**
+     * Constructor
+     * @param accountManager  - the account manager to be used to update account balances.
+     * @param exchange - the exchange to be used for the execution of orders
+     */
+    public BatchStockTraderOrderProcessor(final AccountManager accountManager, final StockExchange exchange) {
+        super(accountManager, exchange);
+        this.accountManager = accountManager;
+        this.exchange = exchange;
+    }
+
+
+    /**
+     * Executes the orders using the exchange, then reflects each executed order in its account.
+     * @param orders - the orders to process
+     */
+    @Override
+    public void processBatch(final List<? extends Order> orders) {
+        if (!exchange.isOpen()) {
+            return;
+        }
+
+        final Map<Order, Integer> executionPrices = new LinkedHashMap<Order, Integer>();
+        if (exchange instanceof AsyncStockExchange) {
+            final AsyncStockExchange asyncExchange = (AsyncStockExchange) exchange;
+            final Map<Order, CompletableFuture<Integer>> trades =
+                    new LinkedHashMap<Order, CompletableFuture<Integer>>();
+            for (final Order order : orders) {
+                trades.put(order, asyncExchange.executeTradeAsync(order));
+            }
+            for (final Map.Entry<Order, CompletableFuture<Integer>> trade : trades.entrySet()) {
+                try {
+                    // wait out an interrupt, the trades that executed must still reach their accounts
+                    executionPrices.put(trade.getKey(), trade.getValue().join());
+                } catch (CompletionException e) {
+                    LOGGER.log(Level.SEVERE, "Exchange failed to execute order id: " + trade.getKey().getOrderId(),
+                               e.getCause());
+                }
+            }
+        } else {
+            for (final Order order : orders) {
+                executionPrices.put(order, exchange.executeTrade(order));
+            }
+        }
+
+        final Map<String, Account> accounts = new HashMap<String, Account>();
+        for (final Map.Entry<Order, Integer> fill : executionPrices.entrySet()) {
+            final Order order = fill.getKey();
+            if (fill.getValue() <= 0) {
+                LOGGER.log(Level.SEVERE, "Exchange did not execute order id: " + order.getOrderId());
+                continue;
+            }
+            try {
+                Account account = accounts.get(order.getAccountId());
+                if (account == null) {
+                    account = accountManager.getAccount(order.getAccountId());
+                    if (account == null) {
+                        LOGGER.log(Level.SEVERE, "Unable to get account for " + order.getAccountId());
+                        continue;
+                    }
+                    accounts.put(order.getAccountId(), account);
+                }
+                account.reflectOrder(order, fill.getValue());
+            } catch (AccountException e) {
+                LOGGER.log(Level.SEVERE, "Unable to get account for " + order.getAccountId(), e);
+            }
+        }
+    }
+}
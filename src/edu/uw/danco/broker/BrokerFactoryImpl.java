@@ -13,9 +13,21 @@ import edu.uw.ext.framework.exchange.StockExchange;
  */
 public class BrokerFactoryImpl implements BrokerFactory {
 
+    /** The settings applied to the brokers created by this factory */
+    private BrokerSettings settings = new BrokerSettings();
+
     @Override
     public Broker newBroker(String name, AccountManager acctMngr, StockExchange exch) {
-        BrokerImpl broker = new BrokerImpl(name, acctMngr, exch);
+        BrokerImpl broker = new BrokerImpl(name, acctMngr, exch, settings);
         return broker;
     }
+
+
+    /**
+     * Sets the settings applied to the brokers created by this factory
+     * @param settings - the broker settings
+     */
+    public void setSettings(final BrokerSettings settings) {
+        this.settings = settings;
+    }
 }
@@ -1,5 +1,9 @@
 package edu.uw.danco.broker;
 
+import edu.uw.danco.concurrent.ExecutorMode;
+import edu.uw.danco.exchange.AsyncStockExchange;
+import edu.uw.danco.exchange.SymbolTable;
+import edu.uw.danco.exchange.TickerIdListener;
 import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.AccountManager;
@@ -12,10 +16,7 @@ import edu.uw.ext.framework.order.*;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Map;
-import java.util.TreeMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -26,7 +27,7 @@ import java.util.logging.Logger;
  * Date: 4/28/13
  * Time: 2:14 PM
  */
-public class BrokerImpl implements Broker, ExchangeListener {
+public class BrokerImpl implements Broker, TickerIdListener {
     /** The logger */
     private static final Logger LOGGER = Logger.getLogger(BrokerImpl.class.getName());
 
@@ -39,8 +40,11 @@ public class BrokerImpl implements Broker, ExchangeListener {
     /** The stock exchange used by this broker */
     private StockExchange exchange;
 
-    /** The collection of OrderManagers */
-    Map<String, OrderManager> orderManagers;
+    /** The ids of the exchange's tickers, the exchange's own table when it delivers price changes by ticker id */
+    SymbolTable symbols;
+
+    /** The OrderManagers, indexed by ticker id, null for a ticker with no quote */
+    OrderManager[] orderManagers;
 
     /** The Dispatch Filter for market orders */
     private MarketDispatchFilter marketDispatchFilter;
@@ -48,14 +52,15 @@ public class BrokerImpl implements Broker, ExchangeListener {
     /** The market order queue */
     private OrderQueue<Order> marketOrders;
 
-    /** The ExecutorService that will process the dispatched orders */
-    final ExecutorService dispatcher = Executors.newFixedThreadPool(32);
+    /** The executors that will process the dispatched orders */
+    private final ShardedDispatcher dispatcher;
 
 
     /**
      * Constructor for sub classes
      */
     protected BrokerImpl() {
+        dispatcher = newDispatcher(new BrokerSettings());
     }
 
 
@@ -66,30 +71,109 @@ public class BrokerImpl implements Broker, ExchangeListener {
      * @param exchange - the stock exchange used by this broker
      */
     public BrokerImpl(final String brokerName, final AccountManager acctManager, final StockExchange exchange) {
+        this(brokerName, acctManager, exchange, new BrokerSettings());
+    }
+
+
+    /**
+     * Constructor
+     * @param brokerName - name of the broker
+     * @param acctManager - the account manager used by this broker
+     * @param exchange - the stock exchange used by this broker
+     * @param settings - the tuning options for the broker
+     */
+    public BrokerImpl(final String brokerName, final AccountManager acctManager, final StockExchange exchange,
+                      final BrokerSettings settings) {
         this.brokerName = brokerName;
         this.acctManager = acctManager;
         this.exchange = exchange;
+        dispatcher = newDispatcher(settings);
 
-        final OrderProcessor processor = new StockTraderOrderProcessor(acctManager, exchange);
+        final int batchSize = settings.getBatchSize();
+        final OrderProcessor processor = batchSize > 1
+                ? new BatchStockTraderOrderProcessor(acctManager, exchange)
+                : new StockTraderOrderProcessor(acctManager, exchange);
         marketDispatchFilter = new MarketDispatchFilter(exchange.isOpen());
-        marketOrders = new OrderQueueImpl<Order>(marketDispatchFilter, dispatcher);
+        if (settings.isLockFreeDispatch()) {
+            final LockFreeOrderQueue<Order> queue =
+                    new LockFreeOrderQueue<Order>(marketDispatchFilter, dispatcher.getMarketExecutor());
+            queue.setBatchSize(batchSize);
+            marketOrders = queue;
+        } else {
+            final OrderQueueImpl<Order> queue =
+                    new OrderQueueImpl<Order>(marketDispatchFilter, dispatcher.getMarketExecutor());
+            queue.setBatchSize(batchSize);
+            marketOrders = queue;
+        }
         marketOrders.setOrderProcessor(processor);
 
-        String[] stockTickers = exchange.getTickers();
-        orderManagers = new TreeMap<String, OrderManager>();
+        final StockQuote[] quotes = currentQuotes(exchange);
+        if (exchange instanceof AsyncStockExchange) {
+            // index by the exchange's own ids, the ones its price changes are delivered with
+            symbols = ((AsyncStockExchange) exchange).getSymbols();
+        } else {
+            final String[] stockTickers = new String[quotes.length];
+            for (int i = 0; i < quotes.length; i++) {
+                stockTickers[i] = quotes[i].getTicker();
+            }
+            symbols = new SymbolTable(stockTickers);
+        }
+        orderManagers = new OrderManager[symbols.size()];
 
         final OrderProcessor orderProc = new MoveToMarketQueueProcessor(marketOrders);
-        for (String stockTicker : stockTickers) {
-            StockQuote quote = exchange.getQuote(stockTicker);
-            OrderManager orderManager = new OrderManagerImpl(quote.getTicker(), quote.getPrice(), dispatcher);
+        for (final StockQuote quote : quotes) {
+            final int tickerId = symbols.idOf(quote.getTicker());
+            if (tickerId < 0) {
+                LOGGER.warning("Not managing orders for " + quote.getTicker() + ", it has no ticker id");
+                continue;
+            }
+            OrderManager orderManager = new OrderManagerImpl(quote.getTicker(), quote.getPrice(),
+                                                             dispatcher.laneFor(quote.getTicker()));
             orderManager.setOrderProcessor(orderProc);
-            orderManagers.put(stockTicker, orderManager);
+            orderManagers[tickerId] = orderManager;
         }
         // think about making a view of the HashMap an immutable map?
 
         exchange.addExchangeListener(this);     //when adding self as listener, always do it as the last thing.
     }
 
+    /**
+     * Gets the current quote of every ticker on the exchange, in one request if the exchange supports it
+     * @param exchange - the exchange
+     * @return - the quotes, in the exchange's getTickers() order
+     */
+    private static StockQuote[] currentQuotes(final StockExchange exchange) {
+        if (exchange instanceof AsyncStockExchange) {
+            try {
+                return ((AsyncStockExchange) exchange).getAllQuotesAsync().get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException e) {
+                LOGGER.log(Level.WARNING, "Unable to get all quotes at once, requesting them one at a time",
+                           e.getCause());
+            }
+        }
+
+        final String[] stockTickers = exchange.getTickers();
+        final StockQuote[] quotes = new StockQuote[stockTickers.length];
+        for (int i = 0; i < stockTickers.length; i++) {
+            quotes[i] = exchange.getQuote(stockTickers[i]);
+        }
+        return quotes;
+    }
+
+    /**
+     * Creates the order dispatch executors
+     * @param settings - the broker settings holding the executor sizing
+     * @return - the dispatcher
+     */
+    private static ShardedDispatcher newDispatcher(final BrokerSettings settings) {
+        if (settings.getExecutorMode() == ExecutorMode.VIRTUAL) {
+            return new ShardedDispatcher(ExecutorMode.VIRTUAL.newExecutor("broker-dispatch-"));
+        }
+        return new ShardedDispatcher(settings.getMarketPoolSize(), settings.getLaneCount());
+    }
+
     /**
      * Returns the name of this broker
      * @return - the value for the broker's name
@@ -213,7 +297,7 @@ public class BrokerImpl implements Broker, ExchangeListener {
      */
     @Override
     public void placeOrder(StopBuyOrder order) throws BrokerException {
-        OrderManager manager = orderManagers.get(order.getStockTicker());
+        OrderManager manager = orderManagerFor(order.getStockTicker());
         if (manager == null) {
             LOGGER.log(Level.SEVERE, "Unable to retrieve order manager for ticker: " + order.getStockTicker());
         } else {
@@ -229,7 +313,7 @@ public class BrokerImpl implements Broker, ExchangeListener {
      */
     @Override
     public void placeOrder(StopSellOrder order) throws BrokerException {
-        OrderManager manager = orderManagers.get(order.getStockTicker());
+        OrderManager manager = orderManagerFor(order.getStockTicker());
         if (manager == null) {
             LOGGER.log(Level.SEVERE, "Unable to retrieve order manager for ticker: " + order.getStockTicker());
         } else {
@@ -238,6 +322,23 @@ public class BrokerImpl implements Broker, ExchangeListener {
     }
 
 
+    /**
+     * Cancel an order that has been placed but not yet dispatched. Market orders can only be cancelled when the
+     * market queue is an OrderQueueImpl, the lock free queue applies its cancellations later on its consumer.
+     * @param ticker - the stock symbol of the order
+     * @param orderId - the id of the order to cancel
+     * @return - true if the order has been cancelled, false if it was not queued or has already been dispatched
+     */
+    public boolean cancelOrder(final String ticker, final int orderId) {
+        final OrderManager manager = orderManagerFor(ticker);
+        if (manager instanceof OrderManagerImpl && ((OrderManagerImpl) manager).cancel(orderId)) {
+            return true;
+        }
+        return marketOrders instanceof CancellableOrderQueue
+                && ((CancellableOrderQueue<Order>) marketOrders).cancel(orderId);
+    }
+
+
     /**
      * Close the exchange.
      * @throws BrokerException
@@ -289,7 +390,7 @@ public class BrokerImpl implements Broker, ExchangeListener {
      */
     @Override
     public void priceChanged(ExchangeEvent event) {
-        OrderManager manager = orderManagers.get(event.getTicker());
+        OrderManager manager = orderManagerFor(event.getTicker());
         if (manager == null) {
             LOGGER.log(Level.SEVERE, "Unable to retrieve order manager for ticker: " + event.getTicker());
         } else {
@@ -297,6 +398,32 @@ public class BrokerImpl implements Broker, ExchangeListener {
         }
     }
 
+
+    /**
+     * Event handler for a change in price delivered by ticker id
+     * @param tickerId - the ticker's index in the exchange's getTickers() order
+     * @param price - the new price
+     */
+    @Override
+    public void priceChanged(final int tickerId, final int price) {
+        if (tickerId < 0 || tickerId >= orderManagers.length || orderManagers[tickerId] == null) {
+            LOGGER.log(Level.SEVERE, "Unable to retrieve order manager for ticker id: " + tickerId);
+        } else {
+            orderManagers[tickerId].adjustPrice(price);
+        }
+    }
+
+
+    /**
+     * Gets the order manager of a ticker
+     * @param ticker - the ticker symbol
+     * @return - the order manager, or null if the ticker is not traded on the exchange
+     */
+    private OrderManager orderManagerFor(final String ticker) {
+        final int tickerId = symbols.idOf(ticker);
+        return tickerId < 0 ? null : orderManagers[tickerId];
+    }
+
     /**
      * Sets the account manager.
      * @param accountManager - the account manager
@@ -0,0 +1,123 @@
+package edu.uw.danco.broker;
+
+import edu.uw.danco.concurrent.ExecutorMode;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 2:05 PM
+ *
+ * JavaBean holding the tuning options for BrokerImpl, configured in context.xml and handed to the broker by
+ * BrokerFactoryImpl.
+ */
+public class BrokerSettings {
+
+    /** Whether the market order queue uses the lock free single consumer dispatch mode */
+    private boolean lockFreeDispatch = false;
+
+    /** Maximum number of market orders processed as one batch, 1 processes orders one at a time */
+    private int batchSize = 1;
+
+    /** Number of threads dispatching market orders */
+    private int marketPoolSize = 32;
+
+    /** Number of single threaded lanes the stop order queues are spread over */
+    private int laneCount = 8;
+
+    /** The kind of threads orders are dispatched on */
+    private ExecutorMode executorMode = ExecutorMode.PLATFORM;
+
+
+    /**
+     * Whether the market order queue uses the lock free single consumer dispatch mode
+     * @return - true if producers publish to a lock free inbox rather than taking the queue lock
+     */
+    public boolean isLockFreeDispatch() {
+        return lockFreeDispatch;
+    }
+
+
+    /**
+     * Sets the dispatch mode of the market order queue
+     * @param lockFreeDispatch - true to use LockFreeOrderQueue, false to use OrderQueueImpl
+     */
+    public void setLockFreeDispatch(final boolean lockFreeDispatch) {
+        this.lockFreeDispatch = lockFreeDispatch;
+    }
+
+
+    /**
+     * Gets the maximum number of market orders processed as one batch
+     * @return - the batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+
+    /**
+     * Sets the maximum number of market orders processed as one batch, values above 1 select the
+     * BatchStockTraderOrderProcessor
+     * @param batchSize - the batch size
+     */
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * Gets the number of threads dispatching market orders
+     * @return - the market pool size
+     */
+    public int getMarketPoolSize() {
+        return marketPoolSize;
+    }
+
+
+    /**
+     * Sets the number of threads dispatching market orders
+     * @param marketPoolSize - the market pool size
+     */
+    public void setMarketPoolSize(final int marketPoolSize) {
+        this.marketPoolSize = marketPoolSize;
+    }
+
+
+    /**
+     * Gets the number of single threaded lanes the stop order queues are spread over
+     * @return - the lane count
+     */
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+
+    /**
+     * Sets the number of single threaded lanes the stop order queues are spread over, each ticker is pinned to the
+     * lane chosen by hashing its symbol
+     * @param laneCount - the lane count
+     */
+    public void setLaneCount(final int laneCount) {
+        this.laneCount = laneCount;
+    }
+
+
+    /**
+     * Gets the kind of threads orders are dispatched on
+     * @return - the executor mode
+     */
+    public ExecutorMode getExecutorMode() {
+        return executorMode;
+    }
+
+
+    /**
+     * Sets the kind of threads orders are dispatched on. With VIRTUAL every order queue is dispatched on a virtual
+     * thread per task and the pool and lane sizing is not used.
+     * @param executorMode - the executor mode
+     */
+    public void setExecutorMode(final ExecutorMode executorMode) {
+        this.executorMode = executorMode;
+    }
+}
@@ -0,0 +1,24 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 11:40 AM
+ *
+ * An OrderQueue whose queued orders can be cancelled by order id.
+ */
+public interface CancellableOrderQueue<E extends Order> extends OrderQueue<E> {
+
+    /**
+     * Cancels a queued order, removing it from the queue so it is never dispatched and the same order may be
+     * queued again
+     * @param orderId - the id of the order to cancel
+     * @return - true if the order was queued and has now been cancelled, false if it was not queued or has already
+     * been dispatched
+     */
+    boolean cancel(int orderId);
+}
@@ -0,0 +1,264 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 1:30 PM
+ *
+ * An OrderQueue where producers never block on the consumer. Enqueued orders are published to a lock free multi
+ * producer inbox, the single drain task (guaranteed by the isQueuedToPool flag) moves them into a priority queue that
+ * only it touches and dispatches from there.
+ *
+ * Because the ordered structure is owned by the drain task, dequeue() only returns an order when it can claim the
+ * consumer role, if a drain task is already running it returns null and leaves the dispatching to that task.
+ *
+ * Cancellations are published through the same inbox as the orders, so the consumer applies an enqueue and a cancel
+ * of the same order in the order they were made.
+ */
+public final class LockFreeOrderQueue<E extends Order> implements OrderQueue<E>, Runnable {
+
+    /** Orders and Cancellations published by producers and not yet seen by the consumer */
+    private final Queue<Object> inbox = new ConcurrentLinkedQueue<Object>();
+
+    /** The ordered orders, only accessed by the consumer */
+    private final PriorityQueue<E> queue;
+
+    /** Ids of the orders in the priority queue, only accessed by the consumer */
+    private final OrderIdSet liveOrderIds = new OrderIdSet();
+
+    /** The dispatch filter used to control dispatching from this queue */
+    private final OrderDispatchFilter<?, E> filter;
+
+    /** Dispatcher that handles dispatching orders in an executor thread */
+    private final ExecutorService dispatcher;
+
+    /** Set while a consumer owns the priority queue */
+    private final AtomicBoolean isQueuedToPool = new AtomicBoolean(false);
+
+    /** Set whenever dispatching is requested, lets the consumer notice requests made while it was finishing up */
+    private volatile boolean dispatchRequested;
+
+    /** The processor used during order processing */
+    private volatile OrderProcessor orderProcessor;
+
+    /** Maximum number of orders handed to a BatchOrderProcessor per call */
+    private volatile int batchSize = 1;
+
+
+    /**
+     * Constructor
+     * @param orderComparator - Comparator to be used for ordering
+     * @param filter - the dispatch filter used to control dispatching from this queue
+     * @param dispatcher - the executor the orders are dispatched on
+     */
+    public LockFreeOrderQueue(final Comparator<E> orderComparator,
+                              final OrderDispatchFilter<?, E> filter,
+                              final ExecutorService dispatcher) {
+        queue = new PriorityQueue<E>(20, orderComparator);
+        this.filter = filter;
+        this.dispatcher = dispatcher;
+        this.filter.setOrderQueue(this);
+    }
+
+
+    /**
+     * Constructor, the orders are dispatched in their natural ordering
+     * @param filter - the dispatch filter used to control dispatching from this queue
+     * @param dispatcher - the executor the orders are dispatched on
+     */
+    public LockFreeOrderQueue(final OrderDispatchFilter<?, E> filter, final ExecutorService dispatcher) {
+        this(null, filter, dispatcher);
+    }
+
+
+    /**
+     * Publishes the order to the consumer and requests dispatching.
+     * @param order - the order to be added to the queue
+     */
+    @Override
+    public void enqueue(final E order) {
+        inbox.offer(order);
+        dispatchOrders();
+    }
+
+
+    /**
+     * Removes the highest dispatchable order if the caller can claim the consumer role.
+     * @return - the first dispatchable order, or null if there is none or a drain task currently owns the queue
+     */
+    @Override
+    public E dequeue() {
+        E order = null;
+        if (isQueuedToPool.compareAndSet(false, true)) {
+            try {
+                order = nextDispatchable();
+            } finally {
+                isQueuedToPool.set(false);
+            }
+            if (dispatchRequested || !inbox.isEmpty()) {
+                dispatchOrders();
+            }
+        }
+        return order;
+    }
+
+
+    /**
+     * Cancels a queued order, the cancellation is applied by the consumer, which removes the order from the queue if
+     * it has not been dispatched by then.
+     * @param orderId - the id of the order to cancel
+     */
+    public void cancel(final int orderId) {
+        inbox.offer(new Cancellation(orderId));
+    }
+
+
+    /**
+     * Queues the drain task to the dispatcher unless one is already running, never blocks.
+     */
+    @Override
+    public void dispatchOrders() {
+        dispatchRequested = true;
+        if (isQueuedToPool.compareAndSet(false, true)) {
+            dispatcher.execute(this);
+        }
+    }
+
+
+    /**
+     * Registers the callback to be used during order processing.
+     * @param proc - the callback to be registered
+     */
+    @Override
+    public void setOrderProcessor(final OrderProcessor proc) {
+        orderProcessor = proc;
+    }
+
+
+    /**
+     * Sets the maximum number of ready orders drained per wakeup when a BatchOrderProcessor is registered
+     * @param batchSize - the maximum batch size, 1 disables batching
+     */
+    public void setBatchSize(final int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * Dispatcher process, runs as the only consumer of the queue.
+     */
+    @Override
+    public void run() {
+        final OrderProcessor op = orderProcessor;
+        final BatchOrderProcessor batchProcessor =
+                batchSize > 1 && op instanceof BatchOrderProcessor ? (BatchOrderProcessor) op : null;
+        final List<E> batch = new ArrayList<E>();
+
+        while (true) {
+            dispatchRequested = false;
+            batch.clear();
+            E order;
+            while (batch.size() < batchSize && (order = nextDispatchable()) != null) {
+                batch.add(order);
+            }
+            if (batch.isEmpty()) {
+                isQueuedToPool.set(false);
+                // a producer may have published, or the threshold moved, after we looked
+                if ((dispatchRequested || !inbox.isEmpty()) && isQueuedToPool.compareAndSet(false, true)) {
+                    continue;
+                }
+                break;
+            }
+
+            if (batchProcessor != null) {
+                batchProcessor.processBatch(batch);
+            } else if (op != null) {
+                for (final E dispatched : batch) {
+                    op.process(dispatched);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Applies the published orders and cancellations to the consumer owned structures, in the order they were
+     * published, and removes the first dispatchable order. Must only be called by the consumer.
+     * @return - the first dispatchable order, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    private E nextDispatchable() {
+        Object published;
+        while ((published = inbox.poll()) != null) {
+            if (published instanceof Cancellation) {
+                remove(((Cancellation) published).orderId);
+            } else {
+                final E order = (E) published;
+                if (liveOrderIds.add(order.getOrderId())) {
+                    queue.add(order);
+                }
+            }
+        }
+
+        final E head = queue.peek();
+        E order = null;
+        if (head != null && filter.check(head)) {
+            order = queue.poll();
+            liveOrderIds.remove(order.getOrderId());
+        }
+        return order;
+    }
+
+
+    /**
+     * Removes a cancelled order from the priority queue. Must only be called by the consumer.
+     * @param orderId - the id of the order
+     */
+    private void remove(final int orderId) {
+        if (liveOrderIds.remove(orderId)) {
+            final Iterator<E> it = queue.iterator();
+            while (it.hasNext()) {
+                if (it.next().getOrderId() == orderId) {
+                    it.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * A cancellation published through the inbox.
+     */
+    private static final class Cancellation {
+        /** The id of the order to cancel */
+        private final int orderId;
+
+        /**
+         * Constructor
+         * @param orderId - the id of the order to cancel
+         */
+        Cancellation(final int orderId) {
+            this.orderId = orderId;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package edu.uw.danco.broker;
+
+import java.util.Arrays;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 11:05 AM
+ *
+ * A set of order ids backed by an open addressing table of primitive ints using linear probing. Removal uses
+ * backward shift deletion so the table never accumulates tombstones.
+ *
+ * This class is not thread safe, callers must provide their own locking.
+ */
+public final class OrderIdSet {
+
+    /** Marks an unused slot, the zero id is tracked separately */
+    private static final int EMPTY = 0;
+
+    /** The default initial capacity, must be a power of two */
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /** The table is grown once it is half full */
+    private static final int MAX_LOAD_SHIFT = 1;
+
+    /** The slots */
+    private int[] slots;
+
+    /** Mask used to map a hash to a slot */
+    private int mask;
+
+    /** Number of ids in the table, not counting the zero id */
+    private int size;
+
+    /** Whether the zero id is in the set */
+    private boolean containsZero;
+
+
+    /**
+     * Constructor
+     */
+    public OrderIdSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * Constructor
+     * @param expectedSize - the number of ids expected to be held
+     */
+    public OrderIdSet(final int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity >> MAX_LOAD_SHIFT < expectedSize) {
+            capacity <<= 1;
+        }
+        slots = new int[capacity];
+        mask = capacity - 1;
+    }
+
+
+    /**
+     * Adds an id to the set
+     * @param id - the order id
+     * @return - true if the id was not already in the set
+     */
+    public boolean add(final int id) {
+        if (id == EMPTY) {
+            final boolean added = !containsZero;
+            containsZero = true;
+            return added;
+        }
+
+        int slot = hash(id) & mask;
+        while (slots[slot] != EMPTY) {
+            if (slots[slot] == id) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id;
+        if (++size > (slots.length >> MAX_LOAD_SHIFT)) {
+            rehash(slots.length << 1);
+        }
+        return true;
+    }
+
+
+    /**
+     * Tests for the presence of an id
+     * @param id - the order id
+     * @return - true if the id is in the set
+     */
+    public boolean contains(final int id) {
+        if (id == EMPTY) {
+            return containsZero;
+        }
+
+        int slot = hash(id) & mask;
+        while (slots[slot] != EMPTY) {
+            if (slots[slot] == id) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+
+    /**
+     * Removes an id from the set
+     * @param id - the order id
+     * @return - true if the id was in the set
+     */
+    public boolean remove(final int id) {
+        if (id == EMPTY) {
+            final boolean removed = containsZero;
+            containsZero = false;
+            return removed;
+        }
+
+        int slot = hash(id) & mask;
+        while (slots[slot] != EMPTY) {
+            if (slots[slot] == id) {
+                shiftBack(slot);
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+
+    /**
+     * Gets the number of ids in the set
+     * @return - the size of the set
+     */
+    public int size() {
+        return containsZero ? size + 1 : size;
+    }
+
+
+    /**
+     * Removes all the ids
+     */
+    public void clear() {
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+        containsZero = false;
+    }
+
+
+    /**
+     * Closes the gap left by a removed id by moving back any following ids whose probe sequence passes through it.
+     * @param gap - the slot that was emptied
+     */
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            final int id = slots[slot];
+            if (id == EMPTY) {
+                break;
+            }
+            final int home = hash(id) & mask;
+            // move the id if its home slot is not cyclically within (gap, slot]
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                slots[gap] = id;
+                gap = slot;
+            }
+        }
+        slots[gap] = EMPTY;
+    }
+
+
+    /**
+     * Grows the table
+     * @param capacity - the new capacity, a power of two
+     */
+    private void rehash(final int capacity) {
+        final int[] old = slots;
+        slots = new int[capacity];
+        mask = capacity - 1;
+        for (final int id : old) {
+            if (id != EMPTY) {
+                int slot = hash(id) & mask;
+                while (slots[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = id;
+            }
+        }
+    }
+
+
+    /**
+     * Spreads the bits of an id, order ids are sequential so they need mixing before masking.
+     * @param id - the order id
+     * @return - the mixed hash
+     */
+    private static int hash(final int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -54,12 +54,8 @@ public class OrderManagerImpl implements OrderManager {
         stopBuyOrderFilter = new StopBuyOrderDispatchFilter(price);
         stopSellOrderFilter = new StopSellOrderDispatchFilter(price);
 
-        stopBuyOrderQueue = new OrderQueueImpl<StopBuyOrder>(StopBuyOrderComparator.INSTANCE,
-                                                                    stopBuyOrderFilter,
-                                                                    dispatcher);
-        stopSellOrderQueue = new OrderQueueImpl<StopSellOrder>(StopSellOrderComparator.INSTANCE,
-                                                                      stopSellOrderFilter,
-                                                                      dispatcher);
+        stopBuyOrderQueue = new StopBuyOrderBook(stopBuyOrderFilter, dispatcher);
+        stopSellOrderQueue = new StopSellOrderBook(stopSellOrderFilter, dispatcher);
     }
 
 
@@ -104,6 +100,28 @@ public class OrderManagerImpl implements OrderManager {
     }
 
 
+    /**
+     * Cancels a queued stop order, if the queue holding it supports cancelling
+     * @param orderId - the id of the order to cancel
+     * @return - true if the order was queued and has now been cancelled, false if it was not queued, has already
+     * been dispatched or its queue cannot cancel orders
+     */
+    public boolean cancel(final int orderId) {
+        return cancel(stopBuyOrderQueue, orderId) || cancel(stopSellOrderQueue, orderId);
+    }
+
+
+    /**
+     * Cancels an order in a queue, if the queue supports cancelling
+     * @param queue - the queue
+     * @param orderId - the id of the order to cancel
+     * @return - true if the order has been cancelled
+     */
+    private static boolean cancel(final OrderQueue<?> queue, final int orderId) {
+        return queue instanceof CancellableOrderQueue && ((CancellableOrderQueue<?>) queue).cancel(orderId);
+    }
+
+
     /**
      * Registers the processor to be used during order processing. This will be passed on to the order queues as the
      * dispatch callback.
@@ -2,10 +2,12 @@ package edu.uw.danco.broker;
 
 import edu.uw.ext.framework.broker.OrderDispatchFilter;
 import edu.uw.ext.framework.broker.OrderProcessor;
-import edu.uw.ext.framework.broker.OrderQueue;
 import edu.uw.ext.framework.order.Order;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
@@ -22,7 +24,7 @@ import java.util.logging.Logger;
  * A simple OrderQueue implementation backed by a BlockingQueue.
  *
  */
-public final class OrderQueueImpl<E extends Order> implements OrderQueue<E>, Runnable {
+public final class OrderQueueImpl<E extends Order> implements CancellableOrderQueue<E>, Runnable {
 
     /** The logger for this class */
     private static final Logger LOGGER = Logger.getLogger(OrderQueueImpl.class.getName());
@@ -46,6 +48,12 @@ public final class OrderQueueImpl<E extends Order> implements OrderQueue<E>, Run
     /** Boolean to determine if the order getting processed has been queued to the active pool */
     private AtomicBoolean isQueuedToPool = new AtomicBoolean(false);
 
+    /** Ids of the orders in the queue, guarded by queuelock */
+    private final OrderIdSet liveOrderIds = new OrderIdSet();
+
+    /** Maximum number of orders handed to a BatchOrderProcessor per call */
+    private volatile int batchSize = 1;
+
     /**
      * Constructor
      * @param orderComparator - Comparator to be used for ordering
@@ -75,13 +83,14 @@ public final class OrderQueueImpl<E extends Order> implements OrderQueue<E>, Run
 
     /**
      * Adds the specified order to the queue. Subsequent to adding the order dispatches any dispatchable orders.
+     * Orders already in the queue are rejected using the order id index rather than a scan of the queue.
      * @param order - the order to be added to the queue
      */
     @Override
     public void enqueue(final E order) {
         queuelock.lock();
         try {
-            if (!queue.contains(order)) {
+            if (liveOrderIds.add(order.getOrderId())) {
                 queue.add(order);
             }
         } finally {
@@ -105,6 +114,7 @@ public final class OrderQueueImpl<E extends Order> implements OrderQueue<E>, Run
                 if (filter != null && filter.check(queue.peek())) {
                     try {
                         order = queue.take();
+                        liveOrderIds.remove(order.getOrderId());
                     } catch (InterruptedException e) {
                         LOGGER.log(Level.WARNING, "Interrupted waiting for queue element", e);
                     }
@@ -117,6 +127,34 @@ public final class OrderQueueImpl<E extends Order> implements OrderQueue<E>, Run
     }
 
 
+    /**
+     * Cancels a queued order. An id that is not queued is turned away by the id index, a queued order is found by a
+     * search of the queue and removed from it.
+     * @param orderId - the id of the order to cancel
+     * @return - true if the order was queued and has now been cancelled, false if it was not queued or has already
+     * been dispatched
+     */
+    @Override
+    public boolean cancel(final int orderId) {
+        queuelock.lock();
+        try {
+            if (!liveOrderIds.remove(orderId)) {
+                return false;
+            }
+            final Iterator<E> it = queue.iterator();
+            while (it.hasNext()) {
+                if (it.next().getOrderId() == orderId) {
+                    it.remove();
+                    break;
+                }
+            }
+            return true;
+        } finally {
+            queuelock.unlock();
+        }
+    }
+
+
     /**
      * Executes the orderProcessor for each dispatchable order. Each dispatchable order is in turn removed from the
      * queue and passed to the callback. If no callback is registered the order is simply removed from the queue.
@@ -144,11 +182,29 @@ public final class OrderQueueImpl<E extends Order> implements OrderQueue<E>, Run
     }
 
 
+    /**
+     * Sets the maximum number of ready orders drained per wakeup when a BatchOrderProcessor is registered
+     * @param batchSize - the maximum batch size, 1 disables batching
+     */
+    public void setBatchSize(final int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+
     /**
      * Dispatcher process
      */
     @Override
     public void run() {
+        final OrderProcessor processor = orderProcessor;
+        if (batchSize > 1 && processor instanceof BatchOrderProcessor) {
+            runBatches((BatchOrderProcessor) processor);
+            return;
+        }
+
         while (true) {
             queuelock.lock();
             Order order;
@@ -167,4 +223,29 @@ public final class OrderQueueImpl<E extends Order> implements OrderQueue<E>, Run
             }
         }
     }
+
+
+    /**
+     * Dispatcher process for batch processors, drains up to batchSize dispatchable orders at a time
+     * @param processor - the batch processor
+     */
+    private void runBatches(final BatchOrderProcessor processor) {
+        while (true) {
+            final List<E> batch = new ArrayList<E>(batchSize);
+            queuelock.lock();
+            try {
+                E order;
+                while (batch.size() < batchSize && (order = dequeue()) != null) {
+                    batch.add(order);
+                }
+                if (batch.isEmpty()) {
+                    isQueuedToPool.set(false);
+                    break;
+                }
+            } finally {
+                queuelock.unlock();
+            }
+            processor.processBatch(batch);
+        }
+    }
 }
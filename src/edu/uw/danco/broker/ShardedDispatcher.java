@@ -0,0 +1,131 @@
+package edu.uw.danco.broker;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 4:05 PM
+ *
+ * The executors used by a broker to dispatch orders. Market orders are dispatched on their own pool, the stop order
+ * queues of each ticker are pinned to one of a fixed number of single threaded lanes chosen by hashing the ticker
+ * symbol. A busy ticker can then only delay the tickers sharing its lane, and all the work for a ticker stays on one
+ * thread.
+ *
+ * The work queues are unbounded. Each order queue has at most one drain task submitted at a time, so an executor
+ * never holds more tasks than the number of queues dispatched on it, and a task is never run on the submitting
+ * thread, which may be another lane or be holding its own queue's lock.
+ */
+public final class ShardedDispatcher {
+
+    /** The pool market orders are dispatched on */
+    private final ExecutorService marketPool;
+
+    /** The single threaded lanes the stop order queues are dispatched on */
+    private final ExecutorService[] lanes;
+
+
+    /**
+     * Constructor
+     * @param marketPoolSize - the number of threads dispatching market orders
+     * @param laneCount - the number of single threaded lanes for the stop order queues
+     */
+    public ShardedDispatcher(final int marketPoolSize, final int laneCount) {
+        if (marketPoolSize < 1 || laneCount < 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid dispatcher sizing, marketPoolSize=%d, laneCount=%d", marketPoolSize, laneCount));
+        }
+
+        marketPool = newPool(marketPoolSize, "broker-market-");
+        lanes = new ExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = newPool(1, "broker-lane-" + i + "-");
+        }
+    }
+
+
+    /**
+     * Constructor for a dispatcher that runs all of the order queues on one executor, used with executors that start
+     * a thread per task such as virtual thread executors. Each queue still has at most one drain task running.
+     * @param executor - the executor for all the order queues
+     */
+    public ShardedDispatcher(final ExecutorService executor) {
+        marketPool = executor;
+        lanes = new ExecutorService[] {executor};
+    }
+
+
+    /**
+     * Gets the executor for the market order queue
+     * @return - the market order executor
+     */
+    public ExecutorService getMarketExecutor() {
+        return marketPool;
+    }
+
+
+    /**
+     * Gets the lane a ticker's stop order queues are pinned to
+     * @param symbol - the ticker symbol
+     * @return - the single threaded executor for the ticker
+     */
+    public ExecutorService laneFor(final String symbol) {
+        return lanes[(symbol.hashCode() & Integer.MAX_VALUE) % lanes.length];
+    }
+
+
+    /**
+     * Initiates an orderly shutdown of all the executors
+     */
+    public void shutdown() {
+        marketPool.shutdown();
+        for (final ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+
+    /**
+     * Waits for all the executors to terminate
+     * @param timeout - the maximum time to wait for all of the executors
+     * @param unit - the unit of the timeout
+     * @return - true if all the executors terminated
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean terminated = marketPool.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        for (final ExecutorService lane : lanes) {
+            terminated &= lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        return terminated;
+    }
+
+
+    /**
+     * Creates a fixed size pool with an unbounded work queue
+     * @param threads - the number of threads
+     * @param namePrefix - prefix for the thread names
+     * @return - the pool
+     */
+    private static ExecutorService newPool(final int threads, final String namePrefix) {
+        final ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(r, namePrefix + count.incrementAndGet());
+            }
+        };
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                      new LinkedBlockingQueue<Runnable>(), threadFactory,
+                                      // only reached once shut down, the broker is closing and the order is dropped
+                                      new ThreadPoolExecutor.DiscardPolicy());
+    }
+}
@@ -1,12 +1,17 @@
 package edu.uw.danco.broker;
 
+import edu.uw.danco.exchange.AsyncStockExchange;
+import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.AccountManager;
 import edu.uw.ext.framework.broker.OrderProcessor;
 import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
 import edu.uw.ext.framework.order.Order;
 import org.springframework.jmx.export.UnableToRegisterMBeanException;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,6 +22,9 @@ import java.util.logging.Logger;
  * Time: 4:31 PM
  *
  * OrderProcessor implementation that executes orders through the broker.
+ *
+ * When the exchange is an AsyncStockExchange the state and quote requests are sent together and the account is
+ * looked up while they are in flight.
  */
 public class StockTraderOrderProcessor implements OrderProcessor {
 
@@ -47,7 +55,9 @@ public class StockTraderOrderProcessor implements OrderProcessor {
      */
     @Override
     public void process(final Order order) {
-        if (exchange.isOpen()) {
+        if (exchange instanceof AsyncStockExchange) {
+            processAsync(order, (AsyncStockExchange) exchange);
+        } else if (exchange.isOpen()) {
             try {
                 accountManager.getAccount(order.getAccountId())
                         .reflectOrder(order, exchange.getQuote(order.getStockTicker()).getPrice());
@@ -57,4 +67,34 @@ public class StockTraderOrderProcessor implements OrderProcessor {
             }
         }
     }
+
+
+    /**
+     * Executes the order, overlapping the exchange round trips with each other and with the account lookup
+     * @param order - the order to process
+     * @param asyncExchange - the exchange
+     */
+    private void processAsync(final Order order, final AsyncStockExchange asyncExchange) {
+        final CompletableFuture<Boolean> open = asyncExchange.isOpenAsync();
+        final CompletableFuture<StockQuote> quote = asyncExchange.getQuoteAsync(order.getStockTicker());
+        try {
+            final Account account = accountManager.getAccount(order.getAccountId());
+            if (!open.get()) {
+                return;
+            }
+            final StockQuote stockQuote = quote.get();
+            if (account == null || stockQuote == null) {
+                LOGGER.log(Level.SEVERE, "Unable to process order id: " + order.getOrderId());
+                return;
+            }
+            account.reflectOrder(order, stockQuote.getPrice());
+            asyncExchange.executeTradeAsync(order).get();
+        } catch (AccountException e) {
+            LOGGER.log(Level.SEVERE, "Unable to get account for " + order.getAccountId(), e);
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.SEVERE, "Exchange request failed for order id: " + order.getOrderId(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -0,0 +1,39 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderDispatchFilter;
+import edu.uw.ext.framework.order.StopBuyOrder;
+
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 9:40 AM
+ *
+ * Order book for stop buy orders, the lowest stop prices are triggered first.
+ */
+public final class StopBuyOrderBook extends StopOrderBook<StopBuyOrder> {
+
+    /**
+     * Constructor
+     * @param filter - the dispatch filter used to control dispatching from this book
+     * @param dispatcher - the executor the orders are dispatched on
+     */
+    public StopBuyOrderBook(final OrderDispatchFilter<Integer, StopBuyOrder> filter,
+                            final ExecutorService dispatcher) {
+        super(StopBuyOrderComparator.INSTANCE, Comparator.<Integer>naturalOrder(), filter, dispatcher);
+    }
+
+
+    /**
+     * Gets the stop price of the order
+     * @param order - the order
+     * @return - the stop price
+     */
+    @Override
+    protected int stopPrice(final StopBuyOrder order) {
+        return order.getPrice();
+    }
+}
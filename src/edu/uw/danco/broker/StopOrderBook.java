@@ -0,0 +1,253 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 9:12 AM
+ *
+ * An OrderQueue for stop orders that buckets the orders by stop price. The price levels are kept in a sorted map
+ * ordered so that the levels closest to triggering come first, which means a threshold move triggers a contiguous
+ * head of the map. Every triggered level is split off in a single operation under the lock and the orders are then
+ * handed to the processor outside of the lock.
+ *
+ * The dispatch filter is expected to trigger every order on the head side of the threshold, which is the case for
+ * StopBuyOrderDispatchFilter and StopSellOrderDispatchFilter.
+ *
+ * The orders in the book are also indexed by order id, which rejects an order already in the book and lets an order
+ * be cancelled without a search of the levels.
+ */
+public abstract class StopOrderBook<E extends Order> implements CancellableOrderQueue<E>, Runnable {
+
+    /** The price levels, each level holds the orders at that stop price in dispatch order */
+    private final NavigableMap<Integer, SortedSet<E>> levels;
+
+    /** The orders in the book, keyed by order id, guarded by the book lock */
+    private final Map<Integer, E> ordersById = new HashMap<Integer, E>();
+
+    /** Comparator used to order the orders within a price level */
+    private final Comparator<E> orderComparator;
+
+    /** The dispatch filter used to control dispatching from this book */
+    private final OrderDispatchFilter<Integer, E> filter;
+
+    /** Dispatcher that handles dispatching orders in an executor thread */
+    private final ExecutorService dispatcher;
+
+    /** Lock to protect access to the price levels */
+    private final Lock bookLock = new ReentrantLock();
+
+    /** Boolean to determine if this book has been queued to the active pool */
+    private final AtomicBoolean isQueuedToPool = new AtomicBoolean(false);
+
+    /** The processor used during order processing */
+    private OrderProcessor orderProcessor;
+
+
+    /**
+     * Constructor
+     * @param orderComparator - Comparator used to order the orders within a price level
+     * @param levelComparator - Comparator for the stop prices, the prices that trigger first must sort first
+     * @param filter - the dispatch filter used to control dispatching from this book
+     * @param dispatcher - the executor the orders are dispatched on
+     */
+    protected StopOrderBook(final Comparator<E> orderComparator,
+                            final Comparator<Integer> levelComparator,
+                            final OrderDispatchFilter<Integer, E> filter,
+                            final ExecutorService dispatcher) {
+        this.levels = new TreeMap<Integer, SortedSet<E>>(levelComparator);
+        this.orderComparator = orderComparator;
+        this.filter = filter;
+        this.dispatcher = dispatcher;
+        this.filter.setOrderQueue(this);
+    }
+
+
+    /**
+     * Gets the stop price of an order, used as the price level key
+     * @param order - the order
+     * @return - the stop price of the order
+     */
+    protected abstract int stopPrice(E order);
+
+
+    /**
+     * Adds the specified order to its price level, unless it is already in the book. Subsequent to adding the order
+     * dispatches any dispatchable orders.
+     * @param order - the order to be added to the book
+     */
+    @Override
+    public void enqueue(final E order) {
+        final Integer price = stopPrice(order);
+        bookLock.lock();
+        try {
+            if (!ordersById.containsKey(order.getOrderId())) {
+                ordersById.put(order.getOrderId(), order);
+                SortedSet<E> level = levels.get(price);
+                if (level == null) {
+                    level = new TreeSet<E>(orderComparator);
+                    levels.put(price, level);
+                }
+                level.add(order);
+            }
+        } finally {
+            bookLock.unlock();
+        }
+        dispatchOrders();
+    }
+
+
+    /**
+     * Removes the highest dispatchable order in the book. If there are orders in the book but they do not meet the
+     * dispatch threshold no order will be removed and null will be returned.
+     * @return - the first dispatchable order in the book, or null if there are no dispatchable orders in the book
+     */
+    @Override
+    public E dequeue() {
+        E order = null;
+        bookLock.lock();
+        try {
+            final Map.Entry<Integer, SortedSet<E>> first = levels.firstEntry();
+            if (first != null) {
+                final SortedSet<E> level = first.getValue();
+                final E head = level.first();
+                if (filter.check(head)) {
+                    level.remove(head);
+                    if (level.isEmpty()) {
+                        levels.remove(first.getKey());
+                    }
+                    ordersById.remove(head.getOrderId());
+                    order = head;
+                }
+            }
+        } finally {
+            bookLock.unlock();
+        }
+        return order;
+    }
+
+
+    /**
+     * Cancels an order in the book, removing it from its price level
+     * @param orderId - the id of the order to cancel
+     * @return - true if the order was in the book and has now been cancelled, false if it was not in the book or has
+     * already been dispatched
+     */
+    @Override
+    public boolean cancel(final int orderId) {
+        bookLock.lock();
+        try {
+            final E order = ordersById.remove(orderId);
+            if (order == null) {
+                return false;
+            }
+            final Integer price = stopPrice(order);
+            final SortedSet<E> level = levels.get(price);
+            level.remove(order);
+            if (level.isEmpty()) {
+                levels.remove(price);
+            }
+            return true;
+        } finally {
+            bookLock.unlock();
+        }
+    }
+
+
+    /**
+     * Queues this book to the dispatcher, unless it is already queued. The running drain task picks up any
+     * triggered levels.
+     */
+    @Override
+    public void dispatchOrders() {
+        bookLock.lock();
+        try {
+            if (isQueuedToPool.compareAndSet(false, true)) {
+                dispatcher.execute(this);
+            }
+        } finally {
+            bookLock.unlock();
+        }
+    }
+
+
+    /**
+     * Registers the callback to be used during order processing.
+     * @param proc - the callback to be registered
+     */
+    @Override
+    public void setOrderProcessor(final OrderProcessor proc) {
+        orderProcessor = proc;
+    }
+
+
+    /**
+     * Dispatcher process, repeatedly splits off all the triggered price levels and processes their orders until no
+     * level is triggered.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            final List<E> triggered;
+            bookLock.lock();
+            try {
+                triggered = splitTriggeredLevels();
+                if (triggered.isEmpty()) {
+                    isQueuedToPool.set(false);
+                    break;
+                }
+            } finally {
+                bookLock.unlock();
+            }
+
+            final OrderProcessor op = orderProcessor;
+            if (op != null) {
+                for (final E order : triggered) {
+                    op.process(order);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Removes every price level at or beyond the current threshold. Must be called holding the book lock.
+     * @return - the orders of the triggered levels in dispatch order, empty if nothing is triggered
+     */
+    private List<E> splitTriggeredLevels() {
+        final Integer threshold = filter.getThreshold();
+        if (threshold == null || levels.isEmpty()) {
+            return new ArrayList<E>(0);
+        }
+
+        final NavigableMap<Integer, SortedSet<E>> triggeredLevels = levels.headMap(threshold, true);
+        final List<E> triggered = new ArrayList<E>();
+        for (final SortedSet<E> level : triggeredLevels.values()) {
+            triggered.addAll(level);
+        }
+        triggeredLevels.clear();
+        for (final E order : triggered) {
+            ordersById.remove(order.getOrderId());
+        }
+
+        return triggered;
+    }
+}
@@ -0,0 +1,39 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderDispatchFilter;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 9:46 AM
+ *
+ * Order book for stop sell orders, the highest stop prices are triggered first.
+ */
+public final class StopSellOrderBook extends StopOrderBook<StopSellOrder> {
+
+    /**
+     * Constructor
+     * @param filter - the dispatch filter used to control dispatching from this book
+     * @param dispatcher - the executor the orders are dispatched on
+     */
+    public StopSellOrderBook(final OrderDispatchFilter<Integer, StopSellOrder> filter,
+                             final ExecutorService dispatcher) {
+        super(StopSellOrderComparator.INSTANCE, Comparator.<Integer>reverseOrder(), filter, dispatcher);
+    }
+
+
+    /**
+     * Gets the stop price of the order
+     * @param order - the order
+     * @return - the stop price
+     */
+    @Override
+    protected int stopPrice(final StopSellOrder order) {
+        return order.getPrice();
+    }
+}
@@ -0,0 +1,80 @@
+package edu.uw.danco.concurrent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 4:40 PM
+ *
+ * Selects the kind of threads used for work that mostly blocks on I/O, such as order dispatch (JDBC and exchange
+ * round trips) and the exchange adapter's command handlers.
+ *
+ * VIRTUAL uses a virtual thread per task when the runtime supports virtual threads, on older runtimes it falls back
+ * to PLATFORM and logs a warning.
+ */
+public enum ExecutorMode {
+    /** Pooled platform threads */
+    PLATFORM,
+
+    /** A virtual thread per task */
+    VIRTUAL;
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(ExecutorMode.class.getName());
+
+    /** Name of the JDK factory method for virtual thread executors, looked up reflectively */
+    private static final String VIRTUAL_EXECUTOR_FACTORY = "newVirtualThreadPerTaskExecutor";
+
+
+    /**
+     * Creates an executor that starts a thread per task (or reuses idle platform threads), with no upper bound on the
+     * number of concurrently running tasks.
+     * @param namePrefix - prefix for the names of platform threads
+     * @return - the executor
+     */
+    public ExecutorService newExecutor(final String namePrefix) {
+        if (this == VIRTUAL) {
+            final ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+            if (virtual != null) {
+                return virtual;
+            }
+        }
+
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(r, namePrefix + count.incrementAndGet());
+            }
+        });
+    }
+
+
+    /**
+     * Creates a virtual thread per task executor
+     * @return - the executor, or null if the runtime does not support virtual threads
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            final Method factory = Executors.class.getMethod(VIRTUAL_EXECUTOR_FACTORY);
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            LOGGER.warning("Virtual threads are not supported by this runtime, using platform threads.");
+        } catch (IllegalAccessException e) {
+            LOGGER.log(Level.WARNING, "Unable to create virtual thread executor, using platform threads.", e);
+        } catch (InvocationTargetException e) {
+            LOGGER.log(Level.WARNING, "Unable to create virtual thread executor, using platform threads.", e);
+        }
+        return null;
+    }
+}
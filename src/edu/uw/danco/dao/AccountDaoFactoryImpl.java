@@ -12,6 +12,10 @@ import edu.uw.ext.framework.dao.DaoFactoryException;
  */
 public class AccountDaoFactoryImpl implements DaoFactory {
 
+    /** The maximum number of connections each DAO opens to the database */
+    private int poolSize = 1;
+
+
     /**
      * Instantiates a new AccountDao object.
      * @return - a newly instantiated account DAO object
@@ -19,7 +23,19 @@ public class AccountDaoFactoryImpl implements DaoFactory {
      */
     @Override
     public AccountDao getAccountDao() throws DaoFactoryException {
-        AccountDao accountDao = new AccountDaoImpl();
+        AccountDao accountDao = new AccountDaoImpl(poolSize);
         return accountDao;
     }
+
+
+    /**
+     * Sets the maximum number of connections each DAO opens to the database
+     * @param poolSize - the pool size, at least 1
+     */
+    public void setPoolSize(final int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1: " + poolSize);
+        }
+        this.poolSize = poolSize;
+    }
 }
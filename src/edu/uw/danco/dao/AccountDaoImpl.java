@@ -7,7 +7,6 @@ import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.Address;
 import edu.uw.ext.framework.account.CreditCard;
-import edu.uw.ext.framework.dao.AccountDao;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -17,6 +16,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,8 +27,11 @@ import java.util.logging.Logger;
  * Time: 8:45 PM
  *
  * The DataSource for our DAO implementation
+ *
+ * The connections to the jdbc/AccountDb DataSource are taken from a ConnectionPool for the duration of each call,
+ * so any number of threads can use the DAO at once, each on its own connection and prepared statements.
  */
-public class AccountDaoImpl implements AccountDao {
+public class AccountDaoImpl implements BatchAccountDao {
     /** Empty string */
     private static final String EMPTY_STRING = "";
 
@@ -82,40 +85,32 @@ public class AccountDaoImpl implements AccountDao {
     /** The name of the db to connect to */
     private static final String JDBC_ACCOUNT_DB = "jdbc/AccountDb";
 
-    /** The connection to the data store */
-    private Connection conn = null;
-
-    /** Prepared statement used to retrieve account information */
-    private PreparedStatement getAccountPs = null;
+    /** How long a call waits for a pooled connection */
+    private static final long ACQUIRE_TIMEOUT_MILLIS = 10000;
 
-    /** Prepared statement used to update an account */
-    private PreparedStatement updateAccountPs = null;
+    /** The connections to the data store, null if the DataSource could not be found */
+    private ConnectionPool pool = null;
 
-    /** Prepared statement used to delete an account */
-    private PreparedStatement deleteAccountPs = null;
 
-    /** Prepared statement used to reset all accounts */
-    private PreparedStatement resetAccountPs = null;
+    /**
+     * Constructs an AccountDao instance using a single connection.
+     */
+    public AccountDaoImpl() {
+        this(1);
+    }
 
 
     /**
      * Constructs an AccountDao instance.
+     * @param poolSize - the maximum number of connections the DAO opens
      */
-    public AccountDaoImpl() {
+    public AccountDaoImpl(final int poolSize) {
         try {
             Context ctx = new InitialContext();
             DataSource ds = (DataSource)ctx.lookup(JDBC_ACCOUNT_DB);
             ctx.close();
 
-            try {
-                conn = ds.getConnection();
-                getAccountPs = conn.prepareStatement(ACCOUNT_LOOKUP_SQL);
-                updateAccountPs = conn.prepareStatement(ACCOUNT_UPDATE_SQL);
-                deleteAccountPs = conn.prepareStatement(ACCOUNT_DELETE_SQL);
-                resetAccountPs = conn.prepareStatement(ACCOUNT_RESET_SQL);
-            } catch (SQLException e) {
-                LOGGER.log(Level.SEVERE, "Unable to get DB connection", e);
-            }
+            pool = new ConnectionPool(ds, poolSize, ACQUIRE_TIMEOUT_MILLIS);
         } catch (NamingException e) {
             LOGGER.log(Level.SEVERE, "Unable to initialize application context.", e);
         }
@@ -130,8 +125,12 @@ public class AccountDaoImpl implements AccountDao {
     public Account getAccount(String accountName) {
         Account account = null;
 
+        PooledConnection pc = null;
+        boolean failed = false;
         ResultSet rs = null;
         try {
+            pc = acquire();
+            final PreparedStatement getAccountPs = pc.prepare(ACCOUNT_LOOKUP_SQL);
             getAccountPs.setString(1, accountName);
             rs = getAccountPs.executeQuery();
 
@@ -162,6 +161,7 @@ public class AccountDaoImpl implements AccountDao {
                 account.setCreditCard(cc);
             }
         } catch (SQLException e) {
+            failed = true;
             LOGGER.log(Level.SEVERE, "Unable to retrieve account for accountName = " + accountName, e);
         } catch (AccountException e) {
             LOGGER.log(Level.SEVERE, "Unable to set accountname to: " + accountName, e);
@@ -173,6 +173,7 @@ public class AccountDaoImpl implements AccountDao {
             } catch (SQLException e) {
                 LOGGER.log(Level.SEVERE, "Unable to close ResultSet", e);
             }
+            release(pc, failed);
         }
 
         return account;
@@ -190,46 +191,59 @@ public class AccountDaoImpl implements AccountDao {
      */
     @Override
     public void setAccount(Account account) throws AccountException {
+        PooledConnection pc = null;
+        boolean failed = false;
         try {
-            updateAccountPs.setString(1, account.getName());
-            updateAccountPs.setBytes(2, account.getPasswordHash());
-            updateAccountPs.setInt(3, account.getBalance());
-            updateAccountPs.setString(4, account.getFullName());
-            updateAccountPs.setString(5, account.getPhone());
-            updateAccountPs.setString(6, account.getEmail());
-
-            Address addr = account.getAddress();
-            if (addr != null) {
-                updateAccountPs.setString(7, addr.getStreetAddress());
-                updateAccountPs.setString(8, addr.getCity());
-                updateAccountPs.setString(9, addr.getState());
-                updateAccountPs.setString(10, addr.getZipCode());
-            } else {
-                updateAccountPs.setString(7, EMPTY_STRING); // prefer to use setNull for these; also create references to the column indexes rather than magic numbers
-                updateAccountPs.setString(8, EMPTY_STRING);
-                updateAccountPs.setString(9, EMPTY_STRING);
-                updateAccountPs.setString(10, EMPTY_STRING);
-            }
-
-            CreditCard cc = account.getCreditCard();
-            if (cc != null) {
-                updateAccountPs.setString(11, cc.getAccountNumber());
-                updateAccountPs.setString(12, cc.getIssuer());
-                updateAccountPs.setString(13, cc.getType());
-                updateAccountPs.setString(14, cc.getHolder());
-                updateAccountPs.setString(15, cc.getExpirationDate());
-            } else {
-                updateAccountPs.setString(11, EMPTY_STRING);
-                updateAccountPs.setString(12, EMPTY_STRING);
-                updateAccountPs.setString(13, EMPTY_STRING);
-                updateAccountPs.setString(14, EMPTY_STRING);
-                updateAccountPs.setString(15, EMPTY_STRING);
-            }
-
+            pc = acquire();
+            final PreparedStatement updateAccountPs = pc.prepare(ACCOUNT_UPDATE_SQL);
+            bindAccount(updateAccountPs, account);
             updateAccountPs.executeUpdate();
-            updateAccountPs.clearParameters();
         } catch (SQLException e) {
+            failed = true;
             LOGGER.log(Level.SEVERE, "Unable to update account", e);
+        } finally {
+            release(pc, failed);
+        }
+    }
+
+
+    /**
+     * Adds or updates a number of accounts with one JDBC batch in one transaction
+     * @param accounts - the accounts to add or update
+     * @throws AccountException - if the accounts could not be written, none of them are
+     */
+    @Override
+    public void setAccounts(final Collection<Account> accounts) throws AccountException {
+        if (accounts.isEmpty()) {
+            return;
+        }
+
+        PooledConnection pc = null;
+        boolean failed = false;
+        try {
+            pc = acquire();
+            final Connection conn = pc.getConnection();
+            conn.setAutoCommit(false);
+            try {
+                final PreparedStatement updateAccountPs = pc.prepare(ACCOUNT_UPDATE_SQL);
+                for (final Account account : accounts) {
+                    bindAccount(updateAccountPs, account);
+                    updateAccountPs.addBatch();
+                }
+                updateAccountPs.executeBatch();
+                conn.commit();
+            } catch (final SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            failed = true;
+            LOGGER.log(Level.SEVERE, "Unable to update " + accounts.size() + " accounts", e);
+            throw new AccountException("Unable to update " + accounts.size() + " accounts: " + e.getMessage());
+        } finally {
+            release(pc, failed);
         }
     }
 
@@ -241,12 +255,19 @@ public class AccountDaoImpl implements AccountDao {
      */
     @Override
     public void deleteAccount(String accountName) throws AccountException {
+        PooledConnection pc = null;
+        boolean failed = false;
         try {
+            pc = acquire();
+            final PreparedStatement deleteAccountPs = pc.prepare(ACCOUNT_DELETE_SQL);
             deleteAccountPs.setString(1, accountName);
 
             deleteAccountPs.executeUpdate();
         } catch (SQLException e) {
+            failed = true;
             LOGGER.log(Level.SEVERE, "Unable to delete account", e);
+        } finally {
+            release(pc, failed);
         }
     }
 
@@ -257,10 +278,16 @@ public class AccountDaoImpl implements AccountDao {
      */
     @Override
     public void reset() throws AccountException {
+        PooledConnection pc = null;
+        boolean failed = false;
         try {
-            resetAccountPs.executeUpdate();
+            pc = acquire();
+            pc.prepare(ACCOUNT_RESET_SQL).executeUpdate();
         } catch (SQLException e) {
+            failed = true;
             LOGGER.log(Level.SEVERE, "Unable to reset accounts", e);
+        } finally {
+            release(pc, failed);
         }
     }
 
@@ -271,15 +298,82 @@ public class AccountDaoImpl implements AccountDao {
      */
     @Override
     public void close() throws AccountException {
-        try {
-            // prepared statements should automatically get closed by closing the connection.
-            if (conn != null) {
-                conn.close();
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+
+    /**
+     * Sets the parameters of the account update statement from an account
+     * @param updateAccountPs - the account update statement
+     * @param account - the account
+     * @throws SQLException - if a parameter cannot be set
+     */
+    private static void bindAccount(final PreparedStatement updateAccountPs, final Account account)
+            throws SQLException {
+        updateAccountPs.setString(1, account.getName());
+        updateAccountPs.setBytes(2, account.getPasswordHash());
+        updateAccountPs.setInt(3, account.getBalance());
+        updateAccountPs.setString(4, account.getFullName());
+        updateAccountPs.setString(5, account.getPhone());
+        updateAccountPs.setString(6, account.getEmail());
+
+        Address addr = account.getAddress();
+        if (addr != null) {
+            updateAccountPs.setString(7, addr.getStreetAddress());
+            updateAccountPs.setString(8, addr.getCity());
+            updateAccountPs.setString(9, addr.getState());
+            updateAccountPs.setString(10, addr.getZipCode());
+        } else {
+            updateAccountPs.setString(7, EMPTY_STRING); // prefer to use setNull for these; also create references to the column indexes rather than magic numbers
+            updateAccountPs.setString(8, EMPTY_STRING);
+            updateAccountPs.setString(9, EMPTY_STRING);
+            updateAccountPs.setString(10, EMPTY_STRING);
+        }
+
+        CreditCard cc = account.getCreditCard();
+        if (cc != null) {
+            updateAccountPs.setString(11, cc.getAccountNumber());
+            updateAccountPs.setString(12, cc.getIssuer());
+            updateAccountPs.setString(13, cc.getType());
+            updateAccountPs.setString(14, cc.getHolder());
+            updateAccountPs.setString(15, cc.getExpirationDate());
+        } else {
+            updateAccountPs.setString(11, EMPTY_STRING);
+            updateAccountPs.setString(12, EMPTY_STRING);
+            updateAccountPs.setString(13, EMPTY_STRING);
+            updateAccountPs.setString(14, EMPTY_STRING);
+            updateAccountPs.setString(15, EMPTY_STRING);
+        }
+    }
+
+
+    /**
+     * Takes a connection from the pool
+     * @return - the connection
+     * @throws SQLException - if the DataSource could not be found or no connection is available
+     */
+    private PooledConnection acquire() throws SQLException {
+        if (pool == null) {
+            throw new SQLException("No DataSource bound to " + JDBC_ACCOUNT_DB);
+        }
+        return pool.acquire();
+    }
+
+
+    /**
+     * Hands a connection back to the pool, a connection a statement failed on is closed rather than reused
+     * @param pc - the connection, null if none was acquired
+     * @param failed - true if a statement failed on the connection
+     */
+    private void release(final PooledConnection pc, final boolean failed) {
+        if (pc != null) {
+            if (failed) {
+                pool.discard(pc);
+            } else {
+                pool.release(pc);
             }
-        } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Unable to close connection to DB", e);
-        } finally {
-            conn = null;
         }
     }
 }
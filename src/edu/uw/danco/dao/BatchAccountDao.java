@@ -0,0 +1,25 @@
+package edu.uw.danco.dao;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+import java.util.Collection;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 8:40 PM
+ *
+ * An AccountDao able to add or update a number of accounts in one round trip to its data store.
+ */
+public interface BatchAccountDao extends AccountDao {
+
+    /**
+     * Adds or updates a number of accounts, either all of them are written or the call fails
+     * @param accounts - the accounts to add or update
+     * @throws AccountException - if the accounts could not be written
+     */
+    void setAccounts(Collection<Account> accounts) throws AccountException;
+}
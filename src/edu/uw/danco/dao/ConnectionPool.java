@@ -0,0 +1,135 @@
+package edu.uw.danco.dao;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 8:35 PM
+ *
+ * A bounded pool of connections to a DataSource. Connections are opened on demand up to the pool size and kept open,
+ * with their prepared statements, between uses. A thread needing a connection when all of them are in use waits for
+ * one to be released.
+ *
+ * Every acquired connection must be handed back with release, or with discard if it failed, in a finally block.
+ */
+public final class ConnectionPool {
+
+    /** The source of the connections */
+    private final DataSource dataSource;
+
+    /** One permit per connection that may still be handed out */
+    private final Semaphore permits;
+
+    /** How long acquire waits for a connection */
+    private final long acquireTimeoutMillis;
+
+    /** The open connections not in use, the most recently released first */
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+
+    /** Set once the pool has been closed */
+    private volatile boolean closed;
+
+
+    /**
+     * Constructor
+     * @param dataSource - the source of the connections
+     * @param size - the maximum number of connections
+     * @param acquireTimeoutMillis - how long acquire waits for a connection
+     */
+    public ConnectionPool(final DataSource dataSource, final int size, final long acquireTimeoutMillis) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1: " + size);
+        }
+        this.dataSource = dataSource;
+        this.permits = new Semaphore(size, true);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+
+    /**
+     * Takes a connection from the pool, opening a new one if no open connection is idle
+     * @return - the connection, owned by the caller until it is released
+     * @throws SQLException - if no connection becomes available in time or a new one cannot be opened
+     */
+    public PooledConnection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a pooled connection");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a pooled connection", e);
+        }
+
+        try {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (pc.isOpen()) {
+                    return pc;
+                }
+                pc.close();
+            }
+            return new PooledConnection(dataSource.getConnection());
+        } catch (final SQLException e) {
+            permits.release();
+            throw e;
+        } catch (final RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Returns a connection to the pool
+     * @param pc - the connection, may be null if acquire failed
+     */
+    public void release(final PooledConnection pc) {
+        if (pc != null) {
+            if (closed) {
+                pc.close();
+            } else {
+                idle.offerFirst(pc);
+                // close() may have drained the idle connections just before the offer
+                if (closed && idle.remove(pc)) {
+                    pc.close();
+                }
+            }
+            permits.release();
+        }
+    }
+
+
+    /**
+     * Closes a connection that failed instead of returning it to the pool, a new one is opened when needed
+     * @param pc - the connection, may be null if acquire failed
+     */
+    public void discard(final PooledConnection pc) {
+        if (pc != null) {
+            pc.close();
+            permits.release();
+        }
+    }
+
+
+    /**
+     * Closes the idle connections, the connections in use are closed as they are released
+     */
+    public void close() {
+        closed = true;
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            pc.close();
+        }
+    }
+}
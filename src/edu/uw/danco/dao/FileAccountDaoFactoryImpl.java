@@ -3,15 +3,24 @@ package edu.uw.danco.dao;
 import edu.uw.ext.framework.dao.AccountDao;
 import edu.uw.ext.framework.dao.DaoFactory;
 import edu.uw.ext.framework.dao.DaoFactoryException;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.support.FileSystemXmlApplicationContext;
 
 /**
  * Created with IntelliJ IDEA.
  * User: dcostinett
  * Date: 4/23/13
  * Time: 9:20 PM
+ *
+ * The application context the DAOs create their account beans with is loaded by the first getAccountDao call and
+ * shared by every DAO the factory creates.
  */
 public class FileAccountDaoFactoryImpl implements DaoFactory {
 
+    /** The bean factory shared by the DAOs, null until the first DAO is created */
+    private BeanFactory beanFactory;
+
     /**
      * Instantiates a new AccountDao object.
      * @return - a newly instantiated account DAO object
@@ -19,7 +28,24 @@ public class FileAccountDaoFactoryImpl implements DaoFactory {
      */
     @Override
     public AccountDao getAccountDao() throws DaoFactoryException {
-        FileAccountDaoImpl fileAccountDao = new FileAccountDaoImpl();
+        FileAccountDaoImpl fileAccountDao = new FileAccountDaoImpl(beanFactory());
         return fileAccountDao;
     }
+
+
+    /**
+     * Gets the bean factory shared by the DAOs, loading the application context on first use
+     * @return - the bean factory
+     * @throws DaoFactoryException - if the application context cannot be loaded
+     */
+    private synchronized BeanFactory beanFactory() throws DaoFactoryException {
+        if (beanFactory == null) {
+            try {
+                beanFactory = new FileSystemXmlApplicationContext(FileAccountDaoImpl.APPLICATION_CONTEXT_FILE_NAME);
+            } catch (BeansException e) {
+                throw new DaoFactoryException("Unable to load " + FileAccountDaoImpl.APPLICATION_CONTEXT_FILE_NAME, e);
+            }
+        }
+        return beanFactory;
+    }
 }
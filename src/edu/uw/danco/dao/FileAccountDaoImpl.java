@@ -1,6 +1,5 @@
 package edu.uw.danco.dao;
 
-import edu.uw.danco.account.AddressImpl;
 import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.Address;
@@ -11,6 +10,8 @@ import org.springframework.context.support.FileSystemXmlApplicationContext;
 
 import java.io.*;
 import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -26,6 +27,9 @@ import java.util.zip.ZipOutputStream;
  * User: dcostinett
  * Date: 4/23/13
  * Time: 9:17 PM
+ *
+ * The Account, Address and CreditCard instances are prototype beans of a bean factory resolved when the DAO is
+ * constructed, reading an account does not build an application context.
  */
 public class FileAccountDaoImpl implements AccountDao {
     /** The logger */
@@ -34,7 +38,7 @@ public class FileAccountDaoImpl implements AccountDao {
     /** Name of folder in which to save the files */
     private static final String ACCOUNTS_FOLDER = "accounts";
 
-    /** Size of buffer */
+    /** Size of the file stream buffers */
     private static final int BUFF_SIZE = 1024;
 
     /** Character encoding to use when converting strings to/from bytes */
@@ -74,8 +78,21 @@ public class FileAccountDaoImpl implements AccountDao {
     public static final String APPLICATION_CONTEXT_FILE_NAME = "context.xml";
 
 
-    /** No arg constructor for bean support */
+    /** Creates the Account, Address and CreditCard instances of the accounts read */
+    private final BeanFactory beanFactory;
+
+
+    /** No arg constructor for bean support, loads the application context once */
     public FileAccountDaoImpl() {
+        this(new FileSystemXmlApplicationContext(APPLICATION_CONTEXT_FILE_NAME));
+    }
+
+    /**
+     * Constructor
+     * @param beanFactory - creates the Account, Address and CreditCard instances of the accounts read
+     */
+    public FileAccountDaoImpl(final BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
         final File dir = new File(ACCOUNTS_FOLDER);
         if (!dir.exists()) {
             dir.mkdirs();
@@ -89,30 +106,23 @@ public class FileAccountDaoImpl implements AccountDao {
      */
     @Override
     public Account getAccount(String accountName) {
-        BeanFactory beanFactory = new FileSystemXmlApplicationContext(APPLICATION_CONTEXT_FILE_NAME);
         Account acct = null;
 
         File file = new File(String.format(ZIP_FILE_NAME, ACCOUNTS_FOLDER, accountName));
         if (file.exists()) {
             acct = beanFactory.getBean(Account.class);
+            ZipInputStream zin = null;
             try {
-                FileInputStream fis = new FileInputStream(file);
-                ZipInputStream zin = new ZipInputStream(fis);
+                zin = new ZipInputStream(new BufferedInputStream(new FileInputStream(file), BUFF_SIZE));
                 ZipEntry entry;
-                byte[] buff = new byte[BUFF_SIZE];
 
                 while ((entry = zin.getNextEntry()) != null) {
                     String name = entry.getName();
-                    File f = new File(name);
-                    FileOutputStream fos = new FileOutputStream(f);
-                    int len = -1;
-                    while ( (len = zin.read(buff, 0, BUFF_SIZE)) != -1) {
-                        fos.write(buff, 0, len);
-                    }
-                    zin.closeEntry();
 
+                    // the entry is parsed straight from the zip stream, which ends at the end of the entry
                     Properties props = new Properties();
-                    props.load(new FileInputStream(f));
+                    props.load(new InputStreamReader(zin, ENCODING));
+                    zin.closeEntry();
                     if (name.equalsIgnoreCase(ACCOUNT)) {
                         updateAccount(acct, props);
                         continue;
@@ -126,9 +136,19 @@ public class FileAccountDaoImpl implements AccountDao {
                     }
                 }
             } catch (FileNotFoundException e) {
+                // deleted since it was checked for
                 LOGGER.log(Level.SEVERE, "Unable to open zip file for account = " + accountName, e);
+                acct = null;
             } catch (IOException e) {
                 LOGGER.log(Level.SEVERE, "Unable to ope zip file: " + file.getName(), e);
+            } finally {
+                if (zin != null) {
+                    try {
+                        zin.close();
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Unable to close zip file: " + file.getName(), e);
+                    }
+                }
             }
         }
 
@@ -169,9 +189,7 @@ public class FileAccountDaoImpl implements AccountDao {
      * @param props - the properties object from which to read values
      */
     private void updateAccountAddress(Account acct, Properties props) {
-        BeanFactory beanFactory = new FileSystemXmlApplicationContext(APPLICATION_CONTEXT_FILE_NAME);
-
-        Address addr = beanFactory.getBean(AddressImpl.class);
+        Address addr = beanFactory.getBean(Address.class);
         addr.setStreetAddress(props.getProperty(STREET_ADDRESS));
         addr.setCity(props.getProperty(CITY));
         addr.setState(props.getProperty(STATE));
@@ -187,8 +205,6 @@ public class FileAccountDaoImpl implements AccountDao {
      * @param props - the properties object from which to read values
      */
     private void updateCreditCard(Account acct, Properties props) {
-        BeanFactory beanFactory = new FileSystemXmlApplicationContext(APPLICATION_CONTEXT_FILE_NAME);
-
         CreditCard cc = beanFactory.getBean(CreditCard.class);
         cc.setIssuer(props.getProperty(ISSUER));
         cc.setType(props.getProperty(TYPE));
@@ -206,11 +222,13 @@ public class FileAccountDaoImpl implements AccountDao {
      */
     @Override
     public void setAccount(Account account) throws AccountException {
+        final File file = new File(String.format(ZIP_FILE_NAME, ACCOUNTS_FOLDER, account.getName()));
+        File tmp = null;
+        ZipOutputStream zipped = null;
         try {
-            FileOutputStream fos = new FileOutputStream(
-                    String.format(ZIP_FILE_NAME, ACCOUNTS_FOLDER, account.getName()));
-            BufferedOutputStream bos = new BufferedOutputStream(fos);
-            ZipOutputStream zipped = new ZipOutputStream(bos);
+            // written next to the account's file and renamed over it, readers see either the old or the new file
+            tmp = File.createTempFile("account", ".tmp", file.getParentFile());
+            zipped = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), BUFF_SIZE));
             addEntry(zipped, ACCOUNT, account.toString());
 
             if (account.getAddress() != null) {
@@ -220,9 +238,24 @@ public class FileAccountDaoImpl implements AccountDao {
                 addEntry(zipped, CREDIT_CARD, account.getCreditCard().toString());
             }
             zipped.close();
+            zipped = null;
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Unable to open zip file for " + account.getName(), e);
             throw new AccountException(e);
+        } finally {
+            if (zipped != null) {
+                try {
+                    zipped.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Unable to close zip file for " + account.getName(), e);
+                }
+            }
+            if (tmp != null && !tmp.delete()) {
+                LOGGER.warning("Unable to delete " + tmp);
+            }
         }
     }
 
@@ -266,15 +299,9 @@ public class FileAccountDaoImpl implements AccountDao {
      * Helper method to zip up the account file along with the address & cc info
      * */
     private void addEntry(ZipOutputStream zip, String name, String value) throws IOException {
-
-        byte[] buff = new byte[BUFF_SIZE];
-        int bytes = 0;
-        InputStream in = new ByteArrayInputStream(value.getBytes(ENCODING));
         ZipEntry entry = new ZipEntry(name);
         zip.putNextEntry(entry);
-        while ( (bytes = in.read(buff)) != -1) {
-            zip.write(buff, 0, bytes);
-        }
+        zip.write(value.getBytes(ENCODING));
         zip.closeEntry();
     }
 
@@ -0,0 +1,73 @@
+package edu.uw.danco.dao;
+
+import edu.uw.ext.framework.dao.AccountDao;
+import edu.uw.ext.framework.dao.DaoFactory;
+import edu.uw.ext.framework.dao.DaoFactoryException;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 10:10 PM
+ *
+ * DaoFactory for the append-only account log, only one DAO at a time may have the log open.
+ */
+public class LogAccountDaoFactoryImpl implements DaoFactory {
+
+    /** The account log */
+    private String logFile = "accounts/accounts.log";
+
+    /** True to force each update to the disk before returning */
+    private boolean syncWrites = true;
+
+    /** Time between compaction checks, 0 for no compaction */
+    private long compactIntervalMillis = 60000;
+
+
+    /**
+     * Instantiates a new AccountDao object, replaying the log.
+     * @return - a newly instantiated account DAO object
+     * @throws DaoFactoryException - if the log cannot be opened or is open in another DAO
+     */
+    @Override
+    public AccountDao getAccountDao() throws DaoFactoryException {
+        try {
+            return new LogAccountDaoImpl(new File(logFile), syncWrites, compactIntervalMillis);
+        } catch (IOException e) {
+            throw new DaoFactoryException("Unable to open account log " + logFile, e);
+        }
+    }
+
+
+    /**
+     * Sets the account log
+     * @param logFile - the path of the log file
+     */
+    public void setLogFile(final String logFile) {
+        this.logFile = logFile;
+    }
+
+
+    /**
+     * Sets whether each update is forced to the disk before returning
+     * @param syncWrites - true to force each update
+     */
+    public void setSyncWrites(final boolean syncWrites) {
+        this.syncWrites = syncWrites;
+    }
+
+
+    /**
+     * Sets the time between compaction checks
+     * @param compactIntervalMillis - the interval in milliseconds, 0 for no compaction
+     */
+    public void setCompactIntervalMillis(final long compactIntervalMillis) {
+        if (compactIntervalMillis < 0) {
+            throw new IllegalArgumentException("Compaction interval must not be negative: " + compactIntervalMillis);
+        }
+        this.compactIntervalMillis = compactIntervalMillis;
+    }
+}
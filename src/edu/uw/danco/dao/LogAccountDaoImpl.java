@@ -0,0 +1,669 @@
+package edu.uw.danco.dao;
+
+import edu.uw.danco.account.AccountImpl;
+import edu.uw.danco.account.AddressImpl;
+import edu.uw.danco.account.CreditCardImpl;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 9:50 PM
+ *
+ * AccountDao keeping every account in one append-only log file of fixed-size records. Each update appends a record
+ * holding the whole account, each delete a tombstone, and an in-memory index maps each account name to the offset of
+ * its latest record, so a read is a single positioned read.
+ *
+ * Record layout, RECORD_SIZE bytes:
+ * crc (int, of the rest of the record), type (byte), payload length (short), payload, zero padding
+ *
+ * Opening the log replays it to build the index, torn or corrupt records at the end of the log, left by a crash
+ * during an append, are cut off. A corrupt record followed by intact ones is skipped with a warning, the updates
+ * after it are kept. A daemon thread periodically rewrites the log with only the live records once the
+ * superseded records outnumber them. Only one DAO may have a log file open, the file is locked while it is.
+ */
+public class LogAccountDaoImpl implements BatchAccountDao {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(LogAccountDaoImpl.class.getName());
+
+    /** Size of each record */
+    public static final int RECORD_SIZE = 1024;
+
+    /** Size of the record header, crc, type and payload length */
+    private static final int HEADER_SIZE = 4 + 1 + 2;
+
+    /** Record type of an account */
+    private static final byte PUT = 1;
+
+    /** Record type of a deleted account */
+    private static final byte DELETE = 2;
+
+    /** Number of superseded records below which the log is never compacted */
+    private static final int MIN_GARBAGE_RECORDS = 1024;
+
+    /** The log file */
+    private final File logFile;
+
+    /** True to force each update to the disk before returning */
+    private final boolean syncWrites;
+
+    /** The log file, guarded by the DAO */
+    private RandomAccessFile raf;
+
+    /** The log file's channel, guarded by the DAO */
+    private FileChannel channel;
+
+    /** The lock held on the log file, guarded by the DAO */
+    private FileLock fileLock;
+
+    /** Offset of the latest record of each account, guarded by the DAO */
+    private final Map<String, Long> index = new HashMap<String, Long>();
+
+    /** Number of records in the log, guarded by the DAO */
+    private long records;
+
+    /** Runs the periodic compaction, null if there is none */
+    private final ScheduledExecutorService compactor;
+
+
+    /**
+     * Constructor, opens the log, creating it if needed, and replays it
+     * @param logFile - the log file
+     * @param syncWrites - true to force each update to the disk before returning
+     * @param compactIntervalMillis - time between compaction checks, 0 for no compaction
+     * @throws IOException - if the log cannot be opened or is held by another DAO
+     */
+    public LogAccountDaoImpl(final File logFile, final boolean syncWrites, final long compactIntervalMillis)
+            throws IOException {
+        this.logFile = logFile;
+        this.syncWrites = syncWrites;
+        final File dir = logFile.getAbsoluteFile().getParentFile();
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        open();
+
+        if (compactIntervalMillis > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread t = new Thread(r, "account-log-compactor");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            compactor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    compactIfWorthwhile();
+                }
+            }, compactIntervalMillis, compactIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            compactor = null;
+        }
+    }
+
+
+    /**
+     * Lookup an account, reading its latest record
+     * @param accountName - the name of the desired account
+     * @return - the account if located, otherwise null
+     */
+    @Override
+    public synchronized Account getAccount(final String accountName) {
+        final Long offset = index.get(accountName);
+        if (offset == null || channel == null) {
+            return null;
+        }
+
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        try {
+            readRecord(offset, record);
+            return decode(accountName, payloadOf(record));
+        } catch (final IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to read account " + accountName + " at offset " + offset, e);
+        } catch (final AccountException e) {
+            LOGGER.log(Level.SEVERE, "Unable to restore account " + accountName, e);
+        }
+        return null;
+    }
+
+
+    /**
+     * Adds or updates an account by appending its record
+     * @param account - the account to add or update
+     * @throws AccountException - if the record cannot be appended
+     */
+    @Override
+    public void setAccount(final Account account) throws AccountException {
+        setAccounts(Collections.singletonList(account));
+    }
+
+
+    /**
+     * Adds or updates a number of accounts by appending their records with one write
+     * @param accounts - the accounts to add or update
+     * @throws AccountException - if the records cannot be appended, none of the accounts are updated
+     */
+    @Override
+    public synchronized void setAccounts(final Collection<Account> accounts) throws AccountException {
+        if (accounts.isEmpty()) {
+            return;
+        }
+        final ByteBuffer batch = ByteBuffer.allocate(RECORD_SIZE * accounts.size());
+        for (final Account account : accounts) {
+            putRecord(batch, PUT, account.getName(), encode(account));
+        }
+        batch.flip();
+
+        final long start = append(batch, accounts.size() + " accounts");
+        long offset = start;
+        for (final Account account : accounts) {
+            index.put(account.getName(), offset);
+            offset += RECORD_SIZE;
+        }
+    }
+
+
+    /**
+     * Remove the account by appending a tombstone
+     * @param accountName - the name of the account to be deleted
+     * @throws AccountException - if the account does not exist or the tombstone cannot be appended
+     */
+    @Override
+    public synchronized void deleteAccount(final String accountName) throws AccountException {
+        if (!index.containsKey(accountName)) {
+            LOGGER.log(Level.SEVERE, "Unable to delete account " + accountName);
+            throw new AccountException("Unable to delete account " + accountName);
+        }
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        putRecord(record, DELETE, accountName, new byte[0]);
+        record.flip();
+        append(record, "deletion of account " + accountName);
+        index.remove(accountName);
+    }
+
+
+    /**
+     * Remove all the accounts by truncating the log
+     * @throws AccountException - if the log cannot be truncated
+     */
+    @Override
+    public synchronized void reset() throws AccountException {
+        try {
+            checkOpen();
+            channel.truncate(0);
+            if (syncWrites) {
+                channel.force(true);
+            }
+            index.clear();
+            records = 0;
+        } catch (final IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to reset account log " + logFile, e);
+            throw new AccountException(e);
+        }
+    }
+
+
+    /**
+     * Stops the compaction and closes the log
+     * @throws AccountException - if the log cannot be closed cleanly
+     */
+    @Override
+    public void close() throws AccountException {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        synchronized (this) {
+            try {
+                if (channel != null) {
+                    channel.force(true);
+                }
+            } catch (final IOException e) {
+                throw new AccountException(e);
+            } finally {
+                closeLog();
+            }
+        }
+    }
+
+
+    /**
+     * Rewrites the log with only the latest record of each live account
+     * @throws IOException - if the log cannot be rewritten, the old log is left in place
+     */
+    public synchronized void compact() throws IOException {
+        checkOpen();
+        final File tmp = new File(logFile.getPath() + ".compact");
+        final Map<String, Long> compacted = new HashMap<String, Long>();
+        final RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        try {
+            out.setLength(0);
+            final FileChannel outChannel = out.getChannel();
+            final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            long offset = 0;
+            for (final Map.Entry<String, Long> entry : index.entrySet()) {
+                readRecord(entry.getValue(), record);
+                record.flip();
+                while (record.hasRemaining()) {
+                    outChannel.write(record, offset + record.position());
+                }
+                compacted.put(entry.getKey(), offset);
+                offset += RECORD_SIZE;
+            }
+            outChannel.force(true);
+        } finally {
+            out.close();
+        }
+
+        closeLog();
+        try {
+            Files.move(tmp.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            open();
+        }
+        LOGGER.info(String.format("Compacted account log %s to %d records", logFile, compacted.size()));
+    }
+
+
+    /**
+     * Compaction thread body, compacts once the superseded records outnumber the live ones
+     */
+    private void compactIfWorthwhile() {
+        synchronized (this) {
+            final long garbage = records - index.size();
+            if (channel == null || garbage < MIN_GARBAGE_RECORDS || garbage < index.size()) {
+                return;
+            }
+            try {
+                compact();
+            } catch (final IOException e) {
+                LOGGER.log(Level.SEVERE, "Unable to compact account log " + logFile, e);
+            }
+        }
+    }
+
+
+    /**
+     * Opens and locks the log and replays it into the index, cutting off a torn or corrupt tail and skipping corrupt
+     * records followed by intact ones
+     * @throws IOException - if the log cannot be opened or is held by another DAO
+     */
+    private void open() throws IOException {
+        raf = new RandomAccessFile(logFile, "rw");
+        channel = raf.getChannel();
+        try {
+            fileLock = channel.tryLock();
+        } catch (final OverlappingFileLockException e) {
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            closeLog();
+            throw new IOException("Account log " + logFile + " is in use by another DAO");
+        }
+
+        index.clear();
+        records = 0;
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        final long size = channel.size();
+        long offset = 0;
+        // end of the last intact record, the corrupt records after it are a torn append
+        long intactEnd = 0;
+        long corrupt = 0;
+        while (offset + RECORD_SIZE <= size) {
+            readRecord(offset, record);
+            if (isIntact(record)) {
+                if (corrupt > 0) {
+                    LOGGER.warning(String.format("Skipping %d corrupt records at offset %d of %s",
+                                                 corrupt, intactEnd, logFile));
+                    records += corrupt;
+                    corrupt = 0;
+                }
+                final byte type = record.get(4);
+                final String name = nameOf(payloadOf(record));
+                if (type == DELETE) {
+                    index.remove(name);
+                } else {
+                    index.put(name, offset);
+                }
+                records++;
+                intactEnd = offset + RECORD_SIZE;
+            } else {
+                corrupt++;
+            }
+            offset += RECORD_SIZE;
+        }
+
+        if (intactEnd < size) {
+            LOGGER.warning(String.format("Cutting off %d bytes of incomplete or corrupt records at the end of %s",
+                                         size - intactEnd, logFile));
+            channel.truncate(intactEnd);
+            channel.force(true);
+        }
+    }
+
+
+    /**
+     * Releases the lock on the log and closes it
+     */
+    private void closeLog() {
+        try {
+            if (fileLock != null && fileLock.isValid()) {
+                fileLock.release();
+            }
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to unlock account log " + logFile, e);
+        }
+        try {
+            if (raf != null) {
+                raf.close();
+            }
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to close account log " + logFile, e);
+        }
+        fileLock = null;
+        channel = null;
+        raf = null;
+    }
+
+
+    /**
+     * Appends whole records at the end of the log, cutting off any part written if the append fails
+     * @param buffer - the records
+     * @param what - what is being appended, for the error message
+     * @return - the offset of the first record
+     * @throws AccountException - if the records cannot be appended
+     */
+    private long append(final ByteBuffer buffer, final String what) throws AccountException {
+        long start = -1;
+        try {
+            checkOpen();
+            start = channel.size();
+            final int count = buffer.remaining() / RECORD_SIZE;
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, start + buffer.position());
+            }
+            if (syncWrites) {
+                channel.force(false);
+            }
+            records += count;
+            return start;
+        } catch (final IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to append " + what + " to " + logFile, e);
+            if (start >= 0) {
+                try {
+                    channel.truncate(start);
+                } catch (final IOException te) {
+                    LOGGER.log(Level.SEVERE, "Unable to cut off the failed append to " + logFile, te);
+                }
+            }
+            throw new AccountException(e);
+        }
+    }
+
+
+    /**
+     * Reads a whole record
+     * @param offset - the offset of the record
+     * @param record - receives the record, cleared first
+     * @throws IOException - if the record cannot be read
+     */
+    private void readRecord(final long offset, final ByteBuffer record) throws IOException {
+        record.clear();
+        while (record.hasRemaining()) {
+            if (channel.read(record, offset + record.position()) < 0) {
+                throw new IOException("Unexpected end of " + logFile + " reading the record at " + offset);
+            }
+        }
+    }
+
+
+    /**
+     * Fails if the log has been closed
+     * @throws IOException - if the log is closed
+     */
+    private void checkOpen() throws IOException {
+        if (channel == null) {
+            throw new IOException("Account log " + logFile + " is closed");
+        }
+    }
+
+
+    /**
+     * Fills a record into a buffer
+     * @param buffer - the buffer, positioned where the record starts
+     * @param type - the record type
+     * @param accountName - the account name, for the error message
+     * @param payload - the payload
+     * @throws AccountException - if the payload does not fit in a record
+     */
+    private static void putRecord(final ByteBuffer buffer, final byte type, final String accountName,
+                                  final byte[] payload) throws AccountException {
+        final byte[] named = withName(accountName, payload);
+        if (named.length > RECORD_SIZE - HEADER_SIZE) {
+            throw new AccountException(String.format("Account %s needs %d bytes, records hold %d",
+                                                     accountName, named.length, RECORD_SIZE - HEADER_SIZE));
+        }
+        final int start = buffer.position();
+        buffer.putInt(0);
+        buffer.put(type);
+        buffer.putShort((short) named.length);
+        buffer.put(named);
+        buffer.put(new byte[RECORD_SIZE - HEADER_SIZE - named.length]);
+
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), start + 4, RECORD_SIZE - 4);
+        buffer.putInt(start, (int) crc.getValue());
+    }
+
+
+    /**
+     * Checks a record's checksum and payload length
+     * @param record - the record
+     * @return - true if the record is intact
+     */
+    private static boolean isIntact(final ByteBuffer record) {
+        final int length = record.getShort(5) & 0xFFFF;
+        if (length > RECORD_SIZE - HEADER_SIZE) {
+            return false;
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, RECORD_SIZE - 4);
+        return record.getInt(0) == (int) crc.getValue();
+    }
+
+
+    /**
+     * Gets a record's payload, the account name followed by the account fields
+     * @param record - the record
+     * @return - the payload
+     */
+    private static byte[] payloadOf(final ByteBuffer record) {
+        final int length = record.getShort(5) & 0xFFFF;
+        final byte[] payload = new byte[length];
+        System.arraycopy(record.array(), HEADER_SIZE, payload, 0, length);
+        return payload;
+    }
+
+
+    /**
+     * Prefixes a payload with the account name
+     * @param accountName - the account name
+     * @param fields - the encoded account fields
+     * @return - the payload
+     * @throws AccountException - if the name cannot be encoded
+     */
+    private static byte[] withName(final String accountName, final byte[] fields) throws AccountException {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(RECORD_SIZE);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(accountName);
+            out.write(fields);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (final IOException e) {
+            throw new AccountException(e);
+        }
+    }
+
+
+    /**
+     * Gets the account name a payload starts with
+     * @param payload - the payload
+     * @return - the account name
+     * @throws IOException - if the payload is malformed
+     */
+    private static String nameOf(final byte[] payload) throws IOException {
+        return new DataInputStream(new ByteArrayInputStream(payload)).readUTF();
+    }
+
+
+    /**
+     * Encodes the fields of an account
+     * @param account - the account
+     * @return - the encoded fields
+     * @throws AccountException - if the account cannot be encoded
+     */
+    private static byte[] encode(final Account account) throws AccountException {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(RECORD_SIZE);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            final byte[] passwordHash = account.getPasswordHash();
+            out.writeShort(passwordHash == null ? -1 : passwordHash.length);
+            if (passwordHash != null) {
+                out.write(passwordHash);
+            }
+            out.writeInt(account.getBalance());
+            writeString(out, account.getFullName());
+            writeString(out, account.getPhone());
+            writeString(out, account.getEmail());
+
+            final Address address = account.getAddress();
+            out.writeBoolean(address != null);
+            if (address != null) {
+                writeString(out, address.getStreetAddress());
+                writeString(out, address.getCity());
+                writeString(out, address.getState());
+                writeString(out, address.getZipCode());
+            }
+
+            final CreditCard card = account.getCreditCard();
+            out.writeBoolean(card != null);
+            if (card != null) {
+                writeString(out, card.getAccountNumber());
+                writeString(out, card.getIssuer());
+                writeString(out, card.getType());
+                writeString(out, card.getHolder());
+                writeString(out, card.getExpirationDate());
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (final IOException e) {
+            throw new AccountException(e);
+        }
+    }
+
+
+    /**
+     * Restores an account from a record's payload
+     * @param accountName - the account name
+     * @param payload - the payload
+     * @return - the account
+     * @throws IOException - if the payload is malformed
+     * @throws AccountException - if the account name is invalid
+     */
+    private static Account decode(final String accountName, final byte[] payload)
+            throws IOException, AccountException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        in.readUTF();
+
+        final Account account = new AccountImpl();
+        account.setName(accountName);
+        final int hashLength = in.readShort();
+        if (hashLength >= 0) {
+            final byte[] passwordHash = new byte[hashLength];
+            in.readFully(passwordHash);
+            account.setPasswordHash(passwordHash);
+        }
+        account.setBalance(in.readInt());
+        account.setFullName(readString(in));
+        account.setPhone(readString(in));
+        account.setEmail(readString(in));
+
+        if (in.readBoolean()) {
+            final Address address = new AddressImpl();
+            address.setStreetAddress(readString(in));
+            address.setCity(readString(in));
+            address.setState(readString(in));
+            address.setZipCode(readString(in));
+            account.setAddress(address);
+        }
+
+        if (in.readBoolean()) {
+            final CreditCard card = new CreditCardImpl();
+            card.setAccountNumber(readString(in));
+            card.setIssuer(readString(in));
+            card.setType(readString(in));
+            card.setHolder(readString(in));
+            card.setExpirationDate(readString(in));
+            account.setCreditCard(card);
+        }
+        return account;
+    }
+
+
+    /**
+     * Writes a string that may be null
+     * @param out - the stream
+     * @param value - the string
+     * @throws IOException - if the string cannot be written
+     */
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+
+    /**
+     * Reads a string written by writeString
+     * @param in - the stream
+     * @return - the string, possibly null
+     * @throws IOException - if the string cannot be read
+     */
+    private static String readString(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
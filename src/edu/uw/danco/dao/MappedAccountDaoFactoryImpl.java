@@ -0,0 +1,88 @@
+package edu.uw.danco.dao;
+
+import edu.uw.ext.framework.dao.AccountDao;
+import edu.uw.ext.framework.dao.DaoFactory;
+import edu.uw.ext.framework.dao.DaoFactoryException;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 10:40 PM
+ *
+ * DaoFactory for the memory-mapped account store, only one DAO at a time may have the store open.
+ */
+public class MappedAccountDaoFactoryImpl implements DaoFactory {
+
+    /** The directory holding the store */
+    private String directory = "accounts/mapped";
+
+    /** The number of slots of a new balance file */
+    private int initialSlots = 1024;
+
+    /** True to force each update to the disk before returning */
+    private boolean syncWrites = false;
+
+    /** Time between compaction checks of the profile log, 0 for no compaction */
+    private long compactIntervalMillis = 60000;
+
+
+    /**
+     * Instantiates a new AccountDao object, opening the store.
+     * @return - a newly instantiated account DAO object
+     * @throws DaoFactoryException - if the store cannot be opened or is open in another DAO
+     */
+    @Override
+    public AccountDao getAccountDao() throws DaoFactoryException {
+        try {
+            return new MappedAccountDaoImpl(new File(directory), initialSlots, syncWrites, compactIntervalMillis);
+        } catch (IOException e) {
+            throw new DaoFactoryException("Unable to open account store " + directory, e);
+        }
+    }
+
+
+    /**
+     * Sets the directory holding the store
+     * @param directory - the path of the directory
+     */
+    public void setDirectory(final String directory) {
+        this.directory = directory;
+    }
+
+
+    /**
+     * Sets the number of slots of a new balance file
+     * @param initialSlots - the number of slots, the file doubles when they are used up
+     */
+    public void setInitialSlots(final int initialSlots) {
+        if (initialSlots < 1) {
+            throw new IllegalArgumentException("Slot count must be at least 1: " + initialSlots);
+        }
+        this.initialSlots = initialSlots;
+    }
+
+
+    /**
+     * Sets whether each update is forced to the disk before returning
+     * @param syncWrites - true to force each update
+     */
+    public void setSyncWrites(final boolean syncWrites) {
+        this.syncWrites = syncWrites;
+    }
+
+
+    /**
+     * Sets the time between compaction checks of the profile log
+     * @param compactIntervalMillis - the interval in milliseconds, 0 for no compaction
+     */
+    public void setCompactIntervalMillis(final long compactIntervalMillis) {
+        if (compactIntervalMillis < 0) {
+            throw new IllegalArgumentException("Compaction interval must not be negative: " + compactIntervalMillis);
+        }
+        this.compactIntervalMillis = compactIntervalMillis;
+    }
+}
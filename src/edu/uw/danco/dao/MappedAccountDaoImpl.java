@@ -0,0 +1,443 @@
+package edu.uw.danco.dao;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 10:20 PM
+ *
+ * AccountDao keeping the balances apart from the rest of the accounts. The balances live in a memory-mapped file of
+ * fixed-width slots, one per account, so persisting an account whose profile has not changed is a single 8-byte
+ * store into its slot. The profiles, password hash, names, phone, email, address and credit card, are kept in a
+ * LogAccountDaoImpl and only written when they change.
+ *
+ * Slot layout, SLOT_SIZE bytes:
+ * name length (short, 0 for a free slot), name (UTF-8), padding, balance (long, the last 8 bytes)
+ *
+ * A slot's balance is written before its name, so a slot left half written by a crash is free when the file is
+ * reopened, the account's balance then comes from its profile record. Stores into the mapping survive the process
+ * failing, with syncWrites each update is also forced to the disk.
+ */
+public class MappedAccountDaoImpl implements BatchAccountDao {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(MappedAccountDaoImpl.class.getName());
+
+    /** Size of each slot */
+    public static final int SLOT_SIZE = 64;
+
+    /** Offset of the balance within a slot */
+    private static final int BALANCE_OFFSET = SLOT_SIZE - 8;
+
+    /** Longest account name, in UTF-8 bytes, a slot holds */
+    public static final int MAX_NAME_BYTES = BALANCE_OFFSET - 2;
+
+    /** Name of the balance file within the store directory */
+    public static final String BALANCES_FILE = "balances.dat";
+
+    /** Name of the profile log within the store directory */
+    public static final String PROFILES_FILE = "profiles.log";
+
+    /** Encoding of the names in the slots */
+    private static final Charset ENCODING = Charset.forName("UTF-8");
+
+    /** The balance file */
+    private final File balanceFile;
+
+    /** True to force each update to the disk before returning */
+    private final boolean syncWrites;
+
+    /** The profiles, their balances are only used for accounts without a slot */
+    private final LogAccountDaoImpl profiles;
+
+    /** The balance file, guarded by the DAO */
+    private RandomAccessFile raf;
+
+    /** The mapping of the balance file, guarded by the DAO */
+    private MappedByteBuffer slots;
+
+    /** The slot of each account, guarded by the DAO */
+    private final Map<String, Integer> slotIndex = new HashMap<String, Integer>();
+
+    /** The free slots, guarded by the DAO */
+    private final Deque<Integer> freeSlots = new ArrayDeque<Integer>();
+
+    /** The last profile written of each account, read back from the profile log on first use, guarded by the DAO */
+    private final Map<String, Account> writtenProfiles = new HashMap<String, Account>();
+
+
+    /**
+     * Constructor, opens the store, creating it if needed
+     * @param directory - the directory holding the balance file and the profile log
+     * @param initialSlots - the number of slots of a new balance file, it grows as needed
+     * @param syncWrites - true to force each update to the disk before returning
+     * @param compactIntervalMillis - time between compaction checks of the profile log, 0 for no compaction
+     * @throws IOException - if the store cannot be opened
+     */
+    public MappedAccountDaoImpl(final File directory, final int initialSlots, final boolean syncWrites,
+                                final long compactIntervalMillis) throws IOException {
+        if (initialSlots < 1) {
+            throw new IllegalArgumentException("Slot count must be at least 1: " + initialSlots);
+        }
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        this.syncWrites = syncWrites;
+        balanceFile = new File(directory, BALANCES_FILE);
+        profiles = new LogAccountDaoImpl(new File(directory, PROFILES_FILE), syncWrites, compactIntervalMillis);
+
+        try {
+            raf = new RandomAccessFile(balanceFile, "rw");
+            final long length = raf.length();
+            map(Math.max(length / SLOT_SIZE, initialSlots));
+            for (int slot = 0; slot < slots.capacity() / SLOT_SIZE; slot++) {
+                final String name = nameAt(slot);
+                if (name == null) {
+                    freeSlots.add(slot);
+                } else {
+                    slotIndex.put(name, slot);
+                }
+            }
+        } catch (final IOException e) {
+            closeBalances();
+            try {
+                profiles.close();
+            } catch (final AccountException ae) {
+                LOGGER.log(Level.WARNING, "Unable to close the profile log", ae);
+            }
+            throw e;
+        }
+    }
+
+
+    /**
+     * Lookup an account, its profile from the profile log and its balance from its slot
+     * @param accountName - the name of the desired account
+     * @return - the account if located, otherwise null
+     */
+    @Override
+    public synchronized Account getAccount(final String accountName) {
+        final Account account = profiles.getAccount(accountName);
+        if (account != null) {
+            final Integer slot = slotIndex.get(accountName);
+            if (slot != null && slots != null) {
+                account.setBalance((int) slots.getLong(slot * SLOT_SIZE + BALANCE_OFFSET));
+            }
+        }
+        return account;
+    }
+
+
+    /**
+     * Adds or updates an account
+     * @param account - the account to add or update
+     * @throws AccountException - if the account cannot be written
+     */
+    @Override
+    public void setAccount(final Account account) throws AccountException {
+        setAccounts(Collections.singletonList(account));
+    }
+
+
+    /**
+     * Adds or updates a number of accounts, the changed profiles are appended with one write
+     * @param accounts - the accounts to add or update
+     * @throws AccountException - if the accounts cannot be written, nothing is written if a name does not fit in a
+     *                            slot
+     */
+    @Override
+    public synchronized void setAccounts(final Collection<Account> accounts) throws AccountException {
+        checkOpen();
+        for (final Account account : accounts) {
+            if (!slotIndex.containsKey(account.getName())
+                    && account.getName().getBytes(ENCODING).length > MAX_NAME_BYTES) {
+                throw new AccountException(String.format("Account name %s is longer than %d bytes",
+                                                         account.getName(), MAX_NAME_BYTES));
+            }
+        }
+
+        final List<Account> changed = new ArrayList<Account>();
+        for (final Account account : accounts) {
+            if (!sameProfile(account, writtenProfile(account.getName()))) {
+                changed.add(account);
+            }
+        }
+        if (!changed.isEmpty()) {
+            profiles.setAccounts(changed);
+            // the caller may go on changing its instances, the next comparison reads back what was written
+            for (final Account account : changed) {
+                writtenProfiles.remove(account.getName());
+            }
+        }
+
+        for (final Account account : accounts) {
+            final Integer slot = slotIndex.get(account.getName());
+            if (slot == null) {
+                allocate(account.getName(), account.getBalance());
+            } else {
+                slots.putLong(slot * SLOT_SIZE + BALANCE_OFFSET, account.getBalance());
+            }
+        }
+        if (syncWrites) {
+            slots.force();
+        }
+    }
+
+
+    /**
+     * Remove the account
+     * @param accountName - the name of the account to be deleted
+     * @throws AccountException - if the account does not exist
+     */
+    @Override
+    public synchronized void deleteAccount(final String accountName) throws AccountException {
+        checkOpen();
+        profiles.deleteAccount(accountName);
+        writtenProfiles.remove(accountName);
+        final Integer slot = slotIndex.remove(accountName);
+        if (slot != null) {
+            slots.putShort(slot * SLOT_SIZE, (short) 0);
+            if (syncWrites) {
+                slots.force();
+            }
+            freeSlots.add(slot);
+        }
+    }
+
+
+    /**
+     * Remove all the accounts
+     * @throws AccountException - if the store cannot be cleared
+     */
+    @Override
+    public synchronized void reset() throws AccountException {
+        checkOpen();
+        profiles.reset();
+        writtenProfiles.clear();
+        slotIndex.clear();
+        freeSlots.clear();
+        for (int slot = 0; slot < slots.capacity() / SLOT_SIZE; slot++) {
+            slots.putShort(slot * SLOT_SIZE, (short) 0);
+            freeSlots.add(slot);
+        }
+        slots.force();
+    }
+
+
+    /**
+     * Forces the balances to the disk and closes the store
+     * @throws AccountException - if the store cannot be closed cleanly
+     */
+    @Override
+    public synchronized void close() throws AccountException {
+        try {
+            if (slots != null) {
+                slots.force();
+            }
+        } finally {
+            closeBalances();
+            profiles.close();
+        }
+    }
+
+
+    /**
+     * Gets the last profile written for an account, reading it from the profile log on first use
+     * @param accountName - the account name
+     * @return - the profile, null if the account has none
+     */
+    private Account writtenProfile(final String accountName) {
+        Account profile = writtenProfiles.get(accountName);
+        if (profile == null) {
+            profile = profiles.getAccount(accountName);
+            if (profile != null) {
+                writtenProfiles.put(accountName, profile);
+            }
+        }
+        return profile;
+    }
+
+
+    /**
+     * Gives an account a free slot, growing the balance file if there is none
+     * @param accountName - the account name, no longer than MAX_NAME_BYTES
+     * @param balance - the account balance
+     * @throws AccountException - if the file cannot grow
+     */
+    private void allocate(final String accountName, final int balance) throws AccountException {
+        final byte[] name = accountName.getBytes(ENCODING);
+        if (freeSlots.isEmpty()) {
+            final int count = slots.capacity() / SLOT_SIZE;
+            try {
+                map(count * 2L);
+            } catch (final IOException e) {
+                LOGGER.log(Level.SEVERE, "Unable to grow " + balanceFile, e);
+                throw new AccountException(e);
+            }
+            for (int slot = count; slot < count * 2; slot++) {
+                freeSlots.add(slot);
+            }
+        }
+
+        final int slot = freeSlots.poll();
+        final int base = slot * SLOT_SIZE;
+        slots.putLong(base + BALANCE_OFFSET, balance);
+        for (int i = 0; i < MAX_NAME_BYTES; i++) {
+            slots.put(base + 2 + i, i < name.length ? name[i] : 0);
+        }
+        // the length goes in last, it marks the slot as taken
+        slots.putShort(base, (short) name.length);
+        slotIndex.put(accountName, slot);
+    }
+
+
+    /**
+     * Maps the balance file, extending it to a number of slots
+     * @param count - the number of slots
+     * @throws IOException - if the file cannot be mapped
+     */
+    private void map(final long count) throws IOException {
+        final long size = count * SLOT_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Balance file cannot hold " + count + " slots");
+        }
+        if (slots != null) {
+            slots.force();
+        }
+        slots = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+
+    /**
+     * Reads the name of the account in a slot
+     * @param slot - the slot
+     * @return - the name, null if the slot is free
+     */
+    private String nameAt(final int slot) {
+        final int base = slot * SLOT_SIZE;
+        final int length = slots.getShort(base);
+        if (length <= 0 || length > MAX_NAME_BYTES) {
+            return null;
+        }
+        final byte[] name = new byte[length];
+        for (int i = 0; i < length; i++) {
+            name[i] = slots.get(base + 2 + i);
+        }
+        return new String(name, ENCODING);
+    }
+
+
+    /**
+     * Closes the balance file, the mapping is released once it is collected
+     */
+    private void closeBalances() {
+        slots = null;
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (final IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to close " + balanceFile, e);
+            }
+            raf = null;
+        }
+    }
+
+
+    /**
+     * Fails if the store has been closed
+     * @throws AccountException - if the store is closed
+     */
+    private void checkOpen() throws AccountException {
+        if (slots == null) {
+            throw new AccountException("Account store " + balanceFile.getParent() + " is closed");
+        }
+    }
+
+
+    /**
+     * Whether two accounts have the same profile, everything but the balance
+     * @param account - the account
+     * @param written - the profile last written, may be null
+     * @return - true if the profile need not be written again
+     */
+    private static boolean sameProfile(final Account account, final Account written) {
+        if (written == null) {
+            return false;
+        }
+        return Arrays.equals(account.getPasswordHash(), written.getPasswordHash())
+                && same(account.getFullName(), written.getFullName())
+                && same(account.getPhone(), written.getPhone())
+                && same(account.getEmail(), written.getEmail())
+                && sameAddress(account.getAddress(), written.getAddress())
+                && sameCreditCard(account.getCreditCard(), written.getCreditCard());
+    }
+
+
+    /**
+     * Whether two addresses hold the same values
+     * @param a - an address, may be null
+     * @param b - another address, may be null
+     * @return - true if they are equal
+     */
+    private static boolean sameAddress(final Address a, final Address b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return same(a.getStreetAddress(), b.getStreetAddress())
+                && same(a.getCity(), b.getCity())
+                && same(a.getState(), b.getState())
+                && same(a.getZipCode(), b.getZipCode());
+    }
+
+
+    /**
+     * Whether two credit cards hold the same values
+     * @param a - a credit card, may be null
+     * @param b - another credit card, may be null
+     * @return - true if they are equal
+     */
+    private static boolean sameCreditCard(final CreditCard a, final CreditCard b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return same(a.getAccountNumber(), b.getAccountNumber())
+                && same(a.getIssuer(), b.getIssuer())
+                && same(a.getType(), b.getType())
+                && same(a.getHolder(), b.getHolder())
+                && same(a.getExpirationDate(), b.getExpirationDate());
+    }
+
+
+    /**
+     * Whether two strings are equal, the address and credit card setters store null as an empty string
+     * @param a - a string, may be null
+     * @param b - another string, may be null
+     * @return - true if they are equal once null is taken as empty
+     */
+    private static boolean same(final String a, final String b) {
+        return (a == null ? "" : a).equals(b == null ? "" : b);
+    }
+}
@@ -0,0 +1,99 @@
+package edu.uw.danco.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 8:30 PM
+ *
+ * A connection held by a ConnectionPool together with the statements prepared on it. A pooled connection is only
+ * used by the thread that acquired it, so its statements are reused without any locking.
+ */
+public final class PooledConnection {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(PooledConnection.class.getName());
+
+    /** The connection */
+    private final Connection connection;
+
+    /** The statements prepared on the connection, keyed by SQL */
+    private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+
+
+    /**
+     * Constructor
+     * @param connection - the connection
+     */
+    PooledConnection(final Connection connection) {
+        this.connection = connection;
+    }
+
+
+    /**
+     * Gets the statement for an SQL string, preparing it the first time it is asked for on this connection
+     * @param sql - the SQL
+     * @return - the prepared statement, with its parameters cleared
+     * @throws SQLException - if the statement cannot be prepared
+     */
+    public PreparedStatement prepare(final String sql) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if (ps == null) {
+            ps = connection.prepareStatement(sql);
+            statements.put(sql, ps);
+        } else {
+            ps.clearParameters();
+        }
+        return ps;
+    }
+
+
+    /**
+     * Gets the underlying connection, for the transaction control the statements need
+     * @return - the connection
+     */
+    Connection getConnection() {
+        return connection;
+    }
+
+
+    /**
+     * Whether the connection can still be used
+     * @return - false if the connection has been closed
+     */
+    boolean isOpen() {
+        try {
+            return !connection.isClosed();
+        } catch (final SQLException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Closes the statements and the connection
+     */
+    void close() {
+        for (final PreparedStatement ps : statements.values()) {
+            try {
+                ps.close();
+            } catch (final SQLException e) {
+                LOGGER.log(Level.WARNING, "Unable to close prepared statement", e);
+            }
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (final SQLException e) {
+            LOGGER.log(Level.WARNING, "Unable to close connection to DB", e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package edu.uw.danco.dao;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+import java.util.Collection;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 5:10 PM
+ *
+ * AccountDao decorator that bounds the number of threads concurrently inside the underlying DAO. Used in front of
+ * the database when orders are dispatched on virtual threads, where the number of dispatching threads is no longer
+ * bounded by a pool.
+ *
+ * A batch passes through as one call holding one permit. It keeps the underlying DAO's single round trip when that
+ * DAO is a BatchAccountDao, and is written one account at a time otherwise.
+ */
+public class ThrottledAccountDao implements BatchAccountDao {
+
+    /** The DAO being guarded */
+    private final AccountDao dao;
+
+    /** Permits for the calls allowed into the DAO at once */
+    private final Semaphore permits;
+
+
+    /**
+     * Constructor
+     * @param dao - the DAO being guarded
+     * @param maxConcurrentCalls - the maximum number of calls allowed into the DAO at once
+     */
+    public ThrottledAccountDao(final AccountDao dao, final int maxConcurrentCalls) {
+        this.dao = dao;
+        this.permits = new Semaphore(maxConcurrentCalls, true);
+    }
+
+
+    /**
+     * Lookup an account, waiting for a permit. getAccount cannot report a failure, so an interrupt does not end the
+     * wait, which would make an existing account look missing, the thread's interrupt status is set again on return.
+     * @param accountName - the name of the desired account
+     * @return - the account if located, otherwise null
+     */
+    @Override
+    public Account getAccount(final String accountName) {
+        permits.acquireUninterruptibly();
+        try {
+            return dao.getAccount(accountName);
+        } finally {
+            permits.release();
+        }
+    }
+
+
+    /**
+     * Adds or updates an account, waiting for a permit
+     * @param account - the account to add or update
+     * @throws AccountException - if the operation fails or is interrupted
+     */
+    @Override
+    public void setAccount(final Account account) throws AccountException {
+        acquire();
+        try {
+            dao.setAccount(account);
+        } finally {
+            permits.release();
+        }
+    }
+
+
+    /**
+     * Adds or updates a number of accounts, waiting for one permit. Either all or none of them are written if the
+     * guarded DAO is a BatchAccountDao, otherwise they are written one at a time
+     * @param accounts - the accounts to add or update
+     * @throws AccountException - if the operation fails or is interrupted
+     */
+    @Override
+    public void setAccounts(final Collection<Account> accounts) throws AccountException {
+        acquire();
+        try {
+            if (dao instanceof BatchAccountDao) {
+                ((BatchAccountDao) dao).setAccounts(accounts);
+            } else {
+                for (final Account account : accounts) {
+                    dao.setAccount(account);
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+
+    /**
+     * Remove the account, waiting for a permit
+     * @param accountName - the name of the account to be deleted
+     * @throws AccountException - if the operation fails or is interrupted
+     */
+    @Override
+    public void deleteAccount(final String accountName) throws AccountException {
+        acquire();
+        try {
+            dao.deleteAccount(accountName);
+        } finally {
+            permits.release();
+        }
+    }
+
+
+    /**
+     * Remove all the accounts, waiting for a permit
+     * @throws AccountException - if the operation fails or is interrupted
+     */
+    @Override
+    public void reset() throws AccountException {
+        acquire();
+        try {
+            dao.reset();
+        } finally {
+            permits.release();
+        }
+    }
+
+
+    /**
+     * Close the underlying DAO
+     * @throws AccountException - if the operation fails
+     */
+    @Override
+    public void close() throws AccountException {
+        dao.close();
+    }
+
+
+    /**
+     * Acquires a permit
+     * @throws AccountException - if interrupted while waiting
+     */
+    private void acquire() throws AccountException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AccountException("Interrupted waiting for access to the account store");
+        }
+    }
+}
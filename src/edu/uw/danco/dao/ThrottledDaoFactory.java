@@ -0,0 +1,54 @@
+package edu.uw.danco.dao;
+
+import edu.uw.ext.framework.dao.AccountDao;
+import edu.uw.ext.framework.dao.DaoFactory;
+import edu.uw.ext.framework.dao.DaoFactoryException;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 5:20 PM
+ *
+ * DaoFactory decorator that wraps the DAOs of another factory in a ThrottledAccountDao.
+ */
+public class ThrottledDaoFactory implements DaoFactory {
+
+    /** The factory creating the DAOs to be guarded */
+    private DaoFactory delegate;
+
+    /** The maximum number of calls allowed into each DAO at once */
+    private int maxConcurrentCalls = 32;
+
+
+    /**
+     * Instantiates a new AccountDao object.
+     * @return - a throttled account DAO object
+     * @throws DaoFactoryException - if unable to instantiate the DAO object
+     */
+    @Override
+    public AccountDao getAccountDao() throws DaoFactoryException {
+        if (delegate == null) {
+            throw new DaoFactoryException("No delegate DaoFactory has been configured");
+        }
+        return new ThrottledAccountDao(delegate.getAccountDao(), maxConcurrentCalls);
+    }
+
+
+    /**
+     * Sets the factory creating the DAOs to be guarded
+     * @param delegate - the delegate factory
+     */
+    public void setDelegate(final DaoFactory delegate) {
+        this.delegate = delegate;
+    }
+
+
+    /**
+     * Sets the maximum number of calls allowed into each DAO at once
+     * @param maxConcurrentCalls - the maximum concurrency
+     */
+    public void setMaxConcurrentCalls(final int maxConcurrentCalls) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+    }
+}
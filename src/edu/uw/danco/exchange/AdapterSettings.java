@@ -0,0 +1,123 @@
+package edu.uw.danco.exchange;
+
+import edu.uw.danco.concurrent.ExecutorMode;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 4:40 PM
+ *
+ * JavaBean holding the tuning options for ExchangeNetworkAdapter, configured in context.xml and handed to the adapter
+ * by ExchangeNetworkAdapterFactory.
+ */
+public class AdapterSettings {
+
+    /** The kind of threads the command handlers, or the NIO command server's workers, run on */
+    private ExecutorMode executorMode = ExecutorMode.PLATFORM;
+
+    /** The encoding events are multicast in */
+    private EventFormat eventFormat = EventFormat.TEXT;
+
+    /** How long price changes are gathered before they are sent, 0 sends every change immediately */
+    private long coalesceWindowMicros = 0;
+
+    /** Whether commands are served by the selector based NioCommandServer */
+    private boolean nioCommandServer = false;
+
+    /** Number of selector threads serving the command connections, only used by the NIO command server */
+    private int ioThreads = 2;
+
+
+    /**
+     * Gets the kind of threads the command handlers, or the NIO command server's workers, run on
+     * @return - the executor mode
+     */
+    public ExecutorMode getExecutorMode() {
+        return executorMode;
+    }
+
+
+    /**
+     * Sets the kind of threads the command handlers, or the NIO command server's workers, run on
+     * @param executorMode - PLATFORM or VIRTUAL
+     */
+    public void setExecutorMode(final ExecutorMode executorMode) {
+        this.executorMode = executorMode;
+    }
+
+
+    /**
+     * Gets the encoding events are multicast in
+     * @return - the event format
+     */
+    public EventFormat getEventFormat() {
+        return eventFormat;
+    }
+
+
+    /**
+     * Sets the encoding events are multicast in
+     * @param eventFormat - TEXT or BINARY
+     */
+    public void setEventFormat(final EventFormat eventFormat) {
+        this.eventFormat = eventFormat;
+    }
+
+
+    /**
+     * Gets how long price changes are gathered before they are sent together
+     * @return - the window in microseconds, 0 if coalescing is disabled
+     */
+    public long getCoalesceWindowMicros() {
+        return coalesceWindowMicros;
+    }
+
+
+    /**
+     * Sets how long price changes are gathered before they are sent together, only used with the BINARY event format
+     * @param coalesceWindowMicros - the window in microseconds, 0 sends every change immediately
+     */
+    public void setCoalesceWindowMicros(final long coalesceWindowMicros) {
+        this.coalesceWindowMicros = coalesceWindowMicros;
+    }
+
+
+    /**
+     * Whether commands are served by the selector based NioCommandServer
+     * @return - true for the NIO server, false for a blocking handler per connection
+     */
+    public boolean isNioCommandServer() {
+        return nioCommandServer;
+    }
+
+
+    /**
+     * Sets the command server implementation
+     * @param nioCommandServer - true for the NIO server, false for a blocking handler per connection
+     */
+    public void setNioCommandServer(final boolean nioCommandServer) {
+        this.nioCommandServer = nioCommandServer;
+    }
+
+
+    /**
+     * Gets the number of selector threads serving the command connections
+     * @return - the number of I/O threads
+     */
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+
+    /**
+     * Sets the number of selector threads serving the command connections
+     * @param ioThreads - the number of I/O threads, at least 1
+     */
+    public void setIoThreads(final int ioThreads) {
+        if (ioThreads < 1) {
+            throw new IllegalArgumentException("At least one I/O thread is required: " + ioThreads);
+        }
+        this.ioThreads = ioThreads;
+    }
+}
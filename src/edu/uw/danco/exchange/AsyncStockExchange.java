@@ -0,0 +1,54 @@
+package edu.uw.danco.exchange;
+
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
+import edu.uw.ext.framework.order.Order;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 5:50 PM
+ *
+ * A StockExchange whose remote operations can also be started without waiting for their result.
+ */
+public interface AsyncStockExchange extends StockExchange {
+
+    /**
+     * Requests the state of the exchange
+     * @return - a future completed with true if the exchange is open
+     */
+    CompletableFuture<Boolean> isOpenAsync();
+
+
+    /**
+     * Requests a stock's current price
+     * @param ticker - the ticker symbol for the stock
+     * @return - a future completed with the quote
+     */
+    CompletableFuture<StockQuote> getQuoteAsync(String ticker);
+
+
+    /**
+     * Requests the current price of every stock traded on the exchange in one round trip
+     * @return - a future completed with the quote of every ticker, in getTickers order
+     */
+    CompletableFuture<StockQuote[]> getAllQuotesAsync();
+
+
+    /**
+     * Requests the execution of a trade
+     * @param order - the order to execute
+     * @return - a future completed with the price at which the order was executed
+     */
+    CompletableFuture<Integer> executeTradeAsync(Order order);
+
+
+    /**
+     * Gets the ticker ids the exchange's price changes are delivered with to TickerIdListeners
+     * @return - the symbol table
+     */
+    SymbolTable getSymbols();
+}
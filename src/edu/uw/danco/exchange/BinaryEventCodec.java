@@ -0,0 +1,162 @@
+package edu.uw.danco.exchange;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 3:20 PM
+ *
+ * Encodes and decodes the binary exchange event datagrams. All values are big endian.
+ *
+ * Datagram: [MAGIC][VERSION][record_count:short] record...
+ * Record:   [type:byte][ticker_id:short][price:int][sequence:long]
+ *
+ * The magic byte is not a printable character so a receiver can tell a binary datagram from a text event by its
+ * first byte. The ticker id is the symbol's id in the SymbolTable, OPEN and CLOSED records carry NO_TICKER and a zero
+ * price. The sequence number increases by one for every record the adapter sends.
+ *
+ * The codec works on caller supplied buffers and does not allocate, decoded records are handed to a RecordHandler.
+ */
+public final class BinaryEventCodec {
+
+    /** First byte of every binary datagram */
+    public static final byte MAGIC = (byte) 0xEE;
+
+    /** The version of the layout written by this codec */
+    public static final byte VERSION = 1;
+
+    /** Record type of an exchange opened event */
+    public static final byte OPEN_RECORD = 1;
+
+    /** Record type of an exchange closed event */
+    public static final byte CLOSED_RECORD = 2;
+
+    /** Record type of a price change event */
+    public static final byte PRICE_CHANGE_RECORD = 3;
+
+    /** Ticker id carried by records that are not about a stock */
+    public static final int NO_TICKER = 0xFFFF;
+
+    /** Size of the datagram header in bytes */
+    public static final int HEADER_SIZE = 4;
+
+    /** Size of a record in bytes */
+    public static final int RECORD_SIZE = 15;
+
+    /** Largest datagram payload sent, fits an ethernet frame without fragmentation */
+    public static final int MAX_DATAGRAM_SIZE = 1472;
+
+    /** Most records that fit in one datagram */
+    public static final int MAX_RECORDS = (MAX_DATAGRAM_SIZE - HEADER_SIZE) / RECORD_SIZE;
+
+    /** Offset of the record count in the header */
+    private static final int COUNT_OFFSET = 2;
+
+
+    /**
+     * Receives the records of a decoded datagram
+     */
+    public interface RecordHandler {
+        /**
+         * Called for each record in datagram order
+         * @param type - the record type
+         * @param tickerId - the ticker id, NO_TICKER for open and closed records
+         * @param price - the price
+         * @param sequence - the sequence number
+         */
+        void record(byte type, int tickerId, int price, long sequence);
+    }
+
+
+    /**
+     * Not instantiable
+     */
+    private BinaryEventCodec() {
+    }
+
+
+    /**
+     * Clears the buffer and writes a header with a zero record count
+     * @param buffer - the buffer the datagram is built in
+     */
+    public static void begin(final ByteBuffer buffer) {
+        buffer.clear();
+        buffer.put(MAGIC);
+        buffer.put(VERSION);
+        buffer.putShort((short) 0);
+    }
+
+
+    /**
+     * Appends a record and increments the record count in the header
+     * @param buffer - the buffer the datagram is built in, begun with begin()
+     * @param type - the record type
+     * @param tickerId - the ticker id, NO_TICKER for open and closed records
+     * @param price - the price
+     * @param sequence - the sequence number
+     * @throws java.nio.BufferOverflowException - if the buffer has no room for the record
+     */
+    public static void append(final ByteBuffer buffer, final byte type, final int tickerId,
+                              final int price, final long sequence) {
+        buffer.put(type);
+        buffer.putShort((short) tickerId);
+        buffer.putInt(price);
+        buffer.putLong(sequence);
+        buffer.putShort(COUNT_OFFSET, (short) (recordCount(buffer) + 1));
+    }
+
+
+    /**
+     * Gets the number of records written to the buffer so far
+     * @param buffer - the buffer the datagram is built in
+     * @return - the record count
+     */
+    public static int recordCount(final ByteBuffer buffer) {
+        return buffer.getShort(COUNT_OFFSET) & 0xFFFF;
+    }
+
+
+    /**
+     * Tests whether a datagram is a binary event datagram
+     * @param data - the datagram bytes
+     * @param length - the datagram length
+     * @return - true if the datagram starts with the magic byte
+     */
+    public static boolean isBinary(final byte[] data, final int length) {
+        return length > 0 && data[0] == MAGIC;
+    }
+
+
+    /**
+     * Decodes a datagram, the buffer's position to limit must hold exactly one datagram
+     * @param buffer - the datagram
+     * @param handler - receives the records
+     * @return - the number of records decoded
+     * @throws IllegalArgumentException - if the datagram is not a binary event datagram of a supported version or
+     *                                    is truncated
+     */
+    public static int decode(final ByteBuffer buffer, final RecordHandler handler) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.get() != MAGIC) {
+            throw new IllegalArgumentException("Not a binary event datagram");
+        }
+        final byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary event version: " + version);
+        }
+        final int count = buffer.getShort() & 0xFFFF;
+        if (buffer.remaining() < count * RECORD_SIZE) {
+            throw new IllegalArgumentException(String.format("Truncated datagram, %d records in %d bytes",
+                                                             count, buffer.remaining()));
+        }
+        for (int i = 0; i < count; i++) {
+            final byte type = buffer.get();
+            final int tickerId = buffer.getShort() & 0xFFFF;
+            final int price = buffer.getInt();
+            final long sequence = buffer.getLong();
+            handler.record(type, tickerId, price, sequence);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,283 @@
+package edu.uw.danco.exchange;
+
+import edu.uw.danco.exchange.operations.GetState;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 6:20 PM
+ *
+ * A fixed number of PipelinedCommandChannels to the exchange network adapter. Each request goes to the open channel
+ * with the fewest outstanding requests, so a slow command only holds up the requests queued behind it on its own
+ * connection.
+ *
+ * A daemon thread periodically sends GET_STATE_CMD on every channel. A channel whose connection has failed, or that
+ * has read no response at all for STALL_TIMEOUT_MILLIS, is closed and reconnected. A check left unanswered because it
+ * is queued behind slow requests leaves the channel alone, closing it would fail those requests even though the
+ * exchange may already have carried them out. A request that finds no open channel tries to reconnect before it
+ * fails.
+ */
+public final class CommandChannelPool {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(CommandChannelPool.class.getName());
+
+    /** Time between health checks */
+    private static final long HEALTH_CHECK_INTERVAL_MILLIS = 5000;
+
+    /** How long a health check waits for its answer */
+    private static final long HEALTH_CHECK_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * How long a channel may go without reading a response before it is considered stalled, longer than any single
+     * request waits, see PipelinedCommandChannel.REQUEST_TIMEOUT_MILLIS
+     */
+    private static final long STALL_TIMEOUT_MILLIS = 3 * PipelinedCommandChannel.REQUEST_TIMEOUT_MILLIS;
+
+    /** Minimum time between connection attempts for the same slot */
+    private static final long RECONNECT_BACKOFF_MILLIS = 1000;
+
+    /** The address the exchange accepts requests on */
+    private final String host;
+
+    /** The port the exchange accepts requests on */
+    private final int port;
+
+    /** The channels, a slot holds null or a failed channel until it is reconnected */
+    private final AtomicReferenceArray<PipelinedCommandChannel> channels;
+
+    /** Time of the last connection attempt of each slot, guarded by the pool */
+    private final long[] lastAttempt;
+
+    /** Runs the health checks */
+    private final ScheduledExecutorService healthChecker;
+
+
+    /**
+     * Constructor, connects the channels and starts the health checks
+     * @param host - the address the exchange accepts requests on
+     * @param port - the port the exchange accepts requests on
+     * @param size - the number of connections
+     * @throws IOException - if not even one connection can be established
+     */
+    public CommandChannelPool(final String host, final int port, final int size) throws IOException {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1: " + size);
+        }
+        this.host = host;
+        this.port = port;
+        channels = new AtomicReferenceArray<PipelinedCommandChannel>(size);
+        lastAttempt = new long[size];
+
+        IOException failure = null;
+        for (int slot = 0; slot < size; slot++) {
+            try {
+                channels.set(slot, new PipelinedCommandChannel(host, port));
+            } catch (final IOException e) {
+                LOGGER.log(Level.WARNING, String.format("Unable to open command connection %d to %s:%d",
+                                                        slot, host, port), e);
+                lastAttempt[slot] = System.currentTimeMillis();
+                failure = e;
+            }
+        }
+        if (failure != null && openChannels() == 0) {
+            throw failure;
+        }
+
+        healthChecker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "exchange-command-health");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        healthChecker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkHealth();
+            }
+        }, HEALTH_CHECK_INTERVAL_MILLIS, HEALTH_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Sends an operation on the least loaded open channel without waiting for its response
+     * @param operation - the operation
+     * @return - a future completed with the operation once its result is set, or exceptionally if no connection is
+     *           available or the connection fails first
+     */
+    public CompletableFuture<ExchangeOperation> submit(final ExchangeOperation operation) {
+        PipelinedCommandChannel channel = leastOutstanding();
+        if (channel == null) {
+            for (int slot = 0; slot < channels.length() && channel == null; slot++) {
+                channel = reconnect(slot);
+            }
+        }
+
+        if (channel == null) {
+            final CompletableFuture<ExchangeOperation> failed = new CompletableFuture<ExchangeOperation>();
+            failed.completeExceptionally(
+                    new IOException(String.format("No command connection to %s:%d available", host, port)));
+            return failed;
+        }
+        return channel.submit(operation);
+    }
+
+
+    /**
+     * Gets the number of channels currently usable
+     * @return - the number of open channels
+     */
+    public int openChannels() {
+        int open = 0;
+        for (int slot = 0; slot < channels.length(); slot++) {
+            final PipelinedCommandChannel channel = channels.get(slot);
+            if (channel != null && channel.isOpen()) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+
+    /**
+     * Stops the health checks and closes the channels, outstanding requests fail
+     */
+    public void close() {
+        healthChecker.shutdownNow();
+        for (int slot = 0; slot < channels.length(); slot++) {
+            final PipelinedCommandChannel channel = channels.getAndSet(slot, null);
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+
+    /**
+     * Finds the open channel with the fewest requests waiting for their response
+     * @return - the channel, or null if no channel is open
+     */
+    private PipelinedCommandChannel leastOutstanding() {
+        PipelinedCommandChannel best = null;
+        int fewest = Integer.MAX_VALUE;
+        for (int slot = 0; slot < channels.length(); slot++) {
+            final PipelinedCommandChannel channel = channels.get(slot);
+            if (channel != null && channel.isOpen()) {
+                final int outstanding = channel.getOutstanding();
+                if (outstanding < fewest) {
+                    best = channel;
+                    fewest = outstanding;
+                }
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * Replaces the channel in a slot if it is missing or has failed, at most once per backoff period
+     * @param slot - the slot
+     * @return - the slot's open channel, or null if it could not be connected
+     */
+    private PipelinedCommandChannel reconnect(final int slot) {
+        synchronized (this) {
+            final PipelinedCommandChannel current = channels.get(slot);
+            if (current != null && current.isOpen()) {
+                return current;
+            }
+
+            final long now = System.currentTimeMillis();
+            if (now - lastAttempt[slot] < RECONNECT_BACKOFF_MILLIS) {
+                return null;
+            }
+            lastAttempt[slot] = now;
+
+            try {
+                final PipelinedCommandChannel channel = new PipelinedCommandChannel(host, port);
+                channels.set(slot, channel);
+                LOGGER.info(String.format("Reconnected command connection %d to %s:%d", slot, host, port));
+                return channel;
+            } catch (final IOException e) {
+                LOGGER.log(Level.WARNING, String.format("Unable to reconnect command connection %d to %s:%d",
+                                                        slot, host, port), e);
+                return null;
+            }
+        }
+    }
+
+
+    /**
+     * Health check body, sends GET_STATE_CMD on every open channel and replaces the channels that have failed or
+     * stalled
+     */
+    private void checkHealth() {
+        final int size = channels.length();
+        final PipelinedCommandChannel[] checked = new PipelinedCommandChannel[size];
+        @SuppressWarnings("unchecked")
+        final CompletableFuture<ExchangeOperation>[] checks = new CompletableFuture[size];
+        final long sent = System.currentTimeMillis();
+        for (int slot = 0; slot < size; slot++) {
+            final PipelinedCommandChannel channel = channels.get(slot);
+            if (channel != null && channel.isOpen()) {
+                checked[slot] = channel;
+                checks[slot] = channel.submit(new GetState());
+            }
+        }
+
+        final long deadline = sent + HEALTH_CHECK_TIMEOUT_MILLIS;
+        for (int slot = 0; slot < size; slot++) {
+            if (checks[slot] != null) {
+                try {
+                    checks[slot].get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (final TimeoutException e) {
+                    closeIfStalled(slot, checked[slot]);
+                } catch (final ExecutionException e) {
+                    if (e.getCause() instanceof TimeoutException) {
+                        closeIfStalled(slot, checked[slot]);
+                    } else {
+                        LOGGER.log(Level.WARNING, String.format(
+                                "Command connection %d to %s:%d failed its health check", slot, host, port), e);
+                        checked[slot].close();
+                    }
+                }
+            }
+            reconnect(slot);
+        }
+    }
+
+
+    /**
+     * Closes a channel whose health check went unanswered if it has read no response for STALL_TIMEOUT_MILLIS, a
+     * channel that has read one more recently is only busy
+     * @param slot - the channel's slot
+     * @param channel - the channel
+     */
+    private void closeIfStalled(final int slot, final PipelinedCommandChannel channel) {
+        if (System.currentTimeMillis() - channel.getLastResponseMillis() > STALL_TIMEOUT_MILLIS) {
+            LOGGER.warning(String.format("Command connection %d to %s:%d has stalled, %d requests outstanding",
+                                         slot, host, port, channel.getOutstanding()));
+            channel.close();
+        } else {
+            LOGGER.info(String.format("Health check of command connection %d to %s:%d is queued behind %d requests",
+                                      slot, host, port, channel.getOutstanding()));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package edu.uw.danco.exchange;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 4:45 PM
+ *
+ * Accepts broker connections on the command port and services their requests against the exchange.
+ */
+interface CommandServer {
+
+    /**
+     * Starts accepting connections
+     */
+    void start();
+
+
+    /**
+     * Stops accepting connections and closes the open ones
+     */
+    void close();
+}
@@ -0,0 +1,18 @@
+package edu.uw.danco.exchange;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 3:05 PM
+ *
+ * The encoding the ExchangeNetworkAdapter multicasts events in. NetEventProcessor recognizes both, so the adapter
+ * can be switched without reconfiguring the brokers.
+ */
+public enum EventFormat {
+    /** The original text events, see ProtocolConstants */
+    TEXT,
+
+    /** The fixed layout binary events, see BinaryEventCodec */
+    BINARY
+}
@@ -10,7 +10,14 @@ import edu.uw.ext.framework.order.Order;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,7 +58,57 @@ public class ExchangeNetworkAdapter implements ExchangeAdapter {
     private InetAddress group = null;
 
     /** Listens for commands to send to the exchange */
-    private CommandListener listener;
+    private CommandServer listener;
+
+    /** The encoding the events are multicast in */
+    private final EventFormat eventFormat;
+
+    /** Maps the tickers to the ids used by the binary events */
+    private final SymbolTable symbols;
+
+    /** Buffer the binary datagrams are built in, guarded by this */
+    private final ByteBuffer eventBuffer = ByteBuffer.allocate(BinaryEventCodec.MAX_DATAGRAM_SIZE);
+
+    /** The packet every event is sent in, guarded by this */
+    private DatagramPacket eventPacket;
+
+    /**
+     * Sequence number of the last binary record sent, guarded by this. Starts from the clock in microseconds so a
+     * restarted adapter continues above the numbers it sent before, which receivers treat as a gap and recover from.
+     */
+    private long sequence = System.currentTimeMillis() * 1000;
+
+    /** How long price changes are gathered before they are sent, 0 sends every change immediately */
+    private final long coalesceWindowMicros;
+
+    /** Ids of the tickers with a price change waiting to be sent, in arrival order, guarded by this */
+    private final int[] pendingIds;
+
+    /** The latest waiting price of each ticker, indexed by ticker id, guarded by this */
+    private final int[] pendingPrices;
+
+    /** Whether a ticker has a price change waiting to be sent, indexed by ticker id, guarded by this */
+    private final boolean[] isPending;
+
+    /** Number of price changes waiting to be sent, guarded by this */
+    private int pendingCount;
+
+    /** Sends the waiting price changes once the window has passed, null unless coalescing */
+    private final ScheduledExecutorService flushTimer;
+
+    /** The scheduled send of the waiting price changes, guarded by this */
+    private ScheduledFuture<?> scheduledFlush;
+
+    /** Sends the waiting price changes */
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ExchangeNetworkAdapter.this) {
+                scheduledFlush = null;
+                flushPending();
+            }
+        }
+    };
 
     /**
      * Server event processing consists of the ExchangeNetworkAdapter registering as an ExchangeListener
@@ -68,16 +125,61 @@ public class ExchangeNetworkAdapter implements ExchangeAdapter {
                                   final int multicastPort,
                                   final int commandPort)
             throws UnknownHostException, SocketException {
+        this(exchange, multicastIp, multicastPort, commandPort, new AdapterSettings());
+    }
+
+
+    /**
+     * Server event processing consists of the ExchangeNetworkAdapter registering as an ExchangeListener
+     *
+     * With a coalescing window the binary price changes are gathered for up to the window, or until a datagram is
+     * full, and sent together. A later change for a ticker replaces one still waiting, and waiting changes are sent
+     * ahead of any open or closed event. The text format always sends every event on its own.
+     *
+     * @param exchange - the exchange used to service the network requests
+     * @param multicastIp - the ipaddress used to propagate price changes
+     * @param multicastPort - the ip port used to propagate price changes
+     * @param commandPort - the port for handling for commands
+     * @param settings - the event format, coalescing window and command server options
+     * @throws UnknownHostException
+     * @throws SocketException
+     */
+    public ExchangeNetworkAdapter(final StockExchange exchange,
+                                  final String multicastIp,
+                                  final int multicastPort,
+                                  final int commandPort,
+                                  final AdapterSettings settings)
+            throws UnknownHostException, SocketException {
+        final EventFormat eventFormat = settings.getEventFormat();
+        final long coalesceWindowMicros = settings.getCoalesceWindowMicros();
         this.exchange = exchange;
         this.multicastIp = multicastIp;
         this.multicastPort = multicastPort;
+        this.eventFormat = eventFormat;
+        this.symbols = new SymbolTable(exchange.getTickers());
+
+        if (coalesceWindowMicros > 0 && eventFormat != EventFormat.BINARY) {
+            LOGGER.warning("Price changes are only coalesced in the BINARY event format");
+        }
+        this.coalesceWindowMicros = eventFormat == EventFormat.BINARY ? Math.max(0, coalesceWindowMicros) : 0;
+        pendingIds = new int[symbols.size()];
+        pendingPrices = new int[symbols.size()];
+        isPending = new boolean[symbols.size()];
+        flushTimer = this.coalesceWindowMicros > 0 ? newFlushTimer() : null;
 
         try {
             group = InetAddress.getByName(multicastIp);
             multiSock = new MulticastSocket();
             multiSock.joinGroup(group);
-
-            listener = new CommandListener(exchange, commandPort);
+            eventPacket = new DatagramPacket(eventBuffer.array(), 0, group, multicastPort);
+
+            if (settings.isNioCommandServer()) {
+                listener = new NioCommandServer(exchange, symbols, commandPort, settings.getIoThreads(),
+                        settings.getExecutorMode().newExecutor("exchange-command-worker-"));
+            } else {
+                listener = new CommandListener(exchange, commandPort,
+                        settings.getExecutorMode().newExecutor("exchange-command-handler-"));
+            }
             listener.start();
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Unable to open socket", e);
@@ -92,6 +194,12 @@ public class ExchangeNetworkAdapter implements ExchangeAdapter {
      */
     @Override
     public void close() {
+        if (flushTimer != null) {
+            synchronized (this) {
+                flushPending();
+            }
+            flushTimer.shutdown();
+        }
         if (multiSock != null) {
             try {
                 exchange.removeExchangeListener(this);
@@ -142,28 +250,135 @@ public class ExchangeNetworkAdapter implements ExchangeAdapter {
     }
 
 
-    private void multicastEvent(final ExchangeEvent event) {
-        // can move the datagram object to an instance member rather than local to decrease object creation
-        byte[] buf = new byte[1024];
-        final DatagramPacket packet = new DatagramPacket(buf, buf.length,
-                                                                group, multicastPort);
-        final String eventStr = NetEventProcessor.GetEventString(event);
+    /**
+     * Encodes an event in the configured format and multicasts it, or adds it to the waiting price changes when
+     * coalescing
+     * @param event - the event
+     */
+    private synchronized void multicastEvent(final ExchangeEvent event) {
+        if (eventPacket == null) {
+            return;
+        }
+
+        if (eventFormat == EventFormat.BINARY) {
+            final byte type;
+            int tickerId = BinaryEventCodec.NO_TICKER;
+            switch (event.getEventType()) {
+                case OPENED:
+                    type = BinaryEventCodec.OPEN_RECORD;
+                    break;
+
+                case CLOSED:
+                    type = BinaryEventCodec.CLOSED_RECORD;
+                    break;
+
+                default:
+                    type = BinaryEventCodec.PRICE_CHANGE_RECORD;
+                    tickerId = symbols.idOf(event.getTicker());
+                    break;
+            }
+
+            if (tickerId >= 0) {
+                if (type == BinaryEventCodec.PRICE_CHANGE_RECORD && coalesceWindowMicros > 0) {
+                    coalesce(tickerId, event.getPrice());
+                } else {
+                    flushPending();
+                    BinaryEventCodec.begin(eventBuffer);
+                    BinaryEventCodec.append(eventBuffer, type, tickerId, event.getPrice(), ++sequence);
+                    send(eventBuffer.array(), eventBuffer.position());
+                }
+                return;
+            }
+            LOGGER.warning("No ticker id for " + event.getTicker() + ", sending as text");
+            flushPending();
+        }
+
         // add the encoding type to the ProtocolConstants and reference it in the getBytes method
-        byte[] bytes = eventStr.getBytes();
-        packet.setData(bytes);
-        packet.setLength(bytes.length);
+        final byte[] bytes = NetEventProcessor.GetEventString(event).getBytes();
+        send(bytes, bytes.length);
+    }
+
+
+    /**
+     * Adds a price change to the waiting price changes, replacing any waiting change for the same ticker. Must be
+     * called holding this.
+     * @param tickerId - the ticker id
+     * @param price - the new price
+     */
+    private void coalesce(final int tickerId, final int price) {
+        pendingPrices[tickerId] = price;
+        if (!isPending[tickerId]) {
+            isPending[tickerId] = true;
+            pendingIds[pendingCount++] = tickerId;
+            if (pendingCount == 1) {
+                scheduledFlush = flushTimer.schedule(flushTask, coalesceWindowMicros, TimeUnit.MICROSECONDS);
+            }
+        }
+        if (pendingCount == BinaryEventCodec.MAX_RECORDS) {
+            flushPending();
+        }
+    }
+
+
+    /**
+     * Sends the waiting price changes as a single datagram. Must be called holding this.
+     */
+    private void flushPending() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pendingCount == 0) {
+            return;
+        }
+
+        BinaryEventCodec.begin(eventBuffer);
+        for (int i = 0; i < pendingCount; i++) {
+            final int tickerId = pendingIds[i];
+            BinaryEventCodec.append(eventBuffer, BinaryEventCodec.PRICE_CHANGE_RECORD, tickerId,
+                                    pendingPrices[tickerId], ++sequence);
+            isPending[tickerId] = false;
+        }
+        pendingCount = 0;
+        send(eventBuffer.array(), eventBuffer.position());
+    }
+
+
+    /**
+     * Multicasts a datagram. Must be called holding this.
+     * @param data - the datagram bytes
+     * @param length - the datagram length
+     */
+    private void send(final byte[] data, final int length) {
+        eventPacket.setData(data, 0, length);
         try {
-            multiSock.send(packet);
+            multiSock.send(eventPacket);
         } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, String.format("Unable to multicast %s event", event.getEventType()), e);
+            LOGGER.log(Level.SEVERE, "Unable to multicast event datagram", e);
         }
     }
 
 
+    /**
+     * Creates the timer thread that sends the waiting price changes
+     * @return - the timer
+     */
+    private static ScheduledExecutorService newFlushTimer() {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "exchange-event-coalescer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+
     /**
      * Listen for operations commands sent on the network
      */
-    private static class CommandListener extends Thread {
+    private static class CommandListener extends Thread implements CommandServer {
 
         /** The logger */
         private static final Logger logger = Logger.getLogger(CommandListener.class.getName());
@@ -183,14 +398,19 @@ public class ExchangeNetworkAdapter implements ExchangeAdapter {
         /** Flag to determine listening state */
         private boolean listening;
 
+        /** Runs a command handler for each client connection */
+        private final ExecutorService handlerExecutor;
+
         /**
          * Constructor
          * @param exchange
          * @param commandPort
+         * @param handlerExecutor - runs a command handler for each client connection
          */
-        private CommandListener(StockExchange exchange, int commandPort) {
+        private CommandListener(StockExchange exchange, int commandPort, ExecutorService handlerExecutor) {
             this.exchange = exchange;
             this.commandPort = commandPort;
+            this.handlerExecutor = handlerExecutor;
 
             try {
                 serverSocket = new ServerSocket(commandPort);
@@ -208,8 +428,7 @@ public class ExchangeNetworkAdapter implements ExchangeAdapter {
                 while (listening) {
                     client = serverSocket.accept();
                     handler = new CommandHandler(exchange, client);
-                    final Thread handlerThread = new Thread(handler);
-                    handlerThread.start();
+                    handlerExecutor.execute(handler);
                 }
             } catch (final SocketException e) {
                 if (serverSocket != null && !serverSocket.isClosed()) {
@@ -218,7 +437,9 @@ public class ExchangeNetworkAdapter implements ExchangeAdapter {
             } catch (IOException e) {
                 logger.log(Level.WARNING, "Exception listening on server with port = " + commandPort, e);
             } finally {
-                handler.stopHandling();
+                if (handler != null) {
+                    handler.stopHandling();
+                }
             }
         }
 
@@ -229,7 +450,10 @@ public class ExchangeNetworkAdapter implements ExchangeAdapter {
         public void close() {
             try {
                 listening = false;
-                client.close();
+                handlerExecutor.shutdown();
+                if (client != null) {
+                    client.close();
+                }
                 serverSocket.close();
             } catch (IOException e) {
                 logger.log(Level.WARNING, "Unable to close server socket", e);
@@ -278,29 +502,49 @@ public class ExchangeNetworkAdapter implements ExchangeAdapter {
                 reader = new BufferedReader(isr);
                 writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
                 while (handling) {
-                    final String command = reader.readLine();
+                    String command = reader.readLine();
                     if (command == null) {
-                        continue;
+                        // the client disconnected
+                        break;
+                    }
+                    // a tagged request has its tag echoed ahead of the response
+                    String tag = "";
+                    if (command.startsWith(ProtocolConstants.REQUEST_TAG.toString())) {
+                        final int tagEnd = command.indexOf(ProtocolConstants.ELEMENT_DELIMITER.toString()) + 1;
+                        tag = command.substring(0, tagEnd);
+                        command = command.substring(tagEnd);
                     }
                     final Scanner scanner =
                             new Scanner(command).useDelimiter(ProtocolConstants.ELEMENT_DELIMITER.toString());
                     final String name = scanner.next();
-                    final ProtocolConstants cmdName = ProtocolConstants.valueOf(name);
+                    ProtocolConstants cmdName = null;
+                    try {
+                        cmdName = ProtocolConstants.valueOf(name);
+                    } catch (IllegalArgumentException e) {
+                        // answered with ERROR_RESPONSE below
+                    }
+                    if (cmdName == null) {
+                        logger.log(Level.WARNING, "Unable to determine command for: " + command);
+                        writer.write(tag + ProtocolConstants.ERROR_RESPONSE + "\n");
+                        writer.flush();
+                        continue;
+                    }
 
                     // use a PrintWriter rather than a BufferedWriter and you get a println method on the writer,
                     // and you can also pass a value to cause it to auto-flush.
 
                     switch (cmdName) {
                         case GET_QUOTE_CMD:
+                            writer.write(tag);
                             scanner.skip(ProtocolConstants.ELEMENT_DELIMITER.toString());
                             final String ticker = scanner.next();
                             final StockQuote quote = exchange.getQuote(ticker);
-                            // handle invalid tickers
-                            writer.write(quote.getPrice() + "\n");
+                            writer.write((quote == null ? -1 : quote.getPrice()) + "\n");
                             writer.flush();
                             break;
 
                         case GET_TICKERS_CMD:
+                            writer.write(tag);
                             String[] tickers = exchange.getTickers();
                             // instaed of writing immediately, use a string builder and first build the string
                             for (final String symbol : tickers) {
@@ -311,7 +555,24 @@ public class ExchangeNetworkAdapter implements ExchangeAdapter {
                             writer.flush();
                             break;
 
+                        case GET_ALL_QUOTES_CMD:
+                            writer.write(tag);
+                            final StringBuilder snapshot = new StringBuilder();
+                            snapshot.append(exchange.isOpen() ? ProtocolConstants.OPEN_STATE
+                                                              : ProtocolConstants.CLOSED_STATE);
+                            for (final String symbol : exchange.getTickers()) {
+                                final StockQuote symbolQuote = exchange.getQuote(symbol);
+                                snapshot.append(ProtocolConstants.ELEMENT_DELIMITER);
+                                snapshot.append(symbol);
+                                snapshot.append(ProtocolConstants.ELEMENT_DELIMITER);
+                                snapshot.append(symbolQuote == null ? -1 : symbolQuote.getPrice());
+                            }
+                            writer.write(snapshot.append('\n').toString());
+                            writer.flush();
+                            break;
+
                         case GET_STATE_CMD:
+                            writer.write(tag);
                             if (exchange.isOpen()) {
                                 writer.write(ProtocolConstants.OPEN_STATE.toString());
                             } else {
@@ -331,6 +592,7 @@ public class ExchangeNetworkAdapter implements ExchangeAdapter {
                              * shares
                              * Response: execution_price
                              */
+                            writer.write(tag);
                             if (exchange.isOpen()) {
                                 scanner.skip(ProtocolConstants.ELEMENT_DELIMITER.toString());
                                 final Order order;
@@ -354,12 +616,17 @@ public class ExchangeNetworkAdapter implements ExchangeAdapter {
                             break;
 
                         default:
+                            // answer anyway, a tagged client is waiting for a response to this request
                             logger.log(Level.WARNING, "Unable to determine command for: " + cmdName);
+                            writer.write(tag + ProtocolConstants.ERROR_RESPONSE + "\n");
+                            writer.flush();
                             break;
                     }
                 }
                 } catch (IOException e) {
                     logger.log(Level.SEVERE, "Exception reading from input stream", e);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Malformed command, closing connection", e);
                 } finally {
                     if (reader != null) {
                         try {
@@ -22,6 +22,9 @@ public class ExchangeNetworkAdapterFactory implements NetworkExchangeAdapterFact
     /** The logger */
     private static final Logger LOGGER = Logger.getLogger(ExchangeNetworkAdapterFactory.class.getName());
 
+    /** The tuning options handed to the adapters */
+    private AdapterSettings settings = new AdapterSettings();
+
 
     /**
      * Constructor returns an instance of an ExchangeNetworkAdapter
@@ -36,7 +39,7 @@ public class ExchangeNetworkAdapterFactory implements NetworkExchangeAdapterFact
                                       final int multicastPort, final int commandPort) {
         ExchangeAdapter networkAdapter = null;
         try {
-            networkAdapter = new ExchangeNetworkAdapter(exchange, multicastIP, multicastPort, commandPort);
+            networkAdapter = new ExchangeNetworkAdapter(exchange, multicastIP, multicastPort, commandPort, settings);
         } catch (final UnknownHostException e) {
             LOGGER.log(Level.SEVERE, "Unable to resolve address for " + multicastIP, e);
         } catch (final SocketException e) {
@@ -45,4 +48,13 @@ public class ExchangeNetworkAdapterFactory implements NetworkExchangeAdapterFact
 
         return networkAdapter;
     }
+
+
+    /**
+     * Sets the tuning options handed to the adapters
+     * @param settings - the adapter settings
+     */
+    public void setSettings(final AdapterSettings settings) {
+        this.settings = settings;
+    }
 }
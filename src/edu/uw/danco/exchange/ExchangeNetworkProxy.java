@@ -1,6 +1,7 @@
 package edu.uw.danco.exchange;
 
 import edu.uw.danco.exchange.operations.ExecuteTrade;
+import edu.uw.danco.exchange.operations.GetAllQuotes;
 import edu.uw.danco.exchange.operations.GetQuote;
 import edu.uw.danco.exchange.operations.GetState;
 import edu.uw.danco.exchange.operations.GetTickers;
@@ -14,8 +15,12 @@ import java.io.*;
 import java.net.*;
 import java.util.ArrayList;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,12 +37,24 @@ import java.util.logging.Logger;
  *
  * The proxy will receive multicast messages representing exchange events. These event messages will be transformed
  * into the appropriate event object and then propagated to registered listeners.
+ *
+ * The commands are sent on a CommandChannelPool of PipelinedCommandChannels, so calls from any number of threads are
+ * in flight together rather than waiting for each other's round trips, and a slow command only delays the requests
+ * that share its connection.
+ *
+ * Quotes and the exchange state are served from a QuoteTable kept current by the event stream and seeded when the
+ * proxy connects. With a maximum quote age set, entries that have not been updated for longer than that are fetched
+ * from the exchange instead, a negative maximum age sends every request to the exchange. A response is only written
+ * to the table if no event has updated the entry since the request was sent.
  */
-public class ExchangeNetworkProxy implements StockExchange {
+public class ExchangeNetworkProxy implements AsyncStockExchange {
 
     /** The logger */
     private static final Logger LOGGER = Logger.getLogger(ExchangeNetworkAdapter.class.getName());
 
+    /** How long the blocking operations wait for their response */
+    private static final long CALL_TIMEOUT_MILLIS = 10000;
+
     /** The event listener list for the exchange */
     private EventListenerList listenerList = new EventListenerList();
 
@@ -54,9 +71,18 @@ public class ExchangeNetworkProxy implements StockExchange {
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
 
     /**
-     * The socket with which to talk to the server
+     * The channels with which to talk to the server
      */
-    private Socket server;
+    private CommandChannelPool server;
+
+    /** The exchange's ticker ids */
+    private SymbolTable symbols = new SymbolTable(new String[0]);
+
+    /** The last known prices and state of the exchange */
+    private QuoteTable quotes = new QuoteTable(0);
+
+    /** The maximum age of a local quote or state, 0 for no limit, negative to always ask the exchange */
+    private final long maxQuoteAgeMillis;
 
 
     /**
@@ -70,14 +96,58 @@ public class ExchangeNetworkProxy implements StockExchange {
                                 final int eventPort,
                                 final String cmdIpAddress,
                                 final int cmdPort) {
+        this(eventIpAddress, eventPort, cmdIpAddress, cmdPort, 1);
+    }
+
+
+    /**
+     *
+     * @param eventIpAddress - the multicast IP address to connect to
+     * @param eventPort - the multicastport to connect to
+     * @param cmdIpAddress - the address the exchange accepts requests on
+     * @param cmdPort - the port the exchange accepts requests on
+     * @param poolSize - the number of command connections to the exchange
+     */
+    public ExchangeNetworkProxy(final String eventIpAddress,
+                                final int eventPort,
+                                final String cmdIpAddress,
+                                final int cmdPort,
+                                final int poolSize) {
+        this(eventIpAddress, eventPort, cmdIpAddress, cmdPort, poolSize, 0);
+    }
+
+
+    /**
+     *
+     * @param eventIpAddress - the multicast IP address to connect to
+     * @param eventPort - the multicastport to connect to
+     * @param cmdIpAddress - the address the exchange accepts requests on
+     * @param cmdPort - the port the exchange accepts requests on
+     * @param poolSize - the number of command connections to the exchange
+     * @param maxQuoteAgeMillis - the maximum age of a local quote or state, 0 for no limit, negative to always ask
+     *                            the exchange
+     */
+    public ExchangeNetworkProxy(final String eventIpAddress,
+                                final int eventPort,
+                                final String cmdIpAddress,
+                                final int cmdPort,
+                                final int poolSize,
+                                final long maxQuoteAgeMillis) {
+        this.maxQuoteAgeMillis = maxQuoteAgeMillis;
         try {
             eventGroup = InetAddress.getByName(eventIpAddress);
+            server = new CommandChannelPool(cmdIpAddress, cmdPort, poolSize);
 
-            commandProcessor =
-                    new NetEventProcessor(eventPort, eventGroup, cmdIpAddress, cmdPort, listenerList);
+            // the binary events identify tickers by their position in the exchange's ticker list
+            symbols = new SymbolTable(getTickers());
+            quotes = new QuoteTable(symbols.size());
+            commandProcessor = new NetEventProcessor(eventPort, eventGroup, cmdIpAddress, cmdPort,
+                                                     listenerList, symbols, quotes, this);
 
             executor.execute(commandProcessor);
-            server = new Socket(cmdIpAddress, cmdPort);
+            if (maxQuoteAgeMillis >= 0) {
+                seedQuotes();
+            }
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Unable to connect to command socket.", e);
         } finally {
@@ -99,14 +169,39 @@ public class ExchangeNetworkProxy implements StockExchange {
         // sends the GET_STATE_CMD command, parses response
         boolean isOpen = false;
         try {
-            ExchangeOperation operation = call(new GetState());
-            final Scanner scanner =
-                    new Scanner(operation.getResult()).useDelimiter(ProtocolConstants.ELEMENT_DELIMITER.toString());
-            isOpen = scanner.next().equals(ProtocolConstants.OPEN_STATE.toString());
+            isOpen = await(isOpenAsync());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Exception trying to call the event processor", e);
         }
-        return true;
+        return isOpen;
+    }
+
+
+    /**
+     * Requests the state of the exchange without waiting for the response
+     * @return - a future completed with true if the exchange is open
+     */
+    @Override
+    public CompletableFuture<Boolean> isOpenAsync() {
+        if (maxQuoteAgeMillis >= 0) {
+            final Boolean isOpen = quotes.getOpen(maxQuoteAgeMillis);
+            if (isOpen != null) {
+                return CompletableFuture.completedFuture(isOpen);
+            }
+        }
+
+        final int version = quotes.getOpenVersion();
+        return server.submit(new GetState()).thenApply(new Function<ExchangeOperation, Boolean>() {
+            @Override
+            public Boolean apply(final ExchangeOperation operation) {
+                final Scanner scanner = new Scanner(operation.getResult())
+                        .useDelimiter(ProtocolConstants.ELEMENT_DELIMITER.toString());
+                final boolean isOpen = scanner.next().equals(ProtocolConstants.OPEN_STATE.toString());
+                // an event delivered while the request was in flight is newer than the response
+                quotes.setOpenIfCurrent(isOpen, version);
+                return isOpen;
+            }
+        });
     }
 
 
@@ -146,8 +241,7 @@ public class ExchangeNetworkProxy implements StockExchange {
         StockQuote quote = null;
 
         try {
-            ExchangeOperation operation = call(new GetQuote(ticker));
-            quote = new StockQuote(ticker, Integer.valueOf(operation.getResult()));
+            quote = await(getQuoteAsync(ticker));
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Exception trying to call the event processor", e);
         }
@@ -156,6 +250,64 @@ public class ExchangeNetworkProxy implements StockExchange {
     }
 
 
+    /**
+     * Requests a stock's current price without waiting for the response
+     * @param ticker - the ticker symbol for the stock
+     * @return - a future completed with the quote, or null if the exchange has no quote for the ticker
+     */
+    @Override
+    public CompletableFuture<StockQuote> getQuoteAsync(final String ticker) {
+        final int tickerId = symbols.idOf(ticker);
+        if (maxQuoteAgeMillis >= 0 && tickerId >= 0) {
+            final int price = quotes.getPrice(tickerId, maxQuoteAgeMillis);
+            if (price != QuoteTable.UNKNOWN) {
+                return CompletableFuture.completedFuture(new StockQuote(ticker, price));
+            }
+        }
+
+        final int version = tickerId >= 0 ? quotes.getPriceVersion(tickerId) : 0;
+        return server.submit(new GetQuote(ticker)).thenApply(new Function<ExchangeOperation, StockQuote>() {
+            @Override
+            public StockQuote apply(final ExchangeOperation operation) {
+                final int price = Integer.parseInt(operation.getResult());
+                if (price == QuoteTable.UNKNOWN) {
+                    return null;
+                }
+                if (tickerId >= 0) {
+                    // an event delivered while the request was in flight is newer than the response
+                    quotes.setPriceIfCurrent(tickerId, price, version);
+                }
+                return new StockQuote(ticker, price);
+            }
+        });
+    }
+
+
+    /**
+     * Requests the current price of every stock traded on the exchange with a single GET_ALL_QUOTES_CMD
+     * @return - a future completed with the quote of every ticker, in getTickers order
+     */
+    @Override
+    public CompletableFuture<StockQuote[]> getAllQuotesAsync() {
+        return server.submit(new GetAllQuotes()).thenApply(new Function<ExchangeOperation, StockQuote[]>() {
+            @Override
+            public StockQuote[] apply(final ExchangeOperation operation) {
+                return ((GetAllQuotes) operation).getQuotes();
+            }
+        });
+    }
+
+
+    /**
+     * Gets the ticker ids the binary events are decoded with, the ids TickerIdListeners receive
+     * @return - the symbol table, built from the exchange's getTickers() order when the proxy connected
+     */
+    @Override
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+
     /**
      * The client registers the Broker as an ExchangeListener with the ExchangeNetworkProxy (the Exchange). The client
      * then receives the multicast messages, converts the message to the appropriate event and notifies the listeners.
@@ -189,8 +341,7 @@ public class ExchangeNetworkProxy implements StockExchange {
         //sends the EXECUTE_TRADE command
         int executionPrice = 0;
         try {
-            ExchangeOperation operation = call(new ExecuteTrade(order));
-            executionPrice = Integer.valueOf(operation.getResult());
+            executionPrice = await(executeTradeAsync(order));
         } catch (final Exception e) {
             LOGGER.log(Level.SEVERE, "Exception executing order id: " + order.getOrderId(), e);
         }
@@ -199,6 +350,32 @@ public class ExchangeNetworkProxy implements StockExchange {
     }
 
 
+    /**
+     * Sends a command to execute a trade without waiting for the response
+     * @param order - the order to execute
+     * @return - a future completed with the price at which the order was executed
+     */
+    @Override
+    public CompletableFuture<Integer> executeTradeAsync(final Order order) {
+        return server.submit(new ExecuteTrade(order)).thenApply(new Function<ExchangeOperation, Integer>() {
+            @Override
+            public Integer apply(final ExchangeOperation operation) {
+                return Integer.valueOf(operation.getResult());
+            }
+        });
+    }
+
+
+    /**
+     * Puts a text-based command on the wire to the exchange server without waiting for the response
+     * @param operation - the abstract representation of an exchange operation
+     * @return - a future completed with the operation once its result is set
+     */
+    public CompletableFuture<ExchangeOperation> submit(final ExchangeOperation operation) {
+        return server.submit(operation);
+    }
+
+
     /**
      * Called to put the text-based commands on the wire to the exchange server
      * @param operation - the abstract representation of an exchange operation
@@ -206,17 +383,43 @@ public class ExchangeNetworkProxy implements StockExchange {
      * @throws Exception
      */
     public ExchangeOperation call(ExchangeOperation operation) throws Exception {
-        final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(server.getOutputStream()));
-        writer.write(operation.getCommand() + "\n");
-        writer.flush();
+        return await(server.submit(operation));
+    }
 
-        final InputStreamReader isr = new InputStreamReader(server.getInputStream());
-        final BufferedReader reader = new BufferedReader(isr);
-        final String result = reader.readLine();
 
-        operation.setResult(result);
+    /**
+     * Fills the quote table with the current state and price of every ticker, entries already delivered by events
+     * are left alone
+     */
+    private void seedQuotes() {
+        try {
+            final GetAllQuotes snapshot = (GetAllQuotes) call(new GetAllQuotes());
+            quotes.seedOpen(snapshot.isOpen());
+            for (final StockQuote quote : snapshot.getQuotes()) {
+                final int tickerId = symbols.idOf(quote.getTicker());
+                if (tickerId >= 0 && quote.getPrice() != QuoteTable.UNKNOWN) {
+                    quotes.seedPrice(tickerId, quote.getPrice());
+                }
+            }
+        } catch (final Exception e) {
+            LOGGER.log(Level.WARNING, "Unable to seed the quote table, unseeded quotes are fetched on demand", e);
+        }
+    }
+
 
-        return operation;
+    /**
+     * Waits for the result of a request
+     * @param future - the request's future
+     * @param <T> - the result type
+     * @return - the result
+     * @throws Exception - the failure of the request, or a TimeoutException if there was no response in time
+     */
+    private static <T> T await(final CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get(CALL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (final ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
     }
 
 }
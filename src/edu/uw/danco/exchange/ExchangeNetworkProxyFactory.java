@@ -15,6 +15,13 @@ import edu.uw.ext.framework.exchange.StockExchange;
  */
 public class ExchangeNetworkProxyFactory implements NetworkExchangeProxyFactory {
 
+    /** The number of command connections each proxy opens to the exchange */
+    private int poolSize = 1;
+
+    /** The maximum age of the quotes each proxy serves locally, 0 for no limit, negative to always ask the exchange */
+    private long maxQuoteAgeMillis = 0;
+
+
     /**
      * Instantiates a network enabled ExchangeNetworkProxy
      * @param multicastIP - the multicast ip address used to distribute events
@@ -27,8 +34,30 @@ public class ExchangeNetworkProxyFactory implements NetworkExchangeProxyFactory
     public StockExchange newProxy(final String multicastIP, final int multicastPort,
                                   final String commandIP, final int commandPort) {
         ExchangeNetworkProxy networkProxy =
-                new ExchangeNetworkProxy(multicastIP, multicastPort, commandIP, commandPort);
+                new ExchangeNetworkProxy(multicastIP, multicastPort, commandIP, commandPort, poolSize,
+                                         maxQuoteAgeMillis);
 
         return networkProxy;
     }
+
+
+    /**
+     * Sets the number of command connections each proxy opens to the exchange
+     * @param poolSize - the pool size, at least 1
+     */
+    public void setPoolSize(final int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1: " + poolSize);
+        }
+        this.poolSize = poolSize;
+    }
+
+
+    /**
+     * Sets the maximum age of the quotes and exchange state each proxy serves from its event fed quote table
+     * @param maxQuoteAgeMillis - the maximum age, 0 for no limit, negative to always ask the exchange
+     */
+    public void setMaxQuoteAgeMillis(final long maxQuoteAgeMillis) {
+        this.maxQuoteAgeMillis = maxQuoteAgeMillis;
+    }
 }
@@ -13,6 +13,9 @@ public abstract class ExchangeOperation {
     protected String command;
     protected String result;
 
+    /** The id tagging the request on a pipelined command channel, 0 if untagged */
+    private volatile long requestId;
+
     protected ExchangeOperation(final String command) {
         this.command = command;
     }
@@ -28,4 +31,20 @@ public abstract class ExchangeOperation {
     public void setResult(final String result) {
         this.result = result;
     }
+
+    /**
+     * Gets the id tagging the request on a pipelined command channel
+     * @return - the request id, 0 if the operation has not been sent on a pipelined channel
+     */
+    public long getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * Sets the id tagging the request on a pipelined command channel
+     * @param requestId - the request id
+     */
+    public void setRequestId(final long requestId) {
+        this.requestId = requestId;
+    }
 }
@@ -1,8 +1,10 @@
 package edu.uw.danco.exchange;
 
+import edu.uw.danco.exchange.operations.GetAllQuotes;
 import edu.uw.ext.framework.exchange.ExchangeEvent;
 import edu.uw.ext.framework.exchange.ExchangeListener;
 import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
 
 import javax.swing.event.EventListenerList;
 import java.io.*;
@@ -10,6 +12,8 @@ import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.MulticastSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.EventListener;
 import java.util.Scanner;
 import java.util.concurrent.*;
@@ -21,20 +25,94 @@ import java.util.logging.Logger;
  * User: dcostinett
  * Date: 5/27/13
  * Time: 12:37 PM
+ *
+ * Receives the multicast exchange events and propagates them to the registered listeners. Both the text events and
+ * the binary events of BinaryEventCodec are accepted, they are told apart by the first byte of the datagram. The
+ * receive buffer and packet are allocated once and reused for every datagram.
+ *
+ * The binary records carry the adapter's sequence number. A record that skips ahead of the last one seen means
+ * datagrams were lost, the processor then takes a snapshot of the exchange state and price of every ticker with one
+ * GET_ALL_QUOTES_CMD over the command channel and fires events for whatever differs from what it last propagated.
+ * Records at or behind the last sequence number seen are duplicates or arrived out of order and are dropped. A failed
+ * snapshot is retried after the next datagram.
+ *
+ * Every event received, and every snapshot taken, is recorded in the QuoteTable so the proxy can answer quote and
+ * state requests without a round trip to the exchange.
+ *
+ * Price changes of listed tickers are delivered to TickerIdListeners by ticker id, the ExchangeEvent is only created
+ * if some other listener needs it.
  */
 public class NetEventProcessor implements Runnable {
     /** The logger */
     private static final Logger logger = Logger.getLogger(NetEventProcessor.class.getName());
 
+    /** How long a snapshot waits for the exchange's responses */
+    private static final long SNAPSHOT_TIMEOUT_MILLIS = 10000;
+
     /** The multicast socket for events */
     private MulticastSocket eventMultiSock;
 
     /** The event listeners to notify of multicast events */
     private final EventListenerList listeners;
 
+    /** Maps the ticker ids of the binary events to ticker symbols */
+    private final SymbolTable symbols;
+
+    /** The buffer datagrams are received into */
+    private final byte[] receiveBuffer = new byte[BinaryEventCodec.MAX_DATAGRAM_SIZE];
+
+    /** The packet datagrams are received into */
+    private final DatagramPacket receivePacket = new DatagramPacket(receiveBuffer, receiveBuffer.length);
+
+    /** View of the receive buffer used to decode binary datagrams */
+    private final ByteBuffer receiveView = ByteBuffer.wrap(receiveBuffer);
+
+    /** Used to take snapshots after a gap in the feed, null disables recovery */
+    private final ExchangeNetworkProxy snapshotSource;
+
+    /** The last known price of each ticker and state of the exchange */
+    private final QuoteTable quotes;
 
     /**
-     * Constructor
+     * The price of each ticker last propagated to the listeners, UNKNOWN if none yet. Kept apart from the quote table,
+     * which the proxy also refreshes from command responses, so a snapshot is compared against what the listeners saw
+     */
+    private final int[] propagatedPrices;
+
+    /** The state of the exchange last propagated to the listeners, null if none yet */
+    private Boolean propagatedOpen;
+
+    /** The sequence number of the last record propagated, 0 before the first record */
+    private long lastSequence;
+
+    /** Set when records were lost and the snapshot has not been taken yet */
+    private boolean recoveryPending;
+
+    /** Propagates the decoded binary records */
+    private final BinaryEventCodec.RecordHandler recordHandler = new BinaryEventCodec.RecordHandler() {
+        @Override
+        public void record(final byte type, final int tickerId, final int price, final long sequence) {
+            if (lastSequence != 0) {
+                if (sequence <= lastSequence) {
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.fine(String.format("Dropping stale record %d, already at %d", sequence, lastSequence));
+                    }
+                    return;
+                }
+                if (sequence > lastSequence + 1) {
+                    logger.warning(String.format("Lost %d event records after sequence %d",
+                                                 sequence - lastSequence - 1, lastSequence));
+                    recoveryPending = true;
+                }
+            }
+            lastSequence = sequence;
+            fireRecord(type, tickerId, price);
+        }
+    };
+
+
+    /**
+     * Constructor, binary events are dropped as their ticker ids cannot be resolved
      * @param eventPort - the multicast event port
      * @param eventGroup - the multicast group
      * @param cmdPort - the port for exchange commands
@@ -44,7 +122,70 @@ public class NetEventProcessor implements Runnable {
                              final String cmdIpAddress,
                              final int cmdPort,
                              final EventListenerList listeners) {
+        this(eventPort, eventGroup, cmdIpAddress, cmdPort, listeners, new SymbolTable(new String[0]));
+    }
+
+
+    /**
+     * Constructor
+     * @param eventPort - the multicast event port
+     * @param eventGroup - the multicast group
+     * @param cmdPort - the port for exchange commands
+     * @param symbols - the exchange's ticker ids, used to decode binary events
+     */
+    public NetEventProcessor(final int eventPort,
+                             final InetAddress eventGroup,
+                             final String cmdIpAddress,
+                             final int cmdPort,
+                             final EventListenerList listeners,
+                             final SymbolTable symbols) {
+        this(eventPort, eventGroup, cmdIpAddress, cmdPort, listeners, symbols, null);
+    }
+
+
+    /**
+     * Constructor
+     * @param eventPort - the multicast event port
+     * @param eventGroup - the multicast group
+     * @param cmdPort - the port for exchange commands
+     * @param symbols - the exchange's ticker ids, used to decode binary events
+     * @param snapshotSource - the proxy used to recover from lost events, null disables recovery
+     */
+    public NetEventProcessor(final int eventPort,
+                             final InetAddress eventGroup,
+                             final String cmdIpAddress,
+                             final int cmdPort,
+                             final EventListenerList listeners,
+                             final SymbolTable symbols,
+                             final ExchangeNetworkProxy snapshotSource) {
+        this(eventPort, eventGroup, cmdIpAddress, cmdPort, listeners, symbols, new QuoteTable(symbols.size()),
+             snapshotSource);
+    }
+
+
+    /**
+     * Constructor
+     * @param eventPort - the multicast event port
+     * @param eventGroup - the multicast group
+     * @param cmdPort - the port for exchange commands
+     * @param symbols - the exchange's ticker ids, used to decode binary events
+     * @param quotes - receives the prices and state carried by the events, indexed by the ids of symbols
+     * @param snapshotSource - the proxy used to recover from lost events, null disables recovery
+     */
+    public NetEventProcessor(final int eventPort,
+                             final InetAddress eventGroup,
+                             final String cmdIpAddress,
+                             final int cmdPort,
+                             final EventListenerList listeners,
+                             final SymbolTable symbols,
+                             final QuoteTable quotes,
+                             final ExchangeNetworkProxy snapshotSource) {
         this.listeners = listeners;
+        this.symbols = symbols;
+        this.quotes = quotes;
+        this.snapshotSource = snapshotSource;
+        propagatedPrices = new int[symbols.size()];
+        Arrays.fill(propagatedPrices, QuoteTable.UNKNOWN);
         try {
             this.eventMultiSock = new MulticastSocket(eventPort);
             eventMultiSock.joinGroup(eventGroup);
@@ -98,50 +239,199 @@ public class NetEventProcessor implements Runnable {
     public void run() {
         try {
             while (true) {
-                final byte[] receiveBuffer = new byte[128];
-                final DatagramPacket receivePacket = new DatagramPacket(receiveBuffer, receiveBuffer.length);
+                receivePacket.setLength(receiveBuffer.length);
                 eventMultiSock.receive(receivePacket);
+                final int length = receivePacket.getLength();
 
-                final String eventStr = new String(receivePacket.getData(), 0, receivePacket.getLength());
-
-                logger.info("Received event: " + eventStr);
-
-                final Scanner scanner =
-                        new Scanner(eventStr).useDelimiter(ProtocolConstants.ELEMENT_DELIMITER.toString());
-
-                final String eventTypeStr = scanner.next();
-                final ExchangeEvent.EventType eventType =
-                        eventTypeStr.equals(ProtocolConstants.PRICE_CHANGE_EVENT.toString()) ?
-                                ExchangeEvent.EventType.PRICE_CHANGED :
-                                eventTypeStr.equals(ProtocolConstants.CLOSED_EVENT.toString()) ?
-                                        ExchangeEvent.EventType.CLOSED :
-                                        ExchangeEvent.EventType.OPENED;
-
-                for (final ExchangeListener listener : listeners.getListeners(ExchangeListener.class)) {
-                    switch (eventType) {
-                        case PRICE_CHANGED:
-                            final ExchangeEvent priceChangedEvent =
-                                    ExchangeEvent.newPriceChangedEvent(this, scanner.next(), scanner.nextInt());
-                            listener.priceChanged(priceChangedEvent);
-                            break;
-
-                        case CLOSED:
-                            final ExchangeEvent closedEvent = ExchangeEvent.newClosedEvent(this);
-                            listener.exchangeClosed(closedEvent);
-                            break;
-
-                        case OPENED:
-                            final ExchangeEvent openedEvent = ExchangeEvent.newOpenedEvent(this);
-                            listener.exchangeOpened(openedEvent);
-                            break;
-
-                        default:
-                            logger.log(Level.WARNING, "Unable to determine event type from: " + eventTypeStr);
+                if (BinaryEventCodec.isBinary(receiveBuffer, length)) {
+                    receiveView.clear();
+                    receiveView.limit(length);
+                    try {
+                        BinaryEventCodec.decode(receiveView, recordHandler);
+                    } catch (final IllegalArgumentException e) {
+                        logger.log(Level.WARNING, "Dropping malformed event datagram", e);
+                    }
+                    if (recoveryPending) {
+                        recover();
                     }
+                } else {
+                    fireTextEvent(new String(receiveBuffer, 0, length));
                 }
             }
         } catch (final IOException e) {
             logger.log(Level.SEVERE, "Exception reading from multisock", e);
         }
     }
+
+
+    /**
+     * Parses a text event and propagates it to the listeners
+     * @param eventStr - the event
+     */
+    private void fireTextEvent(final String eventStr) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Received event: " + eventStr);
+        }
+
+        final Scanner scanner =
+                new Scanner(eventStr).useDelimiter(ProtocolConstants.ELEMENT_DELIMITER.toString());
+
+        final String eventTypeStr = scanner.next();
+        if (eventTypeStr.equals(ProtocolConstants.PRICE_CHANGE_EVENT.toString())) {
+            final String ticker = scanner.next();
+            final int price = scanner.nextInt();
+            final int tickerId = symbols.idOf(ticker);
+            if (tickerId >= 0) {
+                quotes.setPrice(tickerId, price);
+                propagatedPrices[tickerId] = price;
+                // hand on the table's instance so listeners comparing tickers hit the identity check
+                firePriceChange(tickerId, symbols.tickerOf(tickerId), price);
+            } else {
+                firePriceChange(tickerId, ticker, price);
+            }
+        } else if (eventTypeStr.equals(ProtocolConstants.CLOSED_EVENT.toString())) {
+            quotes.setOpen(false);
+            propagatedOpen = Boolean.FALSE;
+            fireEvent(ExchangeEvent.newClosedEvent(this));
+        } else {
+            quotes.setOpen(true);
+            propagatedOpen = Boolean.TRUE;
+            fireEvent(ExchangeEvent.newOpenedEvent(this));
+        }
+    }
+
+
+    /**
+     * Takes a snapshot of the exchange after records were lost and fires events for the state and prices that differ
+     * from the ones last propagated. Leaves the recovery pending if the snapshot cannot be taken.
+     */
+    private void recover() {
+        if (snapshotSource == null) {
+            recoveryPending = false;
+            return;
+        }
+
+        final int[] snapshot = new int[symbols.size()];
+        Arrays.fill(snapshot, QuoteTable.UNKNOWN);
+        final boolean snapshotOpen;
+        try {
+            final GetAllQuotes allQuotes = new GetAllQuotes();
+            snapshotSource.submit(allQuotes).get(SNAPSHOT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+            snapshotOpen = allQuotes.isOpen();
+            for (final StockQuote quote : allQuotes.getQuotes()) {
+                final int tickerId = symbols.idOf(quote.getTicker());
+                if (tickerId >= 0) {
+                    snapshot[tickerId] = quote.getPrice();
+                }
+            }
+        } catch (final Exception e) {
+            logger.log(Level.WARNING, "Unable to take a snapshot of the exchange, retrying after the next event", e);
+            return;
+        }
+        recoveryPending = false;
+
+        int changed = 0;
+        if (propagatedOpen == null || propagatedOpen != snapshotOpen) {
+            fireRecord(snapshotOpen ? BinaryEventCodec.OPEN_RECORD : BinaryEventCodec.CLOSED_RECORD,
+                       BinaryEventCodec.NO_TICKER, 0);
+            changed++;
+        }
+        for (int i = 0; i < snapshot.length; i++) {
+            if (snapshot[i] != QuoteTable.UNKNOWN && snapshot[i] != propagatedPrices[i]) {
+                fireRecord(BinaryEventCodec.PRICE_CHANGE_RECORD, i, snapshot[i]);
+                changed++;
+            }
+        }
+        logger.info(String.format("Recovered from lost events, %d changes applied from snapshot", changed));
+    }
+
+
+    /**
+     * Propagates a decoded binary record to the listeners
+     * @param type - the record type
+     * @param tickerId - the ticker id
+     * @param price - the price
+     */
+    private void fireRecord(final byte type, final int tickerId, final int price) {
+        switch (type) {
+            case BinaryEventCodec.PRICE_CHANGE_RECORD:
+                final String ticker = symbols.tickerOf(tickerId);
+                if (ticker == null) {
+                    logger.log(Level.WARNING, "Dropping price change for unknown ticker id " + tickerId);
+                } else {
+                    quotes.setPrice(tickerId, price);
+                    propagatedPrices[tickerId] = price;
+                    firePriceChange(tickerId, ticker, price);
+                }
+                break;
+
+            case BinaryEventCodec.CLOSED_RECORD:
+                quotes.setOpen(false);
+                propagatedOpen = Boolean.FALSE;
+                fireEvent(ExchangeEvent.newClosedEvent(this));
+                break;
+
+            case BinaryEventCodec.OPEN_RECORD:
+                quotes.setOpen(true);
+                propagatedOpen = Boolean.TRUE;
+                fireEvent(ExchangeEvent.newOpenedEvent(this));
+                break;
+
+            default:
+                logger.log(Level.WARNING, "Unable to determine event type from record type " + type);
+        }
+    }
+
+
+    /**
+     * Notifies the listeners of a price change, by ticker id where the listener takes it
+     * @param tickerId - the ticker id, -1 if the ticker is not listed
+     * @param ticker - the ticker symbol
+     * @param price - the new price
+     */
+    private void firePriceChange(final int tickerId, final String ticker, final int price) {
+        ExchangeEvent event = null;
+        final Object[] list = listeners.getListenerList();
+        for (int i = 0; i < list.length; i += 2) {
+            if (list[i] == ExchangeListener.class) {
+                if (tickerId >= 0 && list[i + 1] instanceof TickerIdListener) {
+                    ((TickerIdListener) list[i + 1]).priceChanged(tickerId, price);
+                } else {
+                    if (event == null) {
+                        event = ExchangeEvent.newPriceChangedEvent(this, ticker, price);
+                    }
+                    ((ExchangeListener) list[i + 1]).priceChanged(event);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Notifies the listeners of an event
+     * @param event - the event
+     */
+    private void fireEvent(final ExchangeEvent event) {
+        // walk the listener list directly rather than have getListeners copy it for every event
+        final Object[] list = listeners.getListenerList();
+        for (int i = 0; i < list.length; i += 2) {
+            if (list[i] == ExchangeListener.class) {
+                final ExchangeListener listener = (ExchangeListener) list[i + 1];
+                switch (event.getEventType()) {
+                    case PRICE_CHANGED:
+                        listener.priceChanged(event);
+                        break;
+
+                    case CLOSED:
+                        listener.exchangeClosed(event);
+                        break;
+
+                    default:
+                        listener.exchangeOpened(event);
+                        break;
+                }
+            }
+        }
+    }
 }
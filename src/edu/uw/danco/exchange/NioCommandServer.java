@@ -0,0 +1,850 @@
+package edu.uw.danco.exchange;
+
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 4:50 PM
+ *
+ * A non-blocking command server. A fixed set of I/O threads each run a selector, the first one also accepts the
+ * connections and hands them out round robin. Every connection has its own direct input and output buffers, requests
+ * are decoded straight from the input buffer and the responses encoded straight into the output buffer, see
+ * ProtocolConstants for the protocol.
+ *
+ * The I/O threads never call the exchange. A decoded request is carried out on a worker executor and handed back to
+ * the I/O thread of its connection, which encodes the response, so a slow trade holds up no other connection.
+ * Responses to tagged requests are written as they complete, not necessarily in request order. An untagged request is
+ * answered before the next request of its connection is read.
+ */
+final class NioCommandServer implements CommandServer {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(NioCommandServer.class.getName());
+
+    /** Size of the per connection input buffer, also the longest request accepted */
+    private static final int INPUT_BUFFER_SIZE = 1024;
+
+    /** Initial size of the per connection output buffer, grown as needed */
+    private static final int OUTPUT_BUFFER_SIZE = 1024;
+
+    /** The request delimiter */
+    private static final byte NEWLINE = '\n';
+
+    /** The element delimiter */
+    private static final byte DELIMITER = (byte) ProtocolConstants.ELEMENT_DELIMITER.toString().charAt(0);
+
+    /** Marks a tagged request */
+    private static final byte TAG = (byte) ProtocolConstants.REQUEST_TAG.toString().charAt(0);
+
+    /** Request name of the get quote command */
+    private static final byte[] GET_QUOTE = ascii(ProtocolConstants.GET_QUOTE_CMD);
+
+    /** Request name of the get tickers command */
+    private static final byte[] GET_TICKERS = ascii(ProtocolConstants.GET_TICKERS_CMD);
+
+    /** Request name of the get all quotes command */
+    private static final byte[] GET_ALL_QUOTES = ascii(ProtocolConstants.GET_ALL_QUOTES_CMD);
+
+    /** Request name of the get state command */
+    private static final byte[] GET_STATE = ascii(ProtocolConstants.GET_STATE_CMD);
+
+    /** Request name of the execute trade command */
+    private static final byte[] EXECUTE_TRADE = ascii(ProtocolConstants.EXECUTE_TRADE_CMD);
+
+    /** Order type of a buy order */
+    private static final byte[] BUY_ORDER = ascii(ProtocolConstants.BUY_ORDER);
+
+    /** Response to the get state command when the exchange is open */
+    private static final byte[] OPEN_STATE = ascii(ProtocolConstants.OPEN_STATE);
+
+    /** Response to the get state command when the exchange is closed */
+    private static final byte[] CLOSED_STATE = ascii(ProtocolConstants.CLOSED_STATE);
+
+    /** Response to a request that is not recognised */
+    private static final byte[] ERROR_RESPONSE = ascii(ProtocolConstants.ERROR_RESPONSE);
+
+    /** The exchange the requests are serviced by */
+    private final StockExchange exchange;
+
+    /** Resolves the ticker symbols of the requests to the exchange's own String instances */
+    private final SymbolTable symbols;
+
+    /** The port to listen to commands on */
+    private final int commandPort;
+
+    /** Carries out the requests against the exchange */
+    private final ExecutorService workers;
+
+    /** The channel accepting the connections */
+    private final ServerSocketChannel serverChannel;
+
+    /** The I/O threads */
+    private final IoLoop[] loops;
+
+    /** The loop the next accepted connection is handed to, only used by the first loop */
+    private int nextLoop;
+
+    /** Flag to determine listening state */
+    private volatile boolean listening;
+
+
+    /**
+     * Constructor
+     * @param exchange - the exchange the requests are serviced by
+     * @param symbols - the exchange's ticker symbols
+     * @param commandPort - the port to listen to commands on
+     * @param ioThreads - the number of I/O threads
+     * @param workers - carries out the requests against the exchange, shut down when the server is closed
+     * @throws IOException - if the port cannot be bound
+     */
+    NioCommandServer(final StockExchange exchange, final SymbolTable symbols, final int commandPort,
+                     final int ioThreads, final ExecutorService workers) throws IOException {
+        this.exchange = exchange;
+        this.symbols = symbols;
+        this.commandPort = commandPort;
+        this.workers = workers;
+
+        serverChannel = ServerSocketChannel.open();
+        loops = new IoLoop[ioThreads];
+        try {
+            serverChannel.socket().bind(new InetSocketAddress(commandPort));
+            serverChannel.configureBlocking(false);
+            for (int i = 0; i < ioThreads; i++) {
+                loops[i] = new IoLoop(i);
+            }
+            serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        } catch (final IOException e) {
+            serverChannel.close();
+            for (final IoLoop loop : loops) {
+                if (loop != null) {
+                    loop.selector.close();
+                }
+            }
+            workers.shutdown();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Starts the I/O threads
+     */
+    @Override
+    public void start() {
+        listening = true;
+        LOGGER.info("Listening for commands on port " + commandPort);
+        for (final IoLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+
+    /**
+     * Stops the I/O threads and the workers, closing every connection
+     */
+    @Override
+    public void close() {
+        listening = false;
+        workers.shutdown();
+        try {
+            serverChannel.close();
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to close server channel", e);
+        }
+        for (final IoLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+    }
+
+
+    /**
+     * Gets the ASCII bytes of a protocol constant
+     * @param constant - the protocol constant
+     * @return - the bytes of the constant's wire value
+     */
+    private static byte[] ascii(final ProtocolConstants constant) {
+        final String value = constant.toString();
+        final byte[] bytes = new byte[value.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) value.charAt(i);
+        }
+        return bytes;
+    }
+
+
+    /**
+     * A selector and the thread running it
+     */
+    private final class IoLoop implements Runnable {
+
+        /** The selector */
+        private final Selector selector;
+
+        /** The thread running the selector */
+        private final Thread thread;
+
+        /** Connections accepted by the first loop and waiting to be registered with this one */
+        private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<SocketChannel>();
+
+        /** Requests carried out by the workers and waiting for their responses to be encoded */
+        private final Queue<Request> completed = new ConcurrentLinkedQueue<Request>();
+
+
+        /**
+         * Constructor
+         * @param index - the index of the loop
+         * @throws IOException - if the selector cannot be opened
+         */
+        private IoLoop(final int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "exchange-io-" + index);
+        }
+
+
+        /**
+         * Hands an accepted connection to this loop
+         * @param channel - the connection
+         */
+        private void register(final SocketChannel channel) {
+            accepted.offer(channel);
+            selector.wakeup();
+        }
+
+
+        /**
+         * Hands a request carried out by a worker back to this loop
+         * @param request - the request, its result set
+         */
+        private void complete(final Request request) {
+            completed.offer(request);
+            selector.wakeup();
+        }
+
+
+        @Override
+        public void run() {
+            try {
+                while (listening) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = accepted.poll()) != null) {
+                        final Connection connection = new Connection(this, channel);
+                        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    }
+                    Request request;
+                    while ((request = completed.poll()) != null) {
+                        respond(request);
+                    }
+
+                    final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        final SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            service(key);
+                        }
+                    }
+                }
+            } catch (final ClosedSelectorException e) {
+                LOGGER.log(Level.FINE, "Selector closed", e);
+            } catch (final IOException e) {
+                LOGGER.log(Level.SEVERE, "Exception on command server with port = " + commandPort, e);
+            } finally {
+                closeAll();
+            }
+        }
+
+
+        /**
+         * Accepts the pending connections and hands them out to the loops
+         */
+        private void accept() {
+            try {
+                SocketChannel channel;
+                while ((channel = serverChannel.accept()) != null) {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    loops[nextLoop].register(channel);
+                    nextLoop = (nextLoop + 1) % loops.length;
+                }
+            } catch (final IOException e) {
+                if (listening) {
+                    LOGGER.log(Level.WARNING, "Exception accepting connection on port = " + commandPort, e);
+                }
+            }
+        }
+
+
+        /**
+         * Reads and writes a ready connection, closing it on failure or end of stream
+         * @param key - the connection's key
+         */
+        private void service(final SelectionKey key) {
+            final Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isReadable() && !connection.read()) {
+                    connection.close();
+                    return;
+                }
+                connection.flushAndSelect();
+            } catch (final IOException e) {
+                LOGGER.log(Level.FINE, "Closing command connection", e);
+                connection.close();
+            } catch (final RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Exception servicing command, closing connection", e);
+                connection.close();
+            }
+        }
+
+
+        /**
+         * Encodes the response to a request carried out by a worker and writes it, unless its connection has closed
+         * @param request - the request
+         */
+        private void respond(final Request request) {
+            final Connection connection = request.connection;
+            if (!connection.channel.isOpen()) {
+                return;
+            }
+            try {
+                connection.respond(request);
+                connection.flushAndSelect();
+            } catch (final IOException e) {
+                LOGGER.log(Level.FINE, "Closing command connection", e);
+                connection.close();
+            } catch (final RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Exception servicing command, closing connection", e);
+                connection.close();
+            }
+        }
+
+
+        /**
+         * Closes every connection and the selector
+         */
+        private void closeAll() {
+            try {
+                for (final SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection) {
+                        ((Connection) key.attachment()).close();
+                    }
+                }
+                selector.close();
+            } catch (final ClosedSelectorException e) {
+                LOGGER.log(Level.FINE, "Selector already closed", e);
+            } catch (final IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to close selector", e);
+            }
+        }
+    }
+
+
+    /**
+     * A client connection and its buffers
+     */
+    private final class Connection {
+
+        /** The loop serving the connection */
+        private final IoLoop loop;
+
+        /** The channel */
+        private final SocketChannel channel;
+
+        /** The channel's key, set once it is registered */
+        private SelectionKey key;
+
+        /** Bytes read and not yet decoded, kept in fill mode between reads */
+        private final ByteBuffer in = ByteBuffer.allocateDirect(INPUT_BUFFER_SIZE);
+
+        /** Responses not yet written, kept in fill mode between writes */
+        private ByteBuffer out = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+
+        /** Scratch space used to turn request fields into strings */
+        private final char[] chars = new char[INPUT_BUFFER_SIZE];
+
+        /** Set while an untagged request is with the workers, no further request is read until it is answered */
+        private boolean awaitingUntagged;
+
+
+        /**
+         * Constructor
+         * @param loop - the loop serving the connection
+         * @param channel - the channel
+         */
+        private Connection(final IoLoop loop, final SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+        }
+
+
+        /**
+         * Reads what is available and services every complete request
+         * @return - false if the client closed the connection
+         * @throws IOException - if the read fails or a request is longer than the input buffer
+         */
+        private boolean read() throws IOException {
+            if (channel.read(in) < 0) {
+                return false;
+            }
+            decode();
+            return true;
+        }
+
+
+        /**
+         * Services the complete requests in the input buffer, stopping at an untagged request until it is answered
+         * @throws IOException - if a request is longer than the input buffer
+         */
+        private void decode() throws IOException {
+            in.flip();
+            int start = in.position();
+            for (int i = start; i < in.limit() && !awaitingUntagged; i++) {
+                if (in.get(i) == NEWLINE) {
+                    int end = i;
+                    if (end > start && in.get(end - 1) == '\r') {
+                        end--;
+                    }
+                    handle(start, end);
+                    start = i + 1;
+                }
+            }
+            in.position(start);
+            in.compact();
+
+            if (!in.hasRemaining() && !awaitingUntagged) {
+                throw new IOException("Request longer than " + INPUT_BUFFER_SIZE + " bytes");
+            }
+        }
+
+
+        /**
+         * Writes what it can of the pending responses and selects the operations the connection is waiting for,
+         * reads are suspended while an untagged request is with the workers
+         * @throws IOException - if the write fails
+         */
+        private void flushAndSelect() throws IOException {
+            int ops = awaitingUntagged ? 0 : SelectionKey.OP_READ;
+            if (!flush()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+
+        /**
+         * Writes as much of the pending responses as the channel accepts
+         * @return - true if everything was written
+         * @throws IOException - if the write fails
+         */
+        private boolean flush() throws IOException {
+            out.flip();
+            channel.write(out);
+            final boolean done = !out.hasRemaining();
+            out.compact();
+            return done;
+        }
+
+
+        /**
+         * Closes the channel
+         */
+        private void close() {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                LOGGER.log(Level.WARNING, "Exception closing command connection", e);
+            }
+        }
+
+
+        /**
+         * Decodes one request and hands it to the workers, a request that is not recognised is answered at once
+         * @param requestStart - index of the first byte of the request in the input buffer
+         * @param end - index past the last byte of the request
+         */
+        private void handle(final int requestStart, final int end) {
+            // the request tag, if any, is echoed ahead of the response
+            int start = requestStart;
+            if (start < end && in.get(start) == TAG) {
+                start = fieldEnd(start, end) + 1;
+            }
+            final byte[] tag = new byte[start - requestStart];
+            for (int i = 0; i < tag.length; i++) {
+                tag[i] = in.get(requestStart + i);
+            }
+
+            final Request request;
+            if (matches(GET_QUOTE, start, end)) {
+                request = new Request(this, tag, GET_QUOTE);
+                final int tickerStart = start + GET_QUOTE.length + 1;
+                request.symbol = ticker(tickerStart, fieldEnd(tickerStart, end));
+            } else if (matches(GET_TICKERS, start, end)) {
+                request = new Request(this, tag, GET_TICKERS);
+            } else if (matches(GET_ALL_QUOTES, start, end)) {
+                request = new Request(this, tag, GET_ALL_QUOTES);
+            } else if (matches(GET_STATE, start, end)) {
+                request = new Request(this, tag, GET_STATE);
+            } else if (matches(EXECUTE_TRADE, start, end)) {
+                /*
+                 * Request:
+                 * [EXECUTE_TRADE_CMD][ELEMENT_DELIMITER]
+                 * [BUY_ORDER]|[SELL_ORDER][ELEMENT_DELIMITER]
+                 * account_id[ELEMENT_DELIMITER]
+                 * symbol[ELEMENT_DELIMITER]
+                 * shares
+                 * Response: execution_price
+                 */
+                request = new Request(this, tag, EXECUTE_TRADE);
+                final int typeStart = start + EXECUTE_TRADE.length + 1;
+                final int typeEnd = fieldEnd(typeStart, end);
+                final int accountEnd = fieldEnd(typeEnd + 1, end);
+                final int symbolEnd = fieldEnd(accountEnd + 1, end);
+                request.buy = equals(BUY_ORDER, typeStart, typeEnd);
+                request.accountId = string(typeEnd + 1, accountEnd);
+                request.symbol = ticker(accountEnd + 1, symbolEnd);
+                request.shares = parseInt(symbolEnd + 1, end);
+            } else {
+                // answer anyway, a tagged client is waiting for a response to this request
+                LOGGER.log(Level.WARNING, "Unable to determine command for: " + string(requestStart, end));
+                putBytes(tag);
+                putBytes(ERROR_RESPONSE);
+                put(NEWLINE);
+                return;
+            }
+
+            try {
+                workers.execute(request);
+            } catch (final RejectedExecutionException e) {
+                // the server is closing
+                LOGGER.log(Level.FINE, "Dropping request, the command server is closed", e);
+                return;
+            }
+            awaitingUntagged = tag.length == 0;
+        }
+
+
+        /**
+         * Encodes the response to a request carried out by a worker, then services the requests held back by it
+         * @param request - the request
+         * @throws IOException - if a held back request is longer than the input buffer
+         */
+        private void respond(final Request request) throws IOException {
+            putBytes(request.tag);
+            if (request.failure != null) {
+                LOGGER.log(Level.WARNING, "Exception servicing command", request.failure);
+                putBytes(ERROR_RESPONSE);
+            } else if (request.command == GET_QUOTE) {
+                putInt(request.price);
+            } else if (request.command == GET_TICKERS) {
+                for (final String symbol : request.tickers) {
+                    putAscii(symbol);
+                    put(DELIMITER);
+                }
+            } else if (request.command == GET_ALL_QUOTES) {
+                putBytes(request.open ? OPEN_STATE : CLOSED_STATE);
+                for (int i = 0; i < request.tickers.length; i++) {
+                    put(DELIMITER);
+                    putAscii(request.tickers[i]);
+                    put(DELIMITER);
+                    putInt(request.prices[i]);
+                }
+            } else if (request.command == GET_STATE) {
+                putBytes(request.open ? OPEN_STATE : CLOSED_STATE);
+            } else {
+                putInt(request.price);
+            }
+            put(NEWLINE);
+
+            if (request.tag.length == 0) {
+                awaitingUntagged = false;
+                decode();
+            }
+        }
+
+
+        /**
+         * Tests whether a request is for a command
+         * @param name - the command name
+         * @param start - index of the first byte of the request
+         * @param end - index past the last byte of the request
+         * @return - true if the request is the command name followed by the end of the request or a delimiter
+         */
+        private boolean matches(final byte[] name, final int start, final int end) {
+            final int nameEnd = start + name.length;
+            return nameEnd <= end && equals(name, start, nameEnd) && (nameEnd == end || in.get(nameEnd) == DELIMITER);
+        }
+
+
+        /**
+         * Compares a field of the request with a value
+         * @param value - the value
+         * @param start - index of the first byte of the field
+         * @param end - index past the last byte of the field
+         * @return - true if the field holds exactly the value
+         */
+        private boolean equals(final byte[] value, final int start, final int end) {
+            if (end - start != value.length) {
+                return false;
+            }
+            for (int i = 0; i < value.length; i++) {
+                if (in.get(start + i) != value[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+
+        /**
+         * Finds the end of a request field
+         * @param start - index of the first byte of the field
+         * @param end - index past the last byte of the request
+         * @return - index of the delimiter ending the field, or the end of the request
+         */
+        private int fieldEnd(final int start, final int end) {
+            int i = start;
+            while (i < end && in.get(i) != DELIMITER) {
+                i++;
+            }
+            return i;
+        }
+
+
+        /**
+         * Decodes a request field as a string
+         * @param start - index of the first byte of the field
+         * @param end - index past the last byte of the field
+         * @return - the field
+         */
+        private String string(final int start, final int end) {
+            final int length = Math.max(0, end - start);
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (in.get(start + i) & 0xFF);
+            }
+            return new String(chars, 0, length);
+        }
+
+
+        /**
+         * Decodes a request field holding a ticker symbol, a listed symbol is resolved through the symbol table
+         * without allocating
+         * @param start - index of the first byte of the field
+         * @param end - index past the last byte of the field
+         * @return - the ticker symbol
+         */
+        private String ticker(final int start, final int end) {
+            final int tickerId = symbols.idOf(in, start, end);
+            return tickerId >= 0 ? symbols.tickerOf(tickerId) : string(start, end);
+        }
+
+
+        /**
+         * Decodes a request field as a decimal integer
+         * @param start - index of the first byte of the field
+         * @param end - index past the last byte of the field
+         * @return - the value
+         * @throws NumberFormatException - if the field is not a number
+         */
+        private int parseInt(final int start, final int end) {
+            if (start >= end) {
+                throw new NumberFormatException("Empty number field");
+            }
+            final boolean negative = in.get(start) == '-';
+            int value = 0;
+            for (int i = negative ? start + 1 : start; i < end; i++) {
+                final int digit = in.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new NumberFormatException("Not a number: " + string(start, end));
+                }
+                value = value * 10 + digit;
+            }
+            return negative ? -value : value;
+        }
+
+
+        /**
+         * Appends an integer in decimal to the responses
+         * @param value - the value
+         */
+        private void putInt(final int value) {
+            ensureCapacity(11);
+            long remaining = value;
+            if (remaining < 0) {
+                out.put((byte) '-');
+                remaining = -remaining;
+            }
+            long divisor = 1;
+            while (divisor * 10 <= remaining) {
+                divisor *= 10;
+            }
+            while (divisor > 0) {
+                out.put((byte) ('0' + remaining / divisor));
+                remaining %= divisor;
+                divisor /= 10;
+            }
+        }
+
+
+        /**
+         * Appends the characters of an ASCII string to the responses
+         * @param value - the string
+         */
+        private void putAscii(final String value) {
+            ensureCapacity(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                out.put((byte) value.charAt(i));
+            }
+        }
+
+
+        /**
+         * Appends bytes to the responses
+         * @param value - the bytes
+         */
+        private void putBytes(final byte[] value) {
+            ensureCapacity(value.length);
+            out.put(value);
+        }
+
+
+        /**
+         * Appends a byte to the responses
+         * @param value - the byte
+         */
+        private void put(final byte value) {
+            ensureCapacity(1);
+            out.put(value);
+        }
+
+
+        /**
+         * Grows the output buffer if it cannot take a number of bytes
+         * @param length - the number of bytes about to be appended
+         */
+        private void ensureCapacity(final int length) {
+            if (out.remaining() < length) {
+                int capacity = out.capacity() * 2;
+                while (capacity - out.position() < length) {
+                    capacity *= 2;
+                }
+                final ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+                out.flip();
+                grown.put(out);
+                out = grown;
+            }
+        }
+    }
+
+
+    /**
+     * A decoded request, carried out against the exchange by a worker and handed back to its connection's loop
+     */
+    private final class Request implements Runnable {
+
+        /** The connection the request was read from */
+        private final Connection connection;
+
+        /** The request tag echoed ahead of the response, empty for an untagged request */
+        private final byte[] tag;
+
+        /** The request name, one of the command name constants */
+        private final byte[] command;
+
+        /** The ticker symbol of a get quote or execute trade request */
+        private String symbol;
+
+        /** The account of an execute trade request */
+        private String accountId;
+
+        /** Whether an execute trade request is a buy */
+        private boolean buy;
+
+        /** The shares of an execute trade request */
+        private int shares;
+
+        /** Whether the exchange is open, the result of a get state or get all quotes request */
+        private boolean open;
+
+        /** The quote or execution price, the result of a get quote or execute trade request */
+        private int price;
+
+        /** The ticker symbols, the result of a get tickers or get all quotes request */
+        private String[] tickers;
+
+        /** The quote of each ticker symbol, -1 for none, the result of a get all quotes request */
+        private int[] prices;
+
+        /** The exception the request failed with, if any */
+        private RuntimeException failure;
+
+
+        /**
+         * Constructor
+         * @param connection - the connection the request was read from
+         * @param tag - the request tag, empty for an untagged request
+         * @param command - the request name
+         */
+        private Request(final Connection connection, final byte[] tag, final byte[] command) {
+            this.connection = connection;
+            this.tag = tag;
+            this.command = command;
+        }
+
+
+        @Override
+        public void run() {
+            try {
+                if (command == GET_QUOTE) {
+                    final StockQuote quote = exchange.getQuote(symbol);
+                    price = quote == null ? -1 : quote.getPrice();
+                } else if (command == GET_TICKERS) {
+                    tickers = exchange.getTickers();
+                } else if (command == GET_ALL_QUOTES) {
+                    open = exchange.isOpen();
+                    tickers = exchange.getTickers();
+                    prices = new int[tickers.length];
+                    for (int i = 0; i < tickers.length; i++) {
+                        final StockQuote quote = exchange.getQuote(tickers[i]);
+                        prices[i] = quote == null ? -1 : quote.getPrice();
+                    }
+                } else if (command == GET_STATE) {
+                    open = exchange.isOpen();
+                } else if (exchange.isOpen()) {
+                    final Order order = buy ? new MarketBuyOrder(accountId, shares, symbol)
+                                            : new MarketSellOrder(accountId, shares, symbol);
+                    price = exchange.executeTrade(order);
+                }
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+            connection.loop.complete(this);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package edu.uw.danco.exchange;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 5:30 PM
+ *
+ * A command connection to the exchange network adapter that keeps any number of requests in flight. Each request is
+ * tagged with a request id, see ProtocolConstants.REQUEST_TAG, and its response is matched back to it by a dedicated
+ * reader thread which completes the request's future. A request not answered within REQUEST_TIMEOUT_MILLIS fails with
+ * a TimeoutException and is forgotten, a late response to it is dropped.
+ */
+public final class PipelinedCommandChannel {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(PipelinedCommandChannel.class.getName());
+
+    /** The encoding of the command protocol */
+    private static final Charset ENCODING = Charset.forName("US-ASCII");
+
+    /** The request tag marker */
+    private static final String TAG = ProtocolConstants.REQUEST_TAG.toString();
+
+    /** The element delimiter */
+    private static final char DELIMITER = ProtocolConstants.ELEMENT_DELIMITER.toString().charAt(0);
+
+    /** The response to a request the exchange does not recognise */
+    private static final String ERROR_RESPONSE = ProtocolConstants.ERROR_RESPONSE.toString();
+
+    /** How long a request waits for its response */
+    public static final long REQUEST_TIMEOUT_MILLIS = 10000;
+
+    /** Fails the requests not answered in time, shared by every channel */
+    private static final ScheduledThreadPoolExecutor TIMEOUTS = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "exchange-command-timeout");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    static {
+        // answered requests cancel their timeout, drop those rather than keep them queued until they expire
+        TIMEOUTS.setRemoveOnCancelPolicy(true);
+    }
+
+    /** The connection */
+    private final Socket socket;
+
+    /** The request stream, guarded by itself */
+    private final OutputStream out;
+
+    /** The futures of the outstanding requests, keyed by request id */
+    private final ConcurrentMap<Long, CompletableFuture<String>> outstanding =
+            new ConcurrentHashMap<Long, CompletableFuture<String>>();
+
+    /** Source of request ids */
+    private final AtomicLong nextRequestId = new AtomicLong();
+
+    /** Set once the connection has failed or been closed */
+    private volatile IOException failure;
+
+    /** The time, in milliseconds, the last response line was read, or the connection made */
+    private volatile long lastResponseMillis = System.currentTimeMillis();
+
+
+    /**
+     * Constructor, connects and starts the reader thread
+     * @param host - the address the exchange accepts requests on
+     * @param port - the port the exchange accepts requests on
+     * @throws IOException - if the connection cannot be established
+     */
+    public PipelinedCommandChannel(final String host, final int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        out = new BufferedOutputStream(socket.getOutputStream());
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), ENCODING));
+        final Thread readerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readResponses(reader);
+            }
+        }, "exchange-command-reader-" + host + ":" + port);
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+
+    /**
+     * Sends an operation without waiting for its response
+     * @param operation - the operation, tagged with its request id by this call
+     * @return - a future completed with the operation once its result is set, or exceptionally if the connection
+     *           fails first
+     */
+    public CompletableFuture<ExchangeOperation> submit(final ExchangeOperation operation) {
+        final long requestId = nextRequestId.incrementAndGet();
+        operation.setRequestId(requestId);
+
+        final CompletableFuture<String> response = new CompletableFuture<String>();
+        outstanding.put(requestId, response);
+        final ScheduledFuture<?> timeout = TIMEOUTS.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (outstanding.remove(requestId, response)) {
+                    response.completeExceptionally(new TimeoutException(String.format(
+                            "No response to request %d within %d ms", requestId, REQUEST_TIMEOUT_MILLIS)));
+                }
+            }
+        }, REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        response.whenComplete(new BiConsumer<String, Throwable>() {
+            @Override
+            public void accept(final String result, final Throwable t) {
+                timeout.cancel(false);
+            }
+        });
+
+        final byte[] request = (TAG + requestId + DELIMITER + operation.getCommand() + "\n").getBytes(ENCODING);
+        try {
+            synchronized (out) {
+                if (failure != null) {
+                    throw failure;
+                }
+                out.write(request);
+                out.flush();
+            }
+        } catch (final IOException e) {
+            outstanding.remove(requestId);
+            response.completeExceptionally(e);
+        }
+
+        return response.thenApply(new Function<String, ExchangeOperation>() {
+            @Override
+            public ExchangeOperation apply(final String result) {
+                operation.setResult(result);
+                return operation;
+            }
+        });
+    }
+
+
+    /**
+     * Gets the number of requests waiting for their response
+     * @return - the number of outstanding requests
+     */
+    public int getOutstanding() {
+        return outstanding.size();
+    }
+
+
+    /**
+     * Gets the time the last response was read, a channel with requests outstanding that has read nothing for a
+     * while has stalled
+     * @return - the time, in milliseconds, the last response line was read, or the connection made
+     */
+    public long getLastResponseMillis() {
+        return lastResponseMillis;
+    }
+
+
+    /**
+     * Whether the connection can still be used
+     * @return - false once the connection has failed or been closed
+     */
+    public boolean isOpen() {
+        return failure == null;
+    }
+
+
+    /**
+     * Closes the connection, outstanding requests fail
+     */
+    public void close() {
+        fail(new IOException("Command channel closed"));
+    }
+
+
+    /**
+     * Reader thread body, completes the outstanding requests as their responses arrive
+     * @param reader - the response stream
+     */
+    private void readResponses(final BufferedReader reader) {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lastResponseMillis = System.currentTimeMillis();
+                final int end = line.indexOf(DELIMITER);
+                final CompletableFuture<String> response = line.startsWith(TAG) && end > 0
+                        ? outstanding.remove(Long.parseLong(line.substring(TAG.length(), end)))
+                        : null;
+                if (response == null) {
+                    LOGGER.warning("Dropping response to no outstanding request: " + line);
+                } else {
+                    final String result = line.substring(end + 1);
+                    if (result.equals(ERROR_RESPONSE)) {
+                        response.completeExceptionally(new IOException("Request rejected by the exchange: " + line));
+                    } else {
+                        response.complete(result);
+                    }
+                }
+            }
+            fail(new IOException("Command connection closed by the exchange"));
+        } catch (final IOException e) {
+            fail(e);
+        } catch (final RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Malformed response, closing command channel", e);
+            fail(new IOException("Malformed response", e));
+        }
+    }
+
+
+    /**
+     * Marks the connection failed, closes it and fails the outstanding requests
+     * @param cause - the reason
+     */
+    private void fail(final IOException cause) {
+        synchronized (out) {
+            if (failure == null) {
+                failure = cause;
+            }
+        }
+        try {
+            socket.close();
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Exception closing command socket", e);
+        }
+
+        for (final Long requestId : outstanding.keySet()) {
+            final CompletableFuture<String> response = outstanding.remove(requestId);
+            if (response != null) {
+                response.completeExceptionally(failure);
+            }
+        }
+    }
+}
@@ -19,6 +19,11 @@ import java.security.PrivateKey;
  * -
  * Event: [PRICE_CHANGE_EVENT][ELEMENT_DELIMITER]symbol[ELEMENT_DELIMITER]price
  *
+ * The events may instead be multicast in the fixed layout binary format of BinaryEventCodec (see EventFormat). A
+ * binary datagram starts with BinaryEventCodec.MAGIC followed by the layout version, BinaryEventCodec.VERSION, and
+ * carries OPEN, CLOSED and PRICE_CHANGE records identified by type byte. Symbols are sent as their index in the
+ * GET_TICKERS_CMD response. Receivers tell the formats apart by the first byte and drop unknown versions.
+ *
  *
  * Commands conform to a request/response model where requests are sent from a broker and the result is a response
  * sent to the requesting broker from the exchange.
@@ -31,11 +36,22 @@ import java.security.PrivateKey;
  * Response: symbol[ELEMENT_DELIMITER]symbol...
  * -
  * Request:  [GET_QUOTE_CMD][ELEMENT_DELIMITER]symbol
- * Response: price
+ * Response: price, -1 if the exchange has no quote for the symbol
+ * -
+ * Request:  [GET_ALL_QUOTES_CMD]
+ * Response: [OPEN_STATE]|[CLOSED_STATE][ELEMENT_DELIMITER]symbol[ELEMENT_DELIMITER]price[ELEMENT_DELIMITER]symbol...
+ *           every symbol in [GET_TICKERS_CMD] order, price is -1 if the exchange has no quote for the symbol
  * -
  * Request:  [EXECUTE_TRADE_CMD][ELEMENT_DELIMITER][BUY_ORDER]|[SELL_ORDER]
  *           [ELEMENT_DELIMITER]account_id[ELEMENT_DELIMITER] symbol[ELEMENT_DELIMITER]shares
  * Response: execution_price
+ *
+ * Any request may be prefixed with a request tag, the response is then prefixed with the same tag so a client can keep
+ * several requests in flight on one connection:
+ * Request:  [REQUEST_TAG]request_id[ELEMENT_DELIMITER]request
+ * Response: [REQUEST_TAG]request_id[ELEMENT_DELIMITER]response
+ *
+ * A request the exchange does not recognise is answered with [ERROR_RESPONSE], tagged like any other response.
 
  */
 public enum ProtocolConstants {
@@ -47,6 +63,7 @@ public enum ProtocolConstants {
     GET_QUOTE_CMD("GET_QUOTE_CMD"),
     GET_STATE_CMD("GET_STATE_CMD"),
     GET_TICKERS_CMD("GET_TICKERS_CMD"),
+    GET_ALL_QUOTES_CMD("GET_ALL_QUOTES_CMD"),
 
     OPEN_STATE("OPEN_STATE"),
     CLOSED_STATE("CLOSED_EVENT"),
@@ -54,7 +71,11 @@ public enum ProtocolConstants {
     BUY_ORDER("BUY_ORDER"),
     SELL_ORDER("SELL_ORDER"),
 
-    ELEMENT_DELIMITER(":");
+    ELEMENT_DELIMITER(":"),
+
+    REQUEST_TAG("#"),
+
+    ERROR_RESPONSE("ERROR");
 
 
     private final String value;
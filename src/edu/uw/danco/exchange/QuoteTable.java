@@ -0,0 +1,255 @@
+package edu.uw.danco.exchange;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 6:50 PM
+ *
+ * The last known price of every ticker and the last known state of the exchange, indexed by SymbolTable id. Written
+ * by the NetEventProcessor as events arrive and read by any number of threads without locking. Each entry records
+ * when it was last written so readers can refuse entries older than they are willing to accept.
+ *
+ * Each entry also counts the events written to it. A command response is only written if no event has been written
+ * since the request was sent, so a slow response cannot overwrite a newer price or state delivered by the events.
+ */
+public final class QuoteTable {
+
+    /** The price of an entry that has not been written yet */
+    public static final int UNKNOWN = -1;
+
+    /** The last known price of each ticker, UNKNOWN if none yet, packed with the number of events written to it */
+    private final AtomicLongArray prices;
+
+    /** The time, in milliseconds, each price was last written */
+    private final AtomicLongArray updated;
+
+    /** The last known state of the exchange, null if none yet */
+    private volatile Boolean open;
+
+    /** The time, in milliseconds, the state was last written */
+    private volatile long openUpdated;
+
+    /** The number of events written to the state, guarded by this table */
+    private int openVersion;
+
+
+    /**
+     * Constructor
+     * @param size - the number of tickers
+     */
+    public QuoteTable(final int size) {
+        prices = new AtomicLongArray(size);
+        updated = new AtomicLongArray(size);
+        for (int id = 0; id < size; id++) {
+            prices.set(id, entry(0, UNKNOWN));
+        }
+    }
+
+
+    /**
+     * Gets the number of tickers
+     * @return - the number of tickers
+     */
+    public int size() {
+        return prices.length();
+    }
+
+
+    /**
+     * Records the price of a ticker delivered by an event
+     * @param id - the ticker id
+     * @param price - the price
+     */
+    public void setPrice(final int id, final int price) {
+        long entry;
+        do {
+            entry = prices.get(id);
+        } while (!prices.compareAndSet(id, entry, entry(versionOf(entry) + 1, price)));
+        updated.set(id, System.currentTimeMillis());
+    }
+
+
+    /**
+     * Gets the version of a ticker's price, to be passed to setPriceIfCurrent with the response of a request sent
+     * after reading it
+     * @param id - the ticker id
+     * @return - the number of events written to the price
+     */
+    public int getPriceVersion(final int id) {
+        return versionOf(prices.get(id));
+    }
+
+
+    /**
+     * Records the price of a ticker from a command response, unless an event has written the price since the version
+     * was read
+     * @param id - the ticker id
+     * @param price - the price
+     * @param version - the version of the price read before the request was sent
+     * @return - true if the price was recorded
+     */
+    public boolean setPriceIfCurrent(final int id, final int price, final int version) {
+        long entry;
+        do {
+            entry = prices.get(id);
+            if (versionOf(entry) != version) {
+                return false;
+            }
+        } while (!prices.compareAndSet(id, entry, entry(version, price)));
+        updated.set(id, System.currentTimeMillis());
+        return true;
+    }
+
+
+    /**
+     * Records the price of a ticker unless a price has already been recorded, used to seed the table without
+     * overwriting prices delivered by events in the meantime
+     * @param id - the ticker id
+     * @param price - the price
+     * @return - true if the price was recorded
+     */
+    public boolean seedPrice(final int id, final int price) {
+        final long entry = prices.get(id);
+        if (priceOf(entry) == UNKNOWN && prices.compareAndSet(id, entry, entry(versionOf(entry), price))) {
+            updated.set(id, System.currentTimeMillis());
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Gets the last known price of a ticker
+     * @param id - the ticker id
+     * @return - the price, or UNKNOWN
+     */
+    public int getPrice(final int id) {
+        return priceOf(prices.get(id));
+    }
+
+
+    /**
+     * Gets the last known price of a ticker if it is recent enough
+     * @param id - the ticker id
+     * @param maxAgeMillis - the maximum age of the price, 0 for no limit
+     * @return - the price, or UNKNOWN if there is none or it is too old
+     */
+    public int getPrice(final int id, final long maxAgeMillis) {
+        final int price = priceOf(prices.get(id));
+        if (maxAgeMillis > 0 && System.currentTimeMillis() - updated.get(id) > maxAgeMillis) {
+            return UNKNOWN;
+        }
+        return price;
+    }
+
+
+    /**
+     * Records the state of the exchange delivered by an event
+     * @param isOpen - true if the exchange is open
+     */
+    public synchronized void setOpen(final boolean isOpen) {
+        openVersion++;
+        openUpdated = System.currentTimeMillis();
+        open = isOpen;
+    }
+
+
+    /**
+     * Gets the version of the state, to be passed to setOpenIfCurrent with the response of a request sent after
+     * reading it
+     * @return - the number of events written to the state
+     */
+    public synchronized int getOpenVersion() {
+        return openVersion;
+    }
+
+
+    /**
+     * Records the state of the exchange from a command response, unless an event has written the state since the
+     * version was read
+     * @param isOpen - true if the exchange is open
+     * @param version - the version of the state read before the request was sent
+     * @return - true if the state was recorded
+     */
+    public synchronized boolean setOpenIfCurrent(final boolean isOpen, final int version) {
+        if (openVersion != version) {
+            return false;
+        }
+        openUpdated = System.currentTimeMillis();
+        open = isOpen;
+        return true;
+    }
+
+
+    /**
+     * Records the state of the exchange unless a state has already been recorded, used to seed the table without
+     * overwriting a state delivered by an event in the meantime
+     * @param isOpen - true if the exchange is open
+     * @return - true if the state was recorded
+     */
+    public synchronized boolean seedOpen(final boolean isOpen) {
+        if (open != null) {
+            return false;
+        }
+        openUpdated = System.currentTimeMillis();
+        open = isOpen;
+        return true;
+    }
+
+
+    /**
+     * Gets the last known state of the exchange
+     * @return - true if open, false if closed, null if unknown
+     */
+    public Boolean getOpen() {
+        return open;
+    }
+
+
+    /**
+     * Gets the last known state of the exchange if it is recent enough
+     * @param maxAgeMillis - the maximum age of the state, 0 for no limit
+     * @return - true if open, false if closed, null if unknown or too old
+     */
+    public Boolean getOpen(final long maxAgeMillis) {
+        final Boolean isOpen = open;
+        if (maxAgeMillis > 0 && System.currentTimeMillis() - openUpdated > maxAgeMillis) {
+            return null;
+        }
+        return isOpen;
+    }
+
+
+    /**
+     * Packs a price entry
+     * @param version - the number of events written to the price
+     * @param price - the price
+     * @return - the entry
+     */
+    private static long entry(final int version, final int price) {
+        return ((long) version << 32) | (price & 0xFFFFFFFFL);
+    }
+
+
+    /**
+     * Gets the version of a price entry
+     * @param entry - the entry
+     * @return - the number of events written to the price
+     */
+    private static int versionOf(final long entry) {
+        return (int) (entry >>> 32);
+    }
+
+
+    /**
+     * Gets the price of a price entry
+     * @param entry - the entry
+     * @return - the price
+     */
+    private static int priceOf(final long entry) {
+        return (int) entry;
+    }
+}
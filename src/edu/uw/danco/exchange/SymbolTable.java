@@ -0,0 +1,130 @@
+package edu.uw.danco.exchange;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 3:10 PM
+ *
+ * Maps the ticker symbols traded on an exchange to small integer ids used on the wire. The id of a ticker is its
+ * index in the exchange's getTickers() result, so the adapter and every proxy that fetched the tickers with
+ * GET_TICKERS_CMD agree on the ids without any further negotiation.
+ *
+ * The ids are found through an open addressing table keyed by the ticker's String hash code, which lets a ticker be
+ * looked up straight from the ASCII bytes of a request without decoding it into a String first.
+ */
+public final class SymbolTable {
+
+    /** The ticker symbols, indexed by id */
+    private final String[] tickers;
+
+    /** Open addressing table of the ids, id + 1 in a used slot, 0 in an empty one */
+    private final int[] slots;
+
+    /** Mask reducing a hash to a slot index */
+    private final int mask;
+
+
+    /**
+     * Constructor
+     * @param tickers - the ticker symbols in the order returned by the exchange
+     */
+    public SymbolTable(final String[] tickers) {
+        this.tickers = tickers.clone();
+        int capacity = 2;
+        while (capacity < tickers.length * 2) {
+            capacity <<= 1;
+        }
+        slots = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < tickers.length; i++) {
+            if (idOf(tickers[i]) < 0) {
+                int slot = spread(tickers[i].hashCode()) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = i + 1;
+            }
+        }
+    }
+
+
+    /**
+     * Gets the id of a ticker symbol
+     * @param ticker - the ticker symbol
+     * @return - the id, or -1 if the ticker is not in the table
+     */
+    public int idOf(final String ticker) {
+        if (ticker != null) {
+            for (int slot = spread(ticker.hashCode()) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+                final int id = slots[slot] - 1;
+                if (tickers[id].equals(ticker)) {
+                    return id;
+                }
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Gets the id of a ticker symbol held as ASCII bytes in a buffer, without decoding it
+     * @param buffer - the buffer
+     * @param start - index of the first byte of the ticker symbol
+     * @param end - index past the last byte of the ticker symbol
+     * @return - the id, or -1 if the ticker is not in the table
+     */
+    public int idOf(final ByteBuffer buffer, final int start, final int end) {
+        // the String hash code of the symbol, its characters are the bytes' values
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + (buffer.get(i) & 0xFF);
+        }
+
+        for (int slot = spread(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            final int id = slots[slot] - 1;
+            final String ticker = tickers[id];
+            if (ticker.length() == end - start) {
+                int i = 0;
+                while (i < ticker.length() && ticker.charAt(i) == (buffer.get(start + i) & 0xFF)) {
+                    i++;
+                }
+                if (i == ticker.length()) {
+                    return id;
+                }
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Gets the ticker symbol for an id
+     * @param id - the id
+     * @return - the ticker symbol, or null if the id is not in the table
+     */
+    public String tickerOf(final int id) {
+        return id >= 0 && id < tickers.length ? tickers[id] : null;
+    }
+
+
+    /**
+     * Gets the number of ticker symbols in the table
+     * @return - the size of the table
+     */
+    public int size() {
+        return tickers.length;
+    }
+
+
+    /**
+     * Mixes the high bits of a hash code into the low bits used to pick a slot
+     * @param hash - the hash code
+     * @return - the spread hash code
+     */
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
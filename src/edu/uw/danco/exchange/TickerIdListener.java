@@ -0,0 +1,23 @@
+package edu.uw.danco.exchange;
+
+import edu.uw.ext.framework.exchange.ExchangeListener;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 7:40 PM
+ *
+ * An ExchangeListener that can take price changes as a ticker id and a price. The id is the ticker's index in the
+ * exchange's getTickers() order, see SymbolTable. The NetEventProcessor delivers the price changes of listed tickers
+ * this way instead of allocating an ExchangeEvent, the other events still go to the ExchangeListener methods.
+ */
+public interface TickerIdListener extends ExchangeListener {
+
+    /**
+     * Invoked when the price of a stock changes
+     * @param tickerId - the ticker's index in the exchange's getTickers() order
+     * @param price - the new price
+     */
+    void priceChanged(int tickerId, int price);
+}
@@ -0,0 +1,50 @@
+package edu.uw.danco.exchange.operations;
+
+import edu.uw.danco.exchange.ExchangeOperation;
+import edu.uw.danco.exchange.ProtocolConstants;
+import edu.uw.ext.framework.exchange.StockQuote;
+
+import java.util.regex.Pattern;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 7:10 PM
+ *
+ * Request:  [GET_ALL_QUOTES_CMD]
+ * Response: [OPEN_STATE]|[CLOSED_STATE][ELEMENT_DELIMITER]symbol[ELEMENT_DELIMITER]price[ELEMENT_DELIMITER]symbol...
+ *
+ * The state of the exchange and the price of every ticker, in GET_TICKERS_CMD order, in one round trip.
+ */
+public class GetAllQuotes extends ExchangeOperation {
+
+    /** Splits the response into its elements */
+    private static final Pattern ELEMENTS =
+            Pattern.compile(Pattern.quote(ProtocolConstants.ELEMENT_DELIMITER.toString()));
+
+    public GetAllQuotes() {
+        super(ProtocolConstants.GET_ALL_QUOTES_CMD.toString());
+    }
+
+    /**
+     * Parses the exchange state from the result
+     * @return - true if the exchange was open
+     */
+    public boolean isOpen() {
+        return ELEMENTS.split(result, 2)[0].equals(ProtocolConstants.OPEN_STATE.toString());
+    }
+
+    /**
+     * Parses the quotes from the result
+     * @return - the quote of every ticker, in GET_TICKERS_CMD order, a price of -1 if the exchange had no quote
+     */
+    public StockQuote[] getQuotes() {
+        final String[] elements = ELEMENTS.split(result);
+        final StockQuote[] quotes = new StockQuote[(elements.length - 1) / 2];
+        for (int i = 0; i < quotes.length; i++) {
+            quotes[i] = new StockQuote(elements[2 * i + 1], Integer.parseInt(elements[2 * i + 2]));
+        }
+        return quotes;
+    }
+}
@@ -0,0 +1,396 @@
+package edu.uw.danco.logging;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 10/17/26
+ * Time: 8:00 PM
+ *
+ * Handler writing the log records to the same log table as DbHandler without making the logging thread wait for the
+ * database. publish() only puts the record in a bounded buffer, a background writer keeps one connection open and
+ * inserts the buffered records with JDBC batches, a batch is written once it is full or has waited for the flush
+ * interval. What happens to a record published while the buffer is full is set by the OverflowPolicy.
+ *
+ * Configured through the LogManager properties, prefixed with edu.uw.danco.logging.AsyncDbHandler:
+ * url, account, password - the database to write to
+ * level - the handler's level, ALL by default
+ * capacity - the number of records the buffer holds, 1024 by default
+ * batchSize - the maximum number of records inserted in one batch, 64 by default
+ * flushIntervalMillis - the longest a record waits for its batch to fill, 1000 by default
+ * overflow - DROP, BLOCK or CONSOLE, DROP by default
+ */
+public class AsyncDbHandler extends Handler {
+
+    /** What publish() does with a record when the buffer is full */
+    public enum OverflowPolicy {
+        /** The record is discarded and counted, the count is logged to the console */
+        DROP,
+        /** The publishing thread waits for room in the buffer */
+        BLOCK,
+        /** The record is written to the console instead */
+        CONSOLE
+    }
+
+    /** Prefix of the handler's LogManager properties */
+    private static final String PREFIX = AsyncDbHandler.class.getName() + ".";
+
+    /** SQL for inserting a log record. */
+    private static final String INSERT_LOG_RECORD_SQL =
+            "INSERT INTO log"
+                    + " (level, sequence, class, method, time, message)"
+                    + " VALUES (?, ?, ?, ?, ?, ?)";
+
+    /** How long flush() and close() wait for the writer to drain the buffer */
+    private static final long DRAIN_TIMEOUT_MILLIS = 10000;
+
+    /** Put in the buffer to make the writer write its batch without waiting for it to fill */
+    private static final LogRecord FLUSH_MARKER = new LogRecord(Level.OFF, "flush");
+
+    /** The database URL. */
+    private final String dbUrl = property("url", null);
+
+    /** Username for accessing the database. */
+    private final String username = property("account", null);
+
+    /** Password for the username. */
+    private final String password = property("password", null);
+
+    /** The maximum number of records inserted in one batch */
+    private final int batchSize = Integer.parseInt(property("batchSize", "64"));
+
+    /** The longest a record waits for its batch to fill */
+    private final long flushIntervalMillis = Long.parseLong(property("flushIntervalMillis", "1000"));
+
+    /** What publish() does when the buffer is full */
+    private final OverflowPolicy overflow = OverflowPolicy.valueOf(property("overflow", OverflowPolicy.DROP.name()));
+
+    /** The records waiting to be written */
+    private final BlockingQueue<LogRecord> buffer =
+            new ArrayBlockingQueue<LogRecord>(Integer.parseInt(property("capacity", "1024")));
+
+    /** Number of records accepted into the buffer */
+    private final AtomicLong published = new AtomicLong();
+
+    /** Number of accepted records the writer is done with, guarded by the drain lock */
+    private long written;
+
+    /** Signalled by the writer whenever it is done with a batch */
+    private final Object drainLock = new Object();
+
+    /** Number of records dropped since the last report */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** Takes the records when the buffer overflows with the CONSOLE policy */
+    private volatile ConsoleHandler console;
+
+    /** The writer thread */
+    private final Thread writer;
+
+    /** Set once close() has been called */
+    private volatile boolean closed;
+
+    /** The writer's connection, only used by the writer */
+    private Connection conn;
+
+    /** The writer's insert statement, only used by the writer */
+    private PreparedStatement ps;
+
+
+    /**
+     * Constructor, starts the writer
+     */
+    public AsyncDbHandler() {
+        setLevel(Level.parse(property("level", Level.ALL.getName())));
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeRecords();
+            }
+        }, "db-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+
+    /**
+     * Buffers the record for the writer
+     * @param record - the log record
+     */
+    @Override
+    public void publish(final LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+
+        if (buffer.offer(record)) {
+            published.incrementAndGet();
+            return;
+        }
+
+        // the writer must never wait for itself, records the JDBC driver logs while writing would deadlock it
+        switch (overflow == OverflowPolicy.BLOCK && Thread.currentThread() == writer ? OverflowPolicy.CONSOLE
+                                                                                       : overflow) {
+            case BLOCK:
+                try {
+                    buffer.put(record);
+                    published.incrementAndGet();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                }
+                break;
+
+            case CONSOLE:
+                consoleHandler().publish(record);
+                break;
+
+            default:
+                dropped.incrementAndGet();
+                break;
+        }
+    }
+
+
+    /**
+     * Waits for the writer to write every record published before the call
+     */
+    @Override
+    public void flush() {
+        if (Thread.currentThread() == writer) {
+            return;
+        }
+        final long target = published.get();
+        buffer.offer(FLUSH_MARKER);
+        awaitWritten(target);
+        final ConsoleHandler handler = console;
+        if (handler != null) {
+            handler.flush();
+        }
+    }
+
+
+    /**
+     * Writes the buffered records, stops the writer and closes the connection. Records published after the call are
+     * ignored.
+     */
+    @Override
+    public void close() throws SecurityException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flush();
+        writer.interrupt();
+        try {
+            writer.join(DRAIN_TIMEOUT_MILLIS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final ConsoleHandler handler = console;
+        if (handler != null) {
+            handler.close();
+        }
+    }
+
+
+    /**
+     * Waits until the writer is done with a number of records
+     * @param target - the number of accepted records
+     */
+    private void awaitWritten(final long target) {
+        final long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        synchronized (drainLock) {
+            long remaining = DRAIN_TIMEOUT_MILLIS;
+            while (written < target && remaining > 0) {
+                try {
+                    drainLock.wait(remaining);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+            if (written < target) {
+                reportError("Timed out waiting for " + (target - written) + " log records to be written",
+                            null, ErrorManager.FLUSH_FAILURE);
+            }
+        }
+    }
+
+
+    /**
+     * Writer thread body, gathers the records into batches and writes them until the handler is closed and the
+     * buffer is empty
+     */
+    private void writeRecords() {
+        final List<LogRecord> batch = new ArrayList<LogRecord>(batchSize);
+        try {
+            while (!closed || !buffer.isEmpty()) {
+                LogRecord record;
+                try {
+                    record = buffer.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                    final long deadline = System.currentTimeMillis() + flushIntervalMillis;
+                    while (record != null && record != FLUSH_MARKER) {
+                        batch.add(record);
+                        if (batch.size() >= batchSize) {
+                            break;
+                        }
+                        record = buffer.poll();
+                        if (record == null) {
+                            final long remaining = deadline - System.currentTimeMillis();
+                            record = remaining > 0 ? buffer.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                        }
+                    }
+                } catch (final InterruptedException e) {
+                    // close() interrupts a writer waiting on an empty buffer, drain what is left
+                    buffer.drainTo(batch);
+                    batch.removeAll(Collections.singleton(FLUSH_MARKER));
+                }
+
+                if (!batch.isEmpty()) {
+                    try {
+                        write(batch);
+                    } catch (final RuntimeException e) {
+                        closeConnection();
+                        reportError("Unable to write " + batch.size() + " log records", e, ErrorManager.WRITE_FAILURE);
+                    }
+                    done(batch.size());
+                    batch.clear();
+                }
+                reportDropped();
+            }
+        } finally {
+            closeConnection();
+        }
+    }
+
+
+    /**
+     * Inserts a batch of records, reconnecting once if the connection has failed
+     * @param batch - the records
+     */
+    private void write(final List<LogRecord> batch) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                if (ps == null) {
+                    conn = DriverManager.getConnection(dbUrl, username, password);
+                    ps = conn.prepareStatement(INSERT_LOG_RECORD_SQL);
+                }
+                for (final LogRecord record : batch) {
+                    ps.setString(1, record.getLevel().toString());
+                    ps.setString(2, Long.toString(record.getSequenceNumber()));
+                    ps.setString(3, record.getSourceClassName());
+                    ps.setString(4, record.getSourceMethodName());
+                    ps.setLong(5, record.getMillis());
+                    ps.setString(6, record.getMessage());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                return;
+            } catch (final SQLException e) {
+                closeConnection();
+                if (attempt > 0) {
+                    reportError("Unable to write " + batch.size() + " log records", e, ErrorManager.WRITE_FAILURE);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Records that the writer is done with a number of records and wakes the threads waiting in flush()
+     * @param count - the number of records
+     */
+    private void done(final int count) {
+        synchronized (drainLock) {
+            written += count;
+            drainLock.notifyAll();
+        }
+    }
+
+
+    /**
+     * Writes the number of records dropped since the last report to the console
+     */
+    private void reportDropped() {
+        final long count = dropped.getAndSet(0);
+        if (count > 0) {
+            final LogRecord record = new LogRecord(Level.WARNING,
+                    count + " log records dropped, the database log buffer was full");
+            record.setSourceClassName(AsyncDbHandler.class.getName());
+            consoleHandler().publish(record);
+        }
+    }
+
+
+    /**
+     * Closes the writer's statement and connection
+     */
+    private void closeConnection() {
+        if (ps != null) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                reportError("Unable to close the log statement", e, ErrorManager.CLOSE_FAILURE);
+            }
+            ps = null;
+        }
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                reportError("Unable to close the log connection", e, ErrorManager.CLOSE_FAILURE);
+            }
+            conn = null;
+        }
+    }
+
+
+    /**
+     * Gets the console handler overflowing records and reports go to, created on first use
+     * @return - the console handler
+     */
+    private ConsoleHandler consoleHandler() {
+        ConsoleHandler handler = console;
+        if (handler == null) {
+            synchronized (this) {
+                handler = console;
+                if (handler == null) {
+                    handler = new ConsoleHandler();
+                    console = handler;
+                }
+            }
+        }
+        return handler;
+    }
+
+
+    /**
+     * Reads one of the handler's LogManager properties
+     * @param name - the property name, without the class name prefix
+     * @param defaultValue - the value if the property is not set
+     * @return - the property value
+     */
+    private static String property(final String name, final String defaultValue) {
+        final String value = LogManager.getLogManager().getProperty(PREFIX + name);
+        return value == null ? defaultValue : value.trim();
+    }
+}
@@ -0,0 +1,115 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import edu.uw.danco.account.AccountCache;
+import edu.uw.danco.account.AccountFactoryImpl;
+import edu.uw.danco.account.AccountManagerImpl;
+import edu.uw.danco.account.Durability;
+import edu.uw.ext.framework.account.Account;
+
+
+/**
+ * Tests the single instance guarantee of the AccountCache, across eviction and deletion.
+ */
+public final class AccountCacheTest {
+    /** Fred's account name */
+    private static final String FRED = "fflintstone";
+
+    /** Barney's account name */
+    private static final String BARNEY = "brubble";
+
+    /** The password of the accounts */
+    private static final String PASSWORD = "password";
+
+    /** The initial balance of the accounts */
+    private static final int BALANCE = 100000;
+
+    /**
+     * An account evicted while it is still held is handed out again as the same instance, not read again.
+     */
+    @Test
+    public void testEvictedAccountStillHeld() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerImpl manager = new AccountManagerImpl(dao, Durability.SYNC, 1, 0, null, 1, 16);
+        manager.createAccount(FRED, PASSWORD, BALANCE);
+        manager.createAccount(BARNEY, PASSWORD, BALANCE);
+        manager.getAccountCache().clear();
+        final long evictions = manager.getAccountCache().getEvictions();
+
+        final Account fred = manager.getAccount(FRED);
+        final Account barney = manager.getAccount(BARNEY);
+        assertEquals(evictions + 1, manager.getAccountCache().getEvictions());
+        final int reads = dao.reads();
+
+        assertSame(fred, manager.getAccount(FRED));
+        assertSame(barney, manager.getAccount(BARNEY));
+        assertEquals(reads, dao.reads());
+        manager.close();
+    }
+
+    /**
+     * An evicted account still held is found again by the cache itself.
+     */
+    @Test
+    public void testEvictedAccountFound() {
+        final AccountCache cache = new AccountCache(1);
+        final Account fred = newAccount(FRED);
+        final Account barney = newAccount(BARNEY);
+        cache.put(FRED, fred);
+        cache.put(BARNEY, barney);
+
+        assertEquals(1, cache.getEvictions());
+        assertSame(fred, cache.get(FRED));
+        assertSame(fred, cache.putIfAbsent(FRED, newAccount(FRED), cache.stamp()));
+    }
+
+    /**
+     * An account read before it was deleted is not cached, the next lookup misses.
+     */
+    @Test
+    public void testReadBeforeDeleteNotCached() {
+        final AccountCache cache = new AccountCache(4);
+        final long stamp = cache.stamp();
+        final Account stale = newAccount(FRED);
+        cache.invalidate(FRED);
+
+        assertSame(stale, cache.putIfAbsent(FRED, stale, stamp));
+        assertNull(cache.get(FRED));
+
+        final Account fresh = newAccount(FRED);
+        assertSame(fresh, cache.putIfAbsent(FRED, fresh, cache.stamp()));
+        assertSame(fresh, cache.get(FRED));
+    }
+
+    /**
+     * A deleted account is not served from the cache, a persisted account replaces the cached instance.
+     */
+    @Test
+    public void testDeleteAndPersist() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerImpl manager = new AccountManagerImpl(dao, Durability.SYNC, 1, 0, null, 4, 16);
+        manager.createAccount(FRED, PASSWORD, BALANCE);
+        final Account replacement = newAccount(BARNEY);
+        manager.persist(replacement);
+        assertSame(replacement, manager.getAccount(BARNEY));
+
+        manager.getAccount(FRED);
+        manager.deleteAccount(FRED);
+        assertNull(manager.getAccount(FRED));
+        manager.close();
+    }
+
+    /**
+     * Creates an account
+     * @param accountName - the account name
+     * @return - the account
+     */
+    private static Account newAccount(final String accountName) {
+        return new AccountFactoryImpl().newAccount(accountName, PASSWORD.getBytes(), BALANCE);
+    }
+}
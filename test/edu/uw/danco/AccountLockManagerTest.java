@@ -0,0 +1,120 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.Test;
+
+import edu.uw.danco.account.AccountLockManager;
+import edu.uw.danco.account.AccountManagerImpl;
+import edu.uw.danco.account.Durability;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+
+
+/**
+ * Tests the striped balance locks of AccountLockManager.
+ */
+public final class AccountLockManagerTest {
+    /** Fred's account name */
+    private static final String FRED = "fflintstone";
+
+    /** The password of the account */
+    private static final String PASSWORD = "password";
+
+    /** The initial balance of the account */
+    private static final int BALANCE = 100000000;
+
+    /** The execution price of the fills */
+    private static final int PRICE = 3;
+
+    /** The number of threads filling orders */
+    private static final int THREADS = 8;
+
+    /** The number of fills per thread */
+    private static final int FILLS = 2000;
+
+    /**
+     * Fills reflected into one account from many threads at once all reach its balance.
+     */
+    @Test
+    public void testConcurrentFillsKeepEveryUpdate() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerImpl manager = new AccountManagerImpl(dao, Durability.ASYNC, 64, 10, null, 16, 4);
+        final Account fred = manager.createAccount(FRED, PASSWORD, BALANCE);
+        final Order buy = new MarketBuyOrder(FRED, 5, "BA");
+        final Order sell = new MarketSellOrder(FRED, 2, "BA");
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<AccountException> failure = new AtomicReference<AccountException>();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                final Order order = t % 2 == 0 ? buy : sell;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        try {
+                            for (int i = 0; i < FILLS; i++) {
+                                // every caller reflects into the one instance the account manager hands out
+                                manager.getAccount(FRED).reflectOrder(order, PRICE);
+                            }
+                        } catch (final AccountException e) {
+                            failure.set(e);
+                        }
+                    }
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertNull(failure.get());
+        final int expected = BALANCE
+                + THREADS / 2 * FILLS * (buy.valueOfOrder(PRICE) + sell.valueOfOrder(PRICE));
+        assertEquals(expected, fred.getBalance());
+        manager.close();
+        assertEquals(Integer.valueOf(expected), dao.balanceOf(FRED));
+
+        final AccountLockManager locks = manager.getLockManager();
+        assertEquals(THREADS * FILLS, locks.getAcquisitions(locks.stripeOf(FRED)));
+    }
+
+    /**
+     * The stripe count is rounded up to a power of two and an account always maps to the same stripe.
+     */
+    @Test
+    public void testStripes() {
+        final AccountLockManager locks = new AccountLockManager(5);
+        assertEquals(8, locks.getStripes());
+
+        final int stripe = locks.stripeOf(FRED);
+        assertTrue(stripe >= 0 && stripe < locks.getStripes());
+        assertEquals(stripe, locks.stripeOf(new String(FRED.toCharArray())));
+
+        final Lock lock = locks.lock(FRED);
+        lock.unlock();
+        assertEquals(1, locks.getAcquisitions(stripe));
+        assertEquals(0, locks.getContended(stripe));
+    }
+}
@@ -0,0 +1,203 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import edu.uw.danco.account.AccountManagerImpl;
+import edu.uw.danco.account.Durability;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+
+/**
+ * Tests the write-behind persistence of AccountManagerImpl.
+ */
+public final class AccountWriteBehindTest {
+    /** Fred's account name */
+    private static final String FRED = "fflintstone";
+
+    /** Barney's account name */
+    private static final String BARNEY = "brubble";
+
+    /** The password of the accounts */
+    private static final String PASSWORD = "password";
+
+    /** The initial balance of the accounts */
+    private static final int BALANCE = 100000;
+
+    /** How long a test waits for the account writer */
+    private static final long WAIT_MILLIS = 5000;
+
+    /** A flush interval longer than any test, the account writer only writes when woken */
+    private static final long NEVER_MILLIS = 60000;
+
+    /** A batch size no test reaches */
+    private static final int LARGE_BATCH = 1000;
+
+    /**
+     * Repeated ASYNC persists of an account coalesce into one write of its latest state.
+     */
+    @Test
+    public void testCoalescing() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerImpl manager =
+                new AccountManagerImpl(dao, Durability.ASYNC, LARGE_BATCH, NEVER_MILLIS, null, 0, 16);
+        final Account fred = manager.createAccount(FRED, PASSWORD, BALANCE);
+        final int created = dao.writesOf(FRED);
+
+        for (int i = 1; i <= 100; i++) {
+            fred.setBalance(BALANCE + i);
+            manager.persist(fred);
+        }
+        assertEquals(created, dao.writesOf(FRED));
+        assertEquals(BALANCE + 100, manager.getAccount(FRED).getBalance());
+
+        manager.close();
+        assertEquals(created + 1, dao.writesOf(FRED));
+        assertEquals(Integer.valueOf(BALANCE + 100), dao.balanceOf(FRED));
+    }
+
+    /**
+     * A GROUP_COMMIT persist wakes the account writer rather than waiting out the flush interval, and returns once
+     * its account has been written.
+     */
+    @Test
+    public void testGroupCommitWakesWriter() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerImpl manager =
+                new AccountManagerImpl(dao, Durability.GROUP_COMMIT, LARGE_BATCH, NEVER_MILLIS, null, 0, 16);
+        final Account fred = manager.createAccount(FRED, PASSWORD, BALANCE);
+        final Account barney = manager.createAccount(BARNEY, PASSWORD, BALANCE);
+
+        final long start = System.currentTimeMillis();
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        final Thread persistBarney = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    barney.setBalance(BALANCE + 2);
+                    manager.persist(barney);
+                } catch (final AccountException e) {
+                    failure.set(e);
+                }
+            }
+        });
+        persistBarney.start();
+        fred.setBalance(BALANCE + 1);
+        manager.persist(fred);
+        assertEquals(Integer.valueOf(BALANCE + 1), dao.balanceOf(FRED));
+        persistBarney.join(WAIT_MILLIS);
+
+        assertFalse(persistBarney.isAlive());
+        assertNull(failure.get());
+        assertEquals(Integer.valueOf(BALANCE + 2), dao.balanceOf(BARNEY));
+        assertTrue(System.currentTimeMillis() - start < WAIT_MILLIS);
+        manager.close();
+    }
+
+    /**
+     * An ASYNC persist journaled but not written before the account manager is lost is written by the next account
+     * manager using the journal.
+     */
+    @Test
+    public void testJournalReplay() throws Exception {
+        final File dir = Files.createTempDirectory("journal").toFile();
+        final File journal = new File(dir, "accounts.journal");
+        try {
+            final MemoryAccountDao dao = new MemoryAccountDao();
+            final AccountManagerImpl crashed =
+                    new AccountManagerImpl(dao, Durability.ASYNC, LARGE_BATCH, NEVER_MILLIS, journal, 0, 16);
+            final Account fred = crashed.createAccount(FRED, PASSWORD, BALANCE);
+            fred.setBalance(BALANCE + 1);
+            crashed.persist(fred);
+            // the account manager is abandoned without being closed
+            assertEquals(Integer.valueOf(BALANCE), dao.balanceOf(FRED));
+
+            final AccountManagerImpl recovered =
+                    new AccountManagerImpl(dao, Durability.ASYNC, LARGE_BATCH, NEVER_MILLIS, journal, 0, 16);
+            assertEquals(Integer.valueOf(BALANCE + 1), dao.balanceOf(FRED));
+            assertEquals(BALANCE + 1, recovered.getAccount(FRED).getBalance());
+            recovered.close();
+        } finally {
+            for (final File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * An account the DAO refuses fails its own GROUP_COMMIT persist at once, and does not keep an account written in
+     * the same batch from reaching the DAO.
+     */
+    @Test
+    public void testFailedWriteIsIsolated() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerImpl manager =
+                new AccountManagerImpl(dao, Durability.GROUP_COMMIT, 64, 100, null, 0, 16);
+        final Account fred = manager.createAccount(FRED, PASSWORD, BALANCE);
+        final Account barney = manager.createAccount(BARNEY, PASSWORD, BALANCE);
+        dao.refuse(BARNEY);
+
+        fred.setBalance(BALANCE + 1);
+        barney.setBalance(BALANCE + 2);
+        final AtomicReference<Exception> barneyFailure = new AtomicReference<Exception>();
+        final Thread persistBarney = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    manager.persist(barney);
+                } catch (final AccountException e) {
+                    barneyFailure.set(e);
+                }
+            }
+        });
+        persistBarney.start();
+        manager.persist(fred);
+        persistBarney.join(WAIT_MILLIS);
+
+        assertFalse(persistBarney.isAlive());
+        assertTrue(barneyFailure.get() instanceof AccountException);
+        assertEquals(Integer.valueOf(BALANCE + 1), dao.balanceOf(FRED));
+        assertEquals(Integer.valueOf(BALANCE), dao.balanceOf(BARNEY));
+
+        // barney is pending again and written once the DAO takes it
+        dao.refuse(null);
+        manager.close();
+        assertEquals(Integer.valueOf(BALANCE + 2), dao.balanceOf(BARNEY));
+    }
+
+    /**
+     * An account that can never be written is dropped after MAX_WRITE_ATTEMPTS failed writes.
+     */
+    @Test
+    public void testUnwritableAccountIsDropped() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerImpl manager = new AccountManagerImpl(dao, Durability.ASYNC, 1, 10, null, 0, 16);
+        final Account barney = manager.createAccount(BARNEY, PASSWORD, BALANCE);
+        final int attempts = dao.writesOf(BARNEY) + AccountManagerImpl.MAX_WRITE_ATTEMPTS;
+        dao.refuse(BARNEY);
+
+        barney.setBalance(BALANCE + 1);
+        manager.persist(barney);
+        final long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (dao.writesOf(BARNEY) < attempts && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        assertEquals(attempts, dao.writesOf(BARNEY));
+
+        // nothing is left pending
+        manager.close();
+        assertEquals(attempts, dao.writesOf(BARNEY));
+        assertEquals(Integer.valueOf(BALANCE), dao.balanceOf(BARNEY));
+    }
+}
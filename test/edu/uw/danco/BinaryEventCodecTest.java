@@ -0,0 +1,89 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.uw.danco.exchange.BinaryEventCodec;
+
+/**
+ * Tests for the binary exchange event encoding.
+ */
+public final class BinaryEventCodecTest {
+
+    /**
+     * Collects the decoded records as strings.
+     */
+    private static final class Recorder implements BinaryEventCodec.RecordHandler {
+        /** The decoded records */
+        private final List<String> records = new ArrayList<String>();
+
+        @Override
+        public void record(final byte type, final int tickerId, final int price, final long sequence) {
+            records.add(type + ":" + tickerId + ":" + price + ":" + sequence);
+        }
+    }
+
+    /**
+     * Records decode to the values they were encoded with, in order.
+     */
+    @Test
+    public void testRoundTrip() {
+        final ByteBuffer buffer = ByteBuffer.allocate(BinaryEventCodec.MAX_DATAGRAM_SIZE);
+        BinaryEventCodec.begin(buffer);
+        BinaryEventCodec.append(buffer, BinaryEventCodec.OPEN_RECORD, BinaryEventCodec.NO_TICKER, 0, 1L);
+        BinaryEventCodec.append(buffer, BinaryEventCodec.PRICE_CHANGE_RECORD, 7, 4321, 2L);
+        BinaryEventCodec.append(buffer, BinaryEventCodec.PRICE_CHANGE_RECORD, 300, Integer.MAX_VALUE,
+                                Long.MAX_VALUE);
+        assertEquals(3, BinaryEventCodec.recordCount(buffer));
+        assertTrue(BinaryEventCodec.isBinary(buffer.array(), buffer.position()));
+
+        buffer.flip();
+        final Recorder recorder = new Recorder();
+        assertEquals(3, BinaryEventCodec.decode(buffer, recorder));
+        assertEquals("1:65535:0:1", recorder.records.get(0));
+        assertEquals("3:7:4321:2", recorder.records.get(1));
+        assertEquals("3:300:" + Integer.MAX_VALUE + ":" + Long.MAX_VALUE, recorder.records.get(2));
+    }
+
+    /**
+     * Text events are not mistaken for binary datagrams.
+     */
+    @Test
+    public void testTextIsNotBinary() {
+        final byte[] text = "PRICE_CHANGE_EVENT:F:1000".getBytes();
+        assertFalse(BinaryEventCodec.isBinary(text, text.length));
+        assertFalse(BinaryEventCodec.isBinary(text, 0));
+    }
+
+    /**
+     * Datagrams of an unknown version are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownVersion() {
+        final ByteBuffer buffer = ByteBuffer.allocate(BinaryEventCodec.MAX_DATAGRAM_SIZE);
+        BinaryEventCodec.begin(buffer);
+        buffer.put(1, (byte) (BinaryEventCodec.VERSION + 1));
+        buffer.flip();
+        BinaryEventCodec.decode(buffer, new Recorder());
+    }
+
+    /**
+     * Datagrams shorter than their record count are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncated() {
+        final ByteBuffer buffer = ByteBuffer.allocate(BinaryEventCodec.MAX_DATAGRAM_SIZE);
+        BinaryEventCodec.begin(buffer);
+        BinaryEventCodec.append(buffer, BinaryEventCodec.PRICE_CHANGE_RECORD, 1, 1, 1L);
+        buffer.flip();
+        buffer.limit(buffer.limit() - 1);
+        BinaryEventCodec.decode(buffer, new Recorder());
+    }
+}
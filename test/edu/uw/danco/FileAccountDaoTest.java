@@ -0,0 +1,103 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.support.FileSystemXmlApplicationContext;
+
+import edu.uw.danco.dao.FileAccountDaoImpl;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountFactory;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+
+
+/**
+ * Tests the accounts read by FileAccountDaoImpl are built from prototype beans, each read its own instance.
+ */
+public final class FileAccountDaoTest {
+    /** Fred's account name */
+    private static final String FRED = "fflintstone";
+
+    /** Fred's balance */
+    private static final int FRED_BALANCE = 100000;
+
+    /** Wilma's account name */
+    private static final String WILMA = "wflintstone";
+
+    /** Wilma's balance */
+    private static final int WILMA_BALANCE = 500000;
+
+    /** The password of both accounts */
+    private static final byte[] PASSWORD = {'p', 'a', 's', 's', 'w', 'o', 'r', 'd'};
+
+    /**
+     * Two accounts read back are distinct objects, each with its own balance, address and credit card.
+     */
+    @Test
+    public void testAccountsAreDistinct() throws Exception {
+        final BeanFactory beanFactory = new FileSystemXmlApplicationContext("context.xml");
+        final FileAccountDaoImpl dao = new FileAccountDaoImpl(beanFactory);
+        final AccountFactory accountFactory = beanFactory.getBean("AccountFactory", AccountFactory.class);
+        try {
+            dao.setAccount(newAccount(beanFactory, accountFactory, FRED, FRED_BALANCE, "101 Stoney Lane"));
+            dao.setAccount(newAccount(beanFactory, accountFactory, WILMA, WILMA_BALANCE, "102 Stoney Lane"));
+
+            final Account fred = dao.getAccount(FRED);
+            final Account wilma = dao.getAccount(WILMA);
+            assertNotNull(fred);
+            assertNotNull(wilma);
+            assertTrue(fred != wilma);
+            assertTrue(fred.getAddress() != wilma.getAddress());
+            assertTrue(fred.getCreditCard() != wilma.getCreditCard());
+
+            assertEquals(FRED, fred.getName());
+            assertEquals(FRED_BALANCE, fred.getBalance());
+            assertEquals("101 Stoney Lane", fred.getAddress().getStreetAddress());
+            assertEquals(WILMA, wilma.getName());
+            assertEquals(WILMA_BALANCE, wilma.getBalance());
+            assertEquals("102 Stoney Lane", wilma.getAddress().getStreetAddress());
+
+            final Account again = dao.getAccount(FRED);
+            assertTrue(again != fred);
+            assertEquals(FRED_BALANCE, again.getBalance());
+        } finally {
+            dao.deleteAccount(FRED);
+            dao.deleteAccount(WILMA);
+        }
+    }
+
+    /**
+     * Creates an account with an address and credit card
+     * @param beanFactory - creates the address and credit card
+     * @param accountFactory - creates the account
+     * @param name - the account name
+     * @param balance - the balance
+     * @param street - the street address
+     * @return - the account
+     * @throws Exception - if the account cannot be created
+     */
+    private static Account newAccount(final BeanFactory beanFactory, final AccountFactory accountFactory,
+                                      final String name, final int balance, final String street) throws Exception {
+        final Account account = accountFactory.newAccount(name, PASSWORD, balance);
+
+        final Address address = beanFactory.getBean("Address", Address.class);
+        address.setStreetAddress(street);
+        address.setCity("Bedrock");
+        address.setState("AZ");
+        address.setZipCode("86046");
+        account.setAddress(address);
+
+        final CreditCard card = beanFactory.getBean("CreditCard", CreditCard.class);
+        card.setIssuer("Marble Stone Bank");
+        card.setType("MasterCard");
+        card.setHolder(name);
+        card.setAccountNumber("1234-5678-9012-3456");
+        card.setExpirationDate("03/05");
+        account.setCreditCard(card);
+        return account;
+    }
+}
@@ -0,0 +1,255 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import edu.uw.danco.account.AccountImpl;
+import edu.uw.danco.dao.LogAccountDaoImpl;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Tests for the recovery and compaction of the LogAccountDaoImpl account log.
+ */
+public final class LogAccountDaoTest {
+    /** Fred's account name */
+    private static final String FRED = "fflintstone";
+
+    /** Wilma's account name */
+    private static final String WILMA = "wflintstone";
+
+    /** Barney's account name */
+    private static final String BARNEY = "brubble";
+
+    /** An account password */
+    private static final byte[] PASSWD = {'p', 'a', 's', 's', 'w', 'o', 'r', 'd'};
+
+    /** Number of updates used to build up superseded records */
+    private static final int MANY_UPDATES = 100;
+
+    /**
+     * Reopening the log restores the latest record of each account and forgets the deleted ones.
+     */
+    @Test
+    public void testReopen() throws Exception {
+        final File log = newLog();
+        try {
+            LogAccountDaoImpl dao = new LogAccountDaoImpl(log, false, 0);
+            dao.setAccount(new AccountImpl(FRED, PASSWD, 100));
+            dao.setAccount(new AccountImpl(WILMA, PASSWD, 200));
+            dao.setAccount(new AccountImpl(BARNEY, PASSWD, 300));
+            dao.setAccount(new AccountImpl(FRED, PASSWD, 150));
+            dao.deleteAccount(BARNEY);
+            dao.close();
+
+            dao = new LogAccountDaoImpl(log, false, 0);
+            try {
+                assertEquals(150, dao.getAccount(FRED).getBalance());
+                assertEquals(200, dao.getAccount(WILMA).getBalance());
+                assertNull(dao.getAccount(BARNEY));
+            } finally {
+                dao.close();
+            }
+        } finally {
+            delete(log);
+        }
+    }
+
+    /**
+     * A partial record left at the end of the log is cut off.
+     */
+    @Test
+    public void testTornTail() throws Exception {
+        final File log = newLog();
+        try {
+            writeFredAndWilma(log);
+            append(log, new byte[LogAccountDaoImpl.RECORD_SIZE / 3]);
+
+            final LogAccountDaoImpl dao = new LogAccountDaoImpl(log, false, 0);
+            try {
+                assertEquals(2L * LogAccountDaoImpl.RECORD_SIZE, log.length());
+                assertEquals(100, dao.getAccount(FRED).getBalance());
+                assertEquals(200, dao.getAccount(WILMA).getBalance());
+            } finally {
+                dao.close();
+            }
+        } finally {
+            delete(log);
+        }
+    }
+
+    /**
+     * Whole records failing their checksum at the end of the log are cut off.
+     */
+    @Test
+    public void testCorruptTail() throws Exception {
+        final File log = newLog();
+        try {
+            writeFredAndWilma(log);
+            final byte[] garbage = new byte[2 * LogAccountDaoImpl.RECORD_SIZE];
+            garbage[0] = 1;
+            garbage[LogAccountDaoImpl.RECORD_SIZE] = 1;
+            append(log, garbage);
+
+            final LogAccountDaoImpl dao = new LogAccountDaoImpl(log, false, 0);
+            try {
+                assertEquals(2L * LogAccountDaoImpl.RECORD_SIZE, log.length());
+                assertEquals(100, dao.getAccount(FRED).getBalance());
+                dao.setAccount(new AccountImpl(BARNEY, PASSWD, 300));
+            } finally {
+                dao.close();
+            }
+            assertEquals(3L * LogAccountDaoImpl.RECORD_SIZE, log.length());
+        } finally {
+            delete(log);
+        }
+    }
+
+    /**
+     * A corrupt record followed by intact ones is skipped, the updates after it are kept.
+     */
+    @Test
+    public void testCorruptRecordInMiddle() throws Exception {
+        final File log = newLog();
+        try {
+            writeFredAndWilma(log);
+            LogAccountDaoImpl dao = new LogAccountDaoImpl(log, false, 0);
+            dao.setAccount(new AccountImpl(FRED, PASSWD, 150));
+            dao.setAccount(new AccountImpl(BARNEY, PASSWD, 300));
+            dao.close();
+
+            // flip a byte of wilma's record, the second of four
+            final RandomAccessFile raf = new RandomAccessFile(log, "rw");
+            try {
+                final long offset = LogAccountDaoImpl.RECORD_SIZE + 10;
+                raf.seek(offset);
+                final int b = raf.read();
+                raf.seek(offset);
+                raf.write(b ^ 0xFF);
+            } finally {
+                raf.close();
+            }
+
+            dao = new LogAccountDaoImpl(log, false, 0);
+            try {
+                assertEquals(4L * LogAccountDaoImpl.RECORD_SIZE, log.length());
+                assertEquals(150, dao.getAccount(FRED).getBalance());
+                assertEquals(300, dao.getAccount(BARNEY).getBalance());
+                assertNull(dao.getAccount(WILMA));
+            } finally {
+                dao.close();
+            }
+        } finally {
+            delete(log);
+        }
+    }
+
+    /**
+     * Compaction keeps only the latest record of each live account.
+     */
+    @Test
+    public void testCompact() throws Exception {
+        final File log = newLog();
+        try {
+            LogAccountDaoImpl dao = new LogAccountDaoImpl(log, false, 0);
+            final AccountImpl fred = new AccountImpl(FRED, PASSWD, 0);
+            for (int i = 1; i <= MANY_UPDATES; i++) {
+                fred.setBalance(i);
+                dao.setAccount(fred);
+            }
+            dao.setAccount(new AccountImpl(WILMA, PASSWD, 200));
+            dao.setAccount(new AccountImpl(BARNEY, PASSWD, 300));
+            dao.deleteAccount(BARNEY);
+
+            dao.compact();
+            assertEquals(2L * LogAccountDaoImpl.RECORD_SIZE, log.length());
+            assertEquals(MANY_UPDATES, dao.getAccount(FRED).getBalance());
+            assertEquals(200, dao.getAccount(WILMA).getBalance());
+            assertNull(dao.getAccount(BARNEY));
+            dao.close();
+
+            dao = new LogAccountDaoImpl(log, false, 0);
+            try {
+                assertEquals(MANY_UPDATES, dao.getAccount(FRED).getBalance());
+                assertNotNull(dao.getAccount(WILMA));
+                assertNull(dao.getAccount(BARNEY));
+            } finally {
+                dao.close();
+            }
+        } finally {
+            delete(log);
+        }
+    }
+
+    /**
+     * A log may only be open in one DAO at a time.
+     */
+    @Test(expected = IOException.class)
+    public void testSecondOpen() throws Exception {
+        final File log = newLog();
+        final LogAccountDaoImpl dao = new LogAccountDaoImpl(log, false, 0);
+        try {
+            new LogAccountDaoImpl(log, false, 0);
+        } finally {
+            dao.close();
+            delete(log);
+        }
+    }
+
+    /**
+     * Writes Fred's and Wilma's accounts to a log and closes it
+     * @param log - the log file
+     * @throws IOException - if the log cannot be opened
+     * @throws AccountException - if the accounts cannot be written
+     */
+    private static void writeFredAndWilma(final File log) throws IOException, AccountException {
+        final LogAccountDaoImpl dao = new LogAccountDaoImpl(log, false, 0);
+        try {
+            dao.setAccount(new AccountImpl(FRED, PASSWD, 100));
+            dao.setAccount(new AccountImpl(WILMA, PASSWD, 200));
+        } finally {
+            dao.close();
+        }
+    }
+
+    /**
+     * Appends bytes to the end of a file
+     * @param file - the file
+     * @param bytes - the bytes
+     * @throws IOException - if the file cannot be written
+     */
+    private static void append(final File file, final byte[] bytes) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(raf.length());
+            raf.write(bytes);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Gets a log file in a new temporary directory
+     * @return - the log file, not yet created
+     * @throws IOException - if the directory cannot be created
+     */
+    private static File newLog() throws IOException {
+        return new File(Files.createTempDirectory("account-log").toFile(), "accounts.log");
+    }
+
+    /**
+     * Deletes a log file and its directory
+     * @param log - the log file
+     */
+    private static void delete(final File log) {
+        log.delete();
+        log.getParentFile().delete();
+    }
+}
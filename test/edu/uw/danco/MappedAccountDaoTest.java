@@ -0,0 +1,240 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import edu.uw.danco.account.AccountImpl;
+import edu.uw.danco.dao.MappedAccountDaoImpl;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Tests for the balance slots of the MappedAccountDaoImpl.
+ */
+public final class MappedAccountDaoTest {
+    /** Fred's account name */
+    private static final String FRED = "fflintstone";
+
+    /** Wilma's account name */
+    private static final String WILMA = "wflintstone";
+
+    /** Barney's account name */
+    private static final String BARNEY = "brubble";
+
+    /** An account password */
+    private static final byte[] PASSWD = {'p', 'a', 's', 's', 'w', 'o', 'r', 'd'};
+
+    /**
+     * Reopening the store restores the balances from the slots, not from the older profile records.
+     */
+    @Test
+    public void testReopen() throws Exception {
+        final File dir = newStore();
+        try {
+            MappedAccountDaoImpl dao = new MappedAccountDaoImpl(dir, 4, false, 0);
+            final AccountImpl fred = new AccountImpl(FRED, PASSWD, 100);
+            final AccountImpl wilma = new AccountImpl(WILMA, PASSWD, 200);
+            dao.setAccounts(Arrays.asList(fred, wilma));
+            final long profiles = profileLength(dir);
+
+            // balance only updates go to the slots alone
+            fred.setBalance(150);
+            wilma.setBalance(250);
+            dao.setAccounts(Arrays.asList(fred, wilma));
+            assertEquals(profiles, profileLength(dir));
+            dao.close();
+
+            dao = new MappedAccountDaoImpl(dir, 4, false, 0);
+            try {
+                assertEquals(150, dao.getAccount(FRED).getBalance());
+                assertEquals(250, dao.getAccount(WILMA).getBalance());
+            } finally {
+                dao.close();
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * A slot whose name length was never written reads as free, the account's balance then comes from its profile
+     * and the slot is reused.
+     */
+    @Test
+    public void testTornSlotIsFree() throws Exception {
+        final File dir = newStore();
+        try {
+            MappedAccountDaoImpl dao = new MappedAccountDaoImpl(dir, 1, false, 0);
+            dao.setAccount(new AccountImpl(FRED, PASSWD, 100));
+            dao.close();
+
+            // fred's slot as a crash before the name length was stored would leave it
+            final RandomAccessFile raf = new RandomAccessFile(new File(dir, MappedAccountDaoImpl.BALANCES_FILE), "rw");
+            try {
+                raf.writeShort(0);
+            } finally {
+                raf.close();
+            }
+
+            dao = new MappedAccountDaoImpl(dir, 1, false, 0);
+            try {
+                assertEquals(100, dao.getAccount(FRED).getBalance());
+                dao.setAccount(new AccountImpl(WILMA, PASSWD, 200));
+                assertEquals(MappedAccountDaoImpl.SLOT_SIZE, balancesLength(dir));
+                assertEquals(200, dao.getAccount(WILMA).getBalance());
+            } finally {
+                dao.close();
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * The balance file doubles when every slot is taken, the balances in the new slots survive reopening.
+     */
+    @Test
+    public void testGrow() throws Exception {
+        final File dir = newStore();
+        try {
+            MappedAccountDaoImpl dao = new MappedAccountDaoImpl(dir, 2, false, 0);
+            dao.setAccount(new AccountImpl(FRED, PASSWD, 100));
+            dao.setAccount(new AccountImpl(WILMA, PASSWD, 200));
+            assertEquals(2L * MappedAccountDaoImpl.SLOT_SIZE, balancesLength(dir));
+            dao.setAccount(new AccountImpl(BARNEY, PASSWD, 300));
+            assertEquals(4L * MappedAccountDaoImpl.SLOT_SIZE, balancesLength(dir));
+            dao.close();
+
+            dao = new MappedAccountDaoImpl(dir, 2, false, 0);
+            try {
+                assertEquals(4L * MappedAccountDaoImpl.SLOT_SIZE, balancesLength(dir));
+                assertEquals(100, dao.getAccount(FRED).getBalance());
+                assertEquals(200, dao.getAccount(WILMA).getBalance());
+                assertEquals(300, dao.getAccount(BARNEY).getBalance());
+            } finally {
+                dao.close();
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * A deleted account's slot is reused rather than the file growing, the deleted account stays gone.
+     */
+    @Test
+    public void testDeleteReusesSlot() throws Exception {
+        final File dir = newStore();
+        try {
+            MappedAccountDaoImpl dao = new MappedAccountDaoImpl(dir, 2, false, 0);
+            dao.setAccount(new AccountImpl(FRED, PASSWD, 100));
+            dao.setAccount(new AccountImpl(WILMA, PASSWD, 200));
+            dao.deleteAccount(FRED);
+            dao.setAccount(new AccountImpl(BARNEY, PASSWD, 300));
+            assertEquals(2L * MappedAccountDaoImpl.SLOT_SIZE, balancesLength(dir));
+            dao.close();
+
+            dao = new MappedAccountDaoImpl(dir, 2, false, 0);
+            try {
+                assertNull(dao.getAccount(FRED));
+                assertEquals(200, dao.getAccount(WILMA).getBalance());
+                assertEquals(300, dao.getAccount(BARNEY).getBalance());
+            } finally {
+                dao.close();
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * A name of MAX_NAME_BYTES fits in a slot, a longer one, counted in UTF-8 bytes, is refused and nothing of its
+     * batch is written.
+     */
+    @Test
+    public void testLongName() throws Exception {
+        final File dir = newStore();
+        try {
+            final char[] longest = new char[MappedAccountDaoImpl.MAX_NAME_BYTES];
+            Arrays.fill(longest, 'f');
+            final String fits = new String(longest);
+            // two bytes each in UTF-8, one character over the limit
+            final char[] wide = new char[MappedAccountDaoImpl.MAX_NAME_BYTES / 2 + 1];
+            Arrays.fill(wide, '\u00e9');
+            final String tooLong = new String(wide);
+
+            MappedAccountDaoImpl dao = new MappedAccountDaoImpl(dir, 2, false, 0);
+            dao.setAccount(new AccountImpl(fits, PASSWD, 100));
+            try {
+                dao.setAccounts(Arrays.asList(new AccountImpl(FRED, PASSWD, 200),
+                                              new AccountImpl(tooLong, PASSWD, 300)));
+                fail("Expected an AccountException for " + tooLong);
+            } catch (final AccountException e) {
+                // expected
+            }
+            assertNull(dao.getAccount(FRED));
+            assertNull(dao.getAccount(tooLong));
+            dao.close();
+
+            dao = new MappedAccountDaoImpl(dir, 2, false, 0);
+            try {
+                assertEquals(100, dao.getAccount(fits).getBalance());
+                assertNull(dao.getAccount(FRED));
+                assertNull(dao.getAccount(tooLong));
+            } finally {
+                dao.close();
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Gets the length of the balance file of a store
+     * @param dir - the store directory
+     * @return - the length of the balance file
+     */
+    private static long balancesLength(final File dir) {
+        return new File(dir, MappedAccountDaoImpl.BALANCES_FILE).length();
+    }
+
+    /**
+     * Gets the length of the profile log of a store
+     * @param dir - the store directory
+     * @return - the length of the profile log
+     */
+    private static long profileLength(final File dir) {
+        return new File(dir, MappedAccountDaoImpl.PROFILES_FILE).length();
+    }
+
+    /**
+     * Gets a new temporary store directory
+     * @return - the directory
+     * @throws IOException - if the directory cannot be created
+     */
+    private static File newStore() throws IOException {
+        return Files.createTempDirectory("mapped-accounts").toFile();
+    }
+
+    /**
+     * Deletes a store directory and its files
+     * @param dir - the store directory
+     */
+    private static void delete(final File dir) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,142 @@
+package edu.uw.danco;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.uw.danco.account.AccountFactoryImpl;
+import edu.uw.danco.dao.BatchAccountDao;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+
+/**
+ * In memory BatchAccountDao for the account manager tests. Only the balances are stored and every getAccount builds
+ * a new instance, like a DAO reading its store. One account name can be set to be refused, a batch holding it fails
+ * as a whole.
+ */
+final class MemoryAccountDao implements BatchAccountDao {
+    /** The password hash of the accounts read */
+    private static final byte[] PASSWORD_HASH = {'p', 'a', 's', 's', 'w', 'o', 'r', 'd'};
+
+    /** The stored balances, keyed by account name */
+    private final Map<String, Integer> balances = new ConcurrentHashMap<String, Integer>();
+
+    /** The number of attempts to write each account, keyed by account name */
+    private final ConcurrentMap<String, AtomicInteger> writes = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /** The number of calls to setAccounts */
+    private final AtomicInteger batches = new AtomicInteger();
+
+    /** The number of calls to getAccount */
+    private final AtomicInteger reads = new AtomicInteger();
+
+    /** The name of the account that cannot be written, null for none */
+    private volatile String refused;
+
+    /**
+     * Sets an account that cannot be written
+     * @param accountName - the account name, null for none
+     */
+    void refuse(final String accountName) {
+        refused = accountName;
+    }
+
+    /**
+     * Gets the stored balance of an account
+     * @param accountName - the account name
+     * @return - the balance, null if the account is not stored
+     */
+    Integer balanceOf(final String accountName) {
+        return balances.get(accountName);
+    }
+
+    /**
+     * Gets the number of attempts to write an account, through either setAccount or setAccounts
+     * @param accountName - the account name
+     * @return - the number of attempts
+     */
+    int writesOf(final String accountName) {
+        final AtomicInteger count = writes.get(accountName);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Gets the number of calls to setAccounts
+     * @return - the number of batches
+     */
+    int batches() {
+        return batches.get();
+    }
+
+    /**
+     * Gets the number of calls to getAccount
+     * @return - the number of reads
+     */
+    int reads() {
+        return reads.get();
+    }
+
+    @Override
+    public Account getAccount(final String accountName) {
+        reads.incrementAndGet();
+        final Integer balance = balances.get(accountName);
+        return balance == null ? null : new AccountFactoryImpl().newAccount(accountName, PASSWORD_HASH, balance);
+    }
+
+    @Override
+    public void setAccount(final Account account) throws AccountException {
+        count(account);
+        if (account.getName().equals(refused)) {
+            throw new AccountException("Refusing to write " + account.getName());
+        }
+        balances.put(account.getName(), account.getBalance());
+    }
+
+    @Override
+    public void setAccounts(final Collection<Account> accounts) throws AccountException {
+        batches.incrementAndGet();
+        for (final Account account : accounts) {
+            count(account);
+            if (account.getName().equals(refused)) {
+                throw new AccountException("Refusing to write a batch holding " + account.getName());
+            }
+        }
+        for (final Account account : accounts) {
+            balances.put(account.getName(), account.getBalance());
+        }
+    }
+
+    @Override
+    public void deleteAccount(final String accountName) throws AccountException {
+        balances.remove(accountName);
+    }
+
+    @Override
+    public void reset() throws AccountException {
+        balances.clear();
+    }
+
+    @Override
+    public void close() throws AccountException {
+        // nothing to release
+    }
+
+    /**
+     * Counts an attempt to write an account
+     * @param account - the account
+     */
+    private void count(final Account account) {
+        AtomicInteger count = writes.get(account.getName());
+        if (count == null) {
+            count = new AtomicInteger();
+            final AtomicInteger raced = writes.putIfAbsent(account.getName(), count);
+            if (raced != null) {
+                count = raced;
+            }
+        }
+        count.incrementAndGet();
+    }
+}
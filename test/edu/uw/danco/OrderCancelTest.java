@@ -0,0 +1,198 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.LockFreeOrderQueue;
+import edu.uw.danco.broker.MarketDispatchFilter;
+import edu.uw.danco.broker.OrderManagerImpl;
+import edu.uw.danco.broker.OrderQueueImpl;
+import edu.uw.danco.broker.StopBuyOrderBook;
+import edu.uw.danco.broker.StopBuyOrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * Tests for cancelling queued orders by order id.
+ */
+public final class OrderCancelTest {
+    /** The account placing the orders */
+    private static final String ACCOUNT = "fflintstone";
+
+    /** The ticker of the orders */
+    private static final String TICKER = "BA";
+
+    /** Shares per order */
+    private static final int SHARES = 100;
+
+    /**
+     * A cancelled order is removed from an OrderQueueImpl, queuing it again dispatches it only once.
+     */
+    @Test
+    public void testQueueCancel() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final MarketDispatchFilter filter = new MarketDispatchFilter(false);
+            final OrderQueueImpl<Order> queue = new OrderQueueImpl<Order>(filter, executor);
+            final Recorder processed = new Recorder();
+            queue.setOrderProcessor(processed);
+
+            final Order first = new MarketBuyOrder(ACCOUNT, SHARES, TICKER);
+            final Order second = new MarketBuyOrder(ACCOUNT, SHARES, TICKER);
+            queue.enqueue(first);
+            queue.enqueue(second);
+            assertTrue(queue.cancel(first.getOrderId()));
+            assertFalse(queue.cancel(first.getOrderId()));
+            queue.enqueue(first);
+
+            filter.setThreshold(Boolean.TRUE);
+            queue.dispatchOrders();
+            settle(executor);
+            assertEquals(Arrays.asList(first, second), processed.orders());
+            assertFalse(queue.cancel(second.getOrderId()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A cancelled stop order is removed from its price level and is not dispatched when the level triggers.
+     */
+    @Test
+    public void testBookCancel() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final StopBuyOrderDispatchFilter filter = new StopBuyOrderDispatchFilter(0);
+            final StopBuyOrderBook book = new StopBuyOrderBook(filter, executor);
+            final Recorder processed = new Recorder();
+            book.setOrderProcessor(processed);
+
+            final StopBuyOrder at10 = new StopBuyOrder(ACCOUNT, SHARES, TICKER, 10);
+            final StopBuyOrder at20 = new StopBuyOrder(ACCOUNT, SHARES, TICKER, 20);
+            final StopBuyOrder alsoAt20 = new StopBuyOrder(ACCOUNT, SHARES, TICKER, 20);
+            book.enqueue(at10);
+            book.enqueue(at20);
+            book.enqueue(alsoAt20);
+            assertTrue(book.cancel(at10.getOrderId()));
+            assertTrue(book.cancel(alsoAt20.getOrderId()));
+            assertFalse(book.cancel(at10.getOrderId()));
+
+            filter.setThreshold(30);
+            settle(executor);
+            assertEquals(Arrays.<Order>asList(at20), processed.orders());
+            assertFalse(book.cancel(at20.getOrderId()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The order manager cancels orders in either of its stop order books.
+     */
+    @Test
+    public void testOrderManagerCancel() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final OrderManagerImpl manager = new OrderManagerImpl(TICKER, 50, executor);
+            final Recorder processed = new Recorder();
+            manager.setOrderProcessor(processed);
+
+            final StopBuyOrder buy = new StopBuyOrder(ACCOUNT, SHARES, TICKER, 60);
+            final StopSellOrder sell = new StopSellOrder(ACCOUNT, SHARES, TICKER, 40);
+            manager.queueOrder(buy);
+            manager.queueOrder(sell);
+            assertTrue(manager.cancel(buy.getOrderId()));
+            assertTrue(manager.cancel(sell.getOrderId()));
+            assertFalse(manager.cancel(sell.getOrderId()));
+
+            manager.adjustPrice(70);
+            settle(executor);
+            manager.adjustPrice(30);
+            settle(executor);
+            assertTrue(processed.orders().isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The LockFreeOrderQueue applies a cancel and a later enqueue of the same order in the order they were made.
+     */
+    @Test
+    public void testLockFreeCancelThenEnqueue() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final MarketDispatchFilter filter = new MarketDispatchFilter(false);
+            final LockFreeOrderQueue<Order> queue = new LockFreeOrderQueue<Order>(filter, executor);
+            final Recorder processed = new Recorder();
+            queue.setOrderProcessor(processed);
+
+            final Order first = new MarketBuyOrder(ACCOUNT, SHARES, TICKER);
+            final Order second = new MarketBuyOrder(ACCOUNT, SHARES, TICKER);
+            final Order third = new MarketBuyOrder(ACCOUNT, SHARES, TICKER);
+            queue.enqueue(first);
+            queue.enqueue(second);
+            queue.enqueue(third);
+            settle(executor);
+            queue.cancel(first.getOrderId());
+            queue.enqueue(first);
+            queue.cancel(third.getOrderId());
+
+            filter.setThreshold(Boolean.TRUE);
+            queue.dispatchOrders();
+            settle(executor);
+            assertEquals(Arrays.asList(first, second), processed.orders());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the tasks already queued to a single threaded executor to run
+     * @param executor - the executor
+     * @throws Exception - if waiting fails
+     */
+    private static void settle(final ExecutorService executor) throws Exception {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+    }
+
+    /**
+     * OrderProcessor recording the orders it is handed.
+     */
+    private static final class Recorder implements OrderProcessor {
+        /** The orders processed, in order */
+        private final List<Order> processed = Collections.synchronizedList(new ArrayList<Order>());
+
+        @Override
+        public void process(final Order order) {
+            processed.add(order);
+        }
+
+        /**
+         * Gets the orders processed so far
+         * @return - a copy of the orders, in the order they were processed
+         */
+        List<Order> orders() {
+            synchronized (processed) {
+                return new ArrayList<Order>(processed);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.OrderIdSet;
+
+/**
+ * Tests for the OrderIdSet used to index the orders in an OrderQueueImpl.
+ */
+public final class OrderIdSetTest {
+    /** Number of ids used to force the table to grow */
+    private static final int MANY_IDS = 10000;
+
+    /**
+     * Duplicate ids are rejected.
+     */
+    @Test
+    public void testAddDuplicate() {
+        final OrderIdSet ids = new OrderIdSet();
+        assertTrue(ids.add(42));
+        assertFalse(ids.add(42));
+        assertTrue(ids.add(0));
+        assertFalse(ids.add(0));
+        assertEquals(2, ids.size());
+    }
+
+    /**
+     * Removed ids are no longer present and may be added again.
+     */
+    @Test
+    public void testRemove() {
+        final OrderIdSet ids = new OrderIdSet();
+        for (int i = 0; i < MANY_IDS; i++) {
+            ids.add(i);
+        }
+        for (int i = 0; i < MANY_IDS; i += 2) {
+            assertTrue(ids.remove(i));
+        }
+        assertFalse(ids.remove(0));
+        for (int i = 0; i < MANY_IDS; i++) {
+            assertEquals(i % 2 != 0, ids.contains(i));
+        }
+        assertEquals(MANY_IDS / 2, ids.size());
+        assertTrue(ids.add(2));
+    }
+}
@@ -0,0 +1,70 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.uw.danco.exchange.QuoteTable;
+
+/**
+ * Tests for the ordering of event and command response writes to the QuoteTable.
+ */
+public final class QuoteTableTest {
+    /** The ticker id used */
+    private static final int TICKER = 1;
+
+    /**
+     * A response to a request sent before an event does not overwrite the event's price.
+     */
+    @Test
+    public void testResponseBehindEventIsDropped() {
+        final QuoteTable quotes = new QuoteTable(2);
+        quotes.setPrice(TICKER, 100);
+        final int version = quotes.getPriceVersion(TICKER);
+
+        quotes.setPrice(TICKER, 120);
+        assertFalse(quotes.setPriceIfCurrent(TICKER, 110, version));
+        assertEquals(120, quotes.getPrice(TICKER));
+
+        assertTrue(quotes.setPriceIfCurrent(TICKER, 125, quotes.getPriceVersion(TICKER)));
+        assertEquals(125, quotes.getPrice(TICKER));
+        assertEquals(QuoteTable.UNKNOWN, quotes.getPrice(0));
+    }
+
+    /**
+     * A response to a state request sent before an event does not overwrite the event's state.
+     */
+    @Test
+    public void testStateBehindEventIsDropped() {
+        final QuoteTable quotes = new QuoteTable(0);
+        final int version = quotes.getOpenVersion();
+        quotes.setOpen(true);
+        assertFalse(quotes.setOpenIfCurrent(false, version));
+        assertEquals(Boolean.TRUE, quotes.getOpen());
+
+        assertTrue(quotes.setOpenIfCurrent(false, quotes.getOpenVersion()));
+        assertEquals(Boolean.FALSE, quotes.getOpen());
+    }
+
+    /**
+     * Seeding only fills entries no event has written, negative prices survive the packing.
+     */
+    @Test
+    public void testSeed() {
+        final QuoteTable quotes = new QuoteTable(2);
+        quotes.setPrice(TICKER, 100);
+        assertFalse(quotes.seedPrice(TICKER, 90));
+        assertTrue(quotes.seedPrice(0, 80));
+        assertEquals(100, quotes.getPrice(TICKER));
+        assertEquals(80, quotes.getPrice(0));
+
+        quotes.setPrice(0, -5);
+        assertEquals(-5, quotes.getPrice(0, 0));
+
+        quotes.setOpen(false);
+        assertFalse(quotes.seedOpen(true));
+        assertEquals(Boolean.FALSE, quotes.getOpen());
+    }
+}
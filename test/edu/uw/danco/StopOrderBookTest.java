@@ -0,0 +1,267 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.StopBuyOrderBook;
+import edu.uw.danco.broker.StopBuyOrderDispatchFilter;
+import edu.uw.danco.broker.StopSellOrderBook;
+import edu.uw.danco.broker.StopSellOrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * Tests for the price level triggering of the StopBuyOrderBook and StopSellOrderBook.
+ */
+public final class StopOrderBookTest {
+    /** The account placing the orders */
+    private static final String ACCOUNT = "fflintstone";
+
+    /** The ticker of the orders */
+    private static final String TICKER = "BA";
+
+    /** Shares per order */
+    private static final int SHARES = 100;
+
+    /**
+     * A stop buy triggers once the price reaches its stop price, an order exactly at the threshold included.
+     */
+    @Test
+    public void testBuyTriggerBoundary() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final StopBuyOrderDispatchFilter filter = new StopBuyOrderDispatchFilter(10);
+            final StopBuyOrderBook book = new StopBuyOrderBook(filter, executor);
+            final Recorder processed = new Recorder();
+            book.setOrderProcessor(processed);
+
+            final StopBuyOrder at11 = new StopBuyOrder(ACCOUNT, SHARES, TICKER, 11);
+            final StopBuyOrder at10 = new StopBuyOrder(ACCOUNT, SHARES, TICKER, 10);
+            final StopBuyOrder at9 = new StopBuyOrder(ACCOUNT, SHARES, TICKER, 9);
+            book.enqueue(at11);
+            book.enqueue(at10);
+            book.enqueue(at9);
+            settle(executor);
+            assertEquals(Arrays.<Order>asList(at9, at10), processed.orders());
+
+            filter.setThreshold(10);
+            settle(executor);
+            assertEquals(2, processed.orders().size());
+
+            filter.setThreshold(11);
+            settle(executor);
+            assertEquals(Arrays.<Order>asList(at9, at10, at11), processed.orders());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A rising price triggers the stop buy levels lowest stop price first.
+     */
+    @Test
+    public void testBuyDispatchOrder() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final StopBuyOrderDispatchFilter filter = new StopBuyOrderDispatchFilter(0);
+            final StopBuyOrderBook book = new StopBuyOrderBook(filter, executor);
+            final Recorder processed = new Recorder();
+            book.setOrderProcessor(processed);
+
+            final StopBuyOrder at60 = new StopBuyOrder(ACCOUNT, SHARES, TICKER, 60);
+            final StopBuyOrder at50 = new StopBuyOrder(ACCOUNT, SHARES, TICKER, 50);
+            final StopBuyOrder at55 = new StopBuyOrder(ACCOUNT, SHARES, TICKER, 55);
+            final StopBuyOrder at70 = new StopBuyOrder(ACCOUNT, SHARES, TICKER, 70);
+            book.enqueue(at60);
+            book.enqueue(at50);
+            book.enqueue(at55);
+            book.enqueue(at70);
+            settle(executor);
+            assertTrue(processed.orders().isEmpty());
+
+            filter.setThreshold(60);
+            settle(executor);
+            assertEquals(Arrays.<Order>asList(at50, at55, at60), processed.orders());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A stop sell triggers once the price falls to its stop price, an order exactly at the threshold included.
+     */
+    @Test
+    public void testSellTriggerBoundary() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final StopSellOrderDispatchFilter filter = new StopSellOrderDispatchFilter(10);
+            final StopSellOrderBook book = new StopSellOrderBook(filter, executor);
+            final Recorder processed = new Recorder();
+            book.setOrderProcessor(processed);
+
+            final StopSellOrder at9 = new StopSellOrder(ACCOUNT, SHARES, TICKER, 9);
+            final StopSellOrder at10 = new StopSellOrder(ACCOUNT, SHARES, TICKER, 10);
+            final StopSellOrder at11 = new StopSellOrder(ACCOUNT, SHARES, TICKER, 11);
+            book.enqueue(at9);
+            book.enqueue(at10);
+            book.enqueue(at11);
+            settle(executor);
+            assertEquals(Arrays.<Order>asList(at11, at10), processed.orders());
+
+            filter.setThreshold(9);
+            settle(executor);
+            assertEquals(Arrays.<Order>asList(at11, at10, at9), processed.orders());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A falling price triggers the stop sell levels highest stop price first.
+     */
+    @Test
+    public void testSellDispatchOrder() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final StopSellOrderDispatchFilter filter = new StopSellOrderDispatchFilter(100);
+            final StopSellOrderBook book = new StopSellOrderBook(filter, executor);
+            final Recorder processed = new Recorder();
+            book.setOrderProcessor(processed);
+
+            final StopSellOrder at50 = new StopSellOrder(ACCOUNT, SHARES, TICKER, 50);
+            final StopSellOrder at60 = new StopSellOrder(ACCOUNT, SHARES, TICKER, 60);
+            final StopSellOrder at55 = new StopSellOrder(ACCOUNT, SHARES, TICKER, 55);
+            final StopSellOrder at40 = new StopSellOrder(ACCOUNT, SHARES, TICKER, 40);
+            book.enqueue(at50);
+            book.enqueue(at60);
+            book.enqueue(at55);
+            book.enqueue(at40);
+            settle(executor);
+            assertTrue(processed.orders().isEmpty());
+
+            filter.setThreshold(50);
+            settle(executor);
+            assertEquals(Arrays.<Order>asList(at60, at55, at50), processed.orders());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The orders within a price level are dispatched larger orders first, then in order id order.
+     */
+    @Test
+    public void testLevelOrder() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final StopSellOrderDispatchFilter filter = new StopSellOrderDispatchFilter(100);
+            final StopSellOrderBook book = new StopSellOrderBook(filter, executor);
+            final Recorder processed = new Recorder();
+            book.setOrderProcessor(processed);
+
+            final StopSellOrder first = new StopSellOrder(ACCOUNT, SHARES, TICKER, 50);
+            final StopSellOrder larger = new StopSellOrder(ACCOUNT, 2 * SHARES, TICKER, 50);
+            final StopSellOrder second = new StopSellOrder(ACCOUNT, SHARES, TICKER, 50);
+            book.enqueue(first);
+            book.enqueue(larger);
+            book.enqueue(second);
+
+            filter.setThreshold(50);
+            settle(executor);
+            assertEquals(Arrays.<Order>asList(larger, first, second), processed.orders());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * dequeue only removes the head order once it is triggered, and leaves the orders beyond the threshold.
+     */
+    @Test
+    public void testDequeue() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            // hold the dispatcher so the drain task cannot take the triggered orders first
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            final StopBuyOrderDispatchFilter filter = new StopBuyOrderDispatchFilter(0);
+            final StopBuyOrderBook book = new StopBuyOrderBook(filter, executor);
+
+            final StopBuyOrder at30 = new StopBuyOrder(ACCOUNT, SHARES, TICKER, 30);
+            final StopBuyOrder at20 = new StopBuyOrder(ACCOUNT, SHARES, TICKER, 20);
+            book.enqueue(at30);
+            book.enqueue(at20);
+            assertNull(book.dequeue());
+
+            filter.setThreshold(25);
+            assertSame(at20, book.dequeue());
+            assertNull(book.dequeue());
+
+            filter.setThreshold(30);
+            assertSame(at30, book.dequeue());
+            assertNull(book.dequeue());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the tasks already queued to a single threaded executor to run
+     * @param executor - the executor
+     * @throws Exception - if waiting fails
+     */
+    private static void settle(final ExecutorService executor) throws Exception {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+    }
+
+    /**
+     * OrderProcessor recording the orders it is handed.
+     */
+    private static final class Recorder implements OrderProcessor {
+        /** The orders processed, in order */
+        private final List<Order> processed = Collections.synchronizedList(new ArrayList<Order>());
+
+        @Override
+        public void process(final Order order) {
+            processed.add(order);
+        }
+
+        /**
+         * Gets the orders processed so far
+         * @return - a copy of the orders, in the order they were processed
+         */
+        List<Order> orders() {
+            synchronized (processed) {
+                return new ArrayList<Order>(processed);
+            }
+        }
+    }
+}
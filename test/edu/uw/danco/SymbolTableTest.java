@@ -0,0 +1,71 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import edu.uw.danco.exchange.SymbolTable;
+
+/**
+ * Tests for the SymbolTable mapping ticker symbols to the ids used on the wire.
+ */
+public final class SymbolTableTest {
+    /** Number of symbols used to force collisions in the table */
+    private static final int MANY_SYMBOLS = 5000;
+
+    /** The encoding of the command protocol */
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * The ids are the positions of the tickers in the exchange's ticker list.
+     */
+    @Test
+    public void testIdsFollowTickerOrder() {
+        final SymbolTable symbols = new SymbolTable(new String[] {"BA", "F", "IBM"});
+        assertEquals(3, symbols.size());
+        assertEquals(0, symbols.idOf("BA"));
+        assertEquals(2, symbols.idOf("IBM"));
+        assertEquals("F", symbols.tickerOf(1));
+        assertEquals(-1, symbols.idOf("MSFT"));
+        assertEquals(-1, symbols.idOf((String) null));
+        assertNull(symbols.tickerOf(3));
+        assertNull(symbols.tickerOf(-1));
+    }
+
+    /**
+     * Every symbol of a large table is found from its String and from its bytes.
+     */
+    @Test
+    public void testManySymbols() {
+        final String[] tickers = new String[MANY_SYMBOLS];
+        for (int i = 0; i < tickers.length; i++) {
+            tickers[i] = "T" + i;
+        }
+        final SymbolTable symbols = new SymbolTable(tickers);
+        for (int i = 0; i < tickers.length; i++) {
+            assertEquals(i, symbols.idOf(new String(tickers[i])));
+            final ByteBuffer buffer = ByteBuffer.wrap(("GET_QUOTE_CMD:" + tickers[i]).getBytes(ASCII));
+            assertEquals(i, symbols.idOf(buffer, 14, buffer.limit()));
+        }
+    }
+
+    /**
+     * Symbols found from bytes resolve to the table's own String instance, unknown bytes are not found.
+     */
+    @Test
+    public void testBytes() {
+        final String ibm = "IBM";
+        final SymbolTable symbols = new SymbolTable(new String[] {"F", ibm});
+        final ByteBuffer buffer = ByteBuffer.wrap("F:IBM:IB:IBMX".getBytes(ASCII));
+        assertEquals(0, symbols.idOf(buffer, 0, 1));
+        assertSame(ibm, symbols.tickerOf(symbols.idOf(buffer, 2, 5)));
+        assertEquals(-1, symbols.idOf(buffer, 6, 8));
+        assertEquals(-1, symbols.idOf(buffer, 9, 13));
+        assertEquals(-1, symbols.idOf(buffer, 0, 0));
+    }
+}